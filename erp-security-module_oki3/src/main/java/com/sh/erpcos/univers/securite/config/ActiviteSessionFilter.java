@@ -0,0 +1,36 @@
+package com.sh.erpcos.univers.securite.config;
+
+import com.sh.erpcos.univers.securite.service.SessionService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Note l'activité de la session à chaque requête authentifiée. Enregistré dans la chaîne de
+ * sécurité après l'autorisation ; l'écriture en base est différée (SuiviActiviteSessionService).
+ */
+@RequiredArgsConstructor
+public class ActiviteSessionFilter extends OncePerRequestFilter {
+
+    private final SessionService sessionService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HttpSession session = request.getSession(false);
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (session != null && auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken)) {
+            sessionService.updateSessionActivity(session.getId());
+        }
+        filterChain.doFilter(request, response);
+    }
+}
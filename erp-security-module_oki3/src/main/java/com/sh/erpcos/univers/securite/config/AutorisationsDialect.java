@@ -0,0 +1,88 @@
+package com.sh.erpcos.univers.securite.config;
+
+import com.sh.erpcos.univers.securite.service.PermissionCheckService;
+import com.sh.erpcos.univers.securite.util.BitSetAuthorities;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.dialect.AbstractDialect;
+import org.thymeleaf.dialect.IExpressionObjectDialect;
+import org.thymeleaf.expression.IExpressionObjectFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expose l'objet #autorisations dans les templates Thymeleaf :
+ *
+ *   th:if="${#autorisations.possede('SECURITE_LIRE')}"
+ *   th:with="droits=${#autorisations.evaluer({'RH_LIRE', 'RH_CREER'})}"
+ *
+ * L'objet est construit une fois par rendu de page : les autorités de l'utilisateur sont lues
+ * une seule fois, chaque vérification n'est ensuite qu'un test de bit.
+ */
+@Component
+public class AutorisationsDialect extends AbstractDialect implements IExpressionObjectDialect {
+
+    private static final String NOM_OBJET = "autorisations";
+
+    public AutorisationsDialect() {
+        super("Autorisations");
+    }
+
+    @Override
+    public IExpressionObjectFactory getExpressionObjectFactory() {
+        return new IExpressionObjectFactory() {
+            @Override
+            public Set<String> getAllExpressionObjectNames() {
+                return Set.of(NOM_OBJET);
+            }
+
+            @Override
+            public Object buildObject(IExpressionContext context, String expressionObjectName) {
+                return NOM_OBJET.equals(expressionObjectName)
+                        ? new Autorisations(PermissionCheckService.autoritesDe(
+                                SecurityContextHolder.getContext().getAuthentication()))
+                        : null;
+            }
+
+            @Override
+            public boolean isCacheable(String expressionObjectName) {
+                // Réutilisé pour toute la durée du rendu du template
+                return true;
+            }
+        };
+    }
+
+    public static final class Autorisations {
+
+        private final BitSetAuthorities authorities;
+
+        private Autorisations(BitSetAuthorities authorities) {
+            this.authorities = authorities;
+        }
+
+        public boolean possede(String permission) {
+            return PermissionCheckService.possede(authorities, permission);
+        }
+
+        public boolean possedeUne(String... permissions) {
+            for (String permission : permissions) {
+                if (possede(permission)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public Map<String, Boolean> evaluer(Collection<String> permissions) {
+            return PermissionCheckService.evaluate(authorities, permissions);
+        }
+
+        public Map<String, Boolean> evaluer(String... permissions) {
+            return evaluer(Arrays.asList(permissions));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.sh.erpcos.univers.securite.config;
+
+import com.sh.erpcos.univers.securite.util.BitSetAuthorities;
+import com.sh.erpcos.univers.securite.util.PermissionBitIndex;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+import java.util.function.Supplier;
+
+/**
+ * Équivalent de hasAnyAuthority(...) évalué par masque de bits.
+ *
+ * Les noms de permissions sont traduits une fois en masque long[] (reconstruit seulement
+ * si le registre PermissionBitIndex change), puis chaque requête se résume à un ET logique
+ * entre ce masque et le bitset du principal.
+ */
+public final class BitMaskAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+
+    private final String[] permissions;
+    private volatile MasqueVersionne masque = new MasqueVersionne(-1, new long[0]);
+
+    private BitMaskAuthorizationManager(String[] permissions) {
+        this.permissions = permissions.clone();
+    }
+
+    public static BitMaskAuthorizationManager auMoinsUne(String... permissions) {
+        return new BitMaskAuthorizationManager(permissions);
+    }
+
+    @Override
+    public AuthorizationResult authorize(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        return new AuthorizationDecision(estAutorise(authentication.get(), masqueCourant()));
+    }
+
+    // Encore abstraite dans AuthorizationManager : simple passerelle vers authorize
+    @Deprecated
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        return new AuthorizationDecision(estAutorise(authentication.get(), masqueCourant()));
+    }
+
+    static boolean estAutorise(Authentication authentication, long[] masque) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return false;
+        }
+        return BitSetAuthorities.depuis(authentication).contientAuMoinsUne(masque);
+    }
+
+    private long[] masqueCourant() {
+        MasqueVersionne courant = masque;
+        long version = PermissionBitIndex.version();
+        if (courant.version() != version) {
+            courant = new MasqueVersionne(version, PermissionBitIndex.masqueDe(permissions));
+            masque = courant;
+        }
+        return courant.bits();
+    }
+
+    private record MasqueVersionne(long version, long[] bits) {
+    }
+}
@@ -0,0 +1,178 @@
+package com.sh.erpcos.univers.securite.config;
+
+import com.sh.erpcos.univers.securite.entity.Module;
+import com.sh.erpcos.univers.securite.enums.ModuleType;
+import com.sh.erpcos.univers.securite.repository.ModuleRepository;
+import com.sh.erpcos.univers.securite.repository.PermissionRepository;
+import com.sh.erpcos.univers.securite.util.PermissionBitIndex;
+import com.sh.erpcos.univers.securite.util.UrlPatternTrie;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authorization.AuthenticatedAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Autorisation des URL pilotée par la base : les motifs Permission.urlPattern et
+ * Module.urlPattern sont compilés dans un UrlPatternTrie dont chaque motif porte le masque
+ * des permissions actives qui y donnent accès.
+ *
+ * Un module inactif ou sans permission active garde son motif avec un masque vide, ce qui
+ * interdit l'accès au lieu de le laisser ouvert ; il en va de même des motifs des ModuleType,
+ * présents même sans ligne en base. Une URL couverte par aucun motif exige seulement une
+ * authentification. Les règles sont recompilées au premier accès qui suit une modification de
+ * permission ou de module (voir invalider()).
+ *
+ * Le chemin comparé aux motifs est celui que verra le DispatcherServlet : décodé, sans contenu
+ * après ";" et sans "/" doublés ; "/erp/%73ecurite/..." est donc jugé comme "/securite/...".
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DynamicUrlAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+
+    private static final long[] AUCUN_BIT = new long[0];
+
+    private static final UrlPathHelper CHEMINS = new UrlPathHelper();
+
+    static {
+        CHEMINS.setUrlDecode(true);
+        CHEMINS.setRemoveSemicolonContent(true);
+    }
+
+    private final PermissionRepository permissionRepository;
+    private final ModuleRepository moduleRepository;
+
+    private final AuthorizationManager<RequestAuthorizationContext> parDefaut =
+            AuthenticatedAuthorizationManager.authenticated();
+
+    private volatile UrlPatternTrie regles;
+
+    // Incrémenté à chaque invalidation : une compilation commencée avant n'est pas publiée
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public AuthorizationResult authorize(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        HttpServletRequest request = context.getRequest();
+        String chemin = CHEMINS.getPathWithinApplication(request);
+
+        long[] masque = getRegles().trouver(chemin);
+        if (masque == null) {
+            return parDefaut.authorize(authentication, context);
+        }
+        return new AuthorizationDecision(BitMaskAuthorizationManager.estAutorise(authentication.get(), masque));
+    }
+
+    // Encore abstraite dans AuthorizationManager : simple passerelle vers authorize
+    @Deprecated
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        AuthorizationResult resultat = authorize(authentication, context);
+        return resultat instanceof AuthorizationDecision decision ? decision : new AuthorizationDecision(resultat.isGranted());
+    }
+
+    /**
+     * Rend les règles obsolètes, immédiatement puis après le commit de la transaction en cours.
+     */
+    public void invalider() {
+        Runnable invalidation = () -> {
+            generation.incrementAndGet();
+            regles = null;
+        };
+
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    private UrlPatternTrie getRegles() {
+        UrlPatternTrie courantes = regles;
+        if (courantes != null) {
+            return courantes;
+        }
+        synchronized (this) {
+            courantes = regles;
+            if (courantes == null) {
+                long generationAvantCompilation = generation.get();
+                courantes = compiler();
+                if (generation.get() == generationAvantCompilation) {
+                    regles = courantes;
+                }
+            }
+            return courantes;
+        }
+    }
+
+    private UrlPatternTrie compiler() {
+        Map<String, long[]> masquesParMotif = new LinkedHashMap<>();
+
+        // Modules connus du code : interdits par défaut, même si leur ligne en base manque ou a changé
+        for (ModuleType moduleType : ModuleType.values()) {
+            if (estRenseigne(moduleType.getUrlPattern())) {
+                masquesParMotif.putIfAbsent(moduleType.getUrlPattern(), AUCUN_BIT);
+            }
+        }
+
+        for (Module module : moduleRepository.findAll()) {
+            if (estRenseigne(module.getUrlPattern())) {
+                masquesParMotif.putIfAbsent(module.getUrlPattern(), AUCUN_BIT);
+            }
+        }
+
+        for (Object[] regle : permissionRepository.findReglesUrlActives()) {
+            int permissionId = (Integer) regle[0];
+            String motifPermission = (String) regle[1];
+            String motifModule = (String) regle[2];
+            if (motifModule != null && !Boolean.TRUE.equals(regle[3])) {
+                continue; // Module désactivé : ses permissions ne donnent plus accès
+            }
+            if (estRenseigne(motifPermission)) {
+                masquesParMotif.merge(motifPermission, bit(permissionId), DynamicUrlAuthorizationManager::union);
+            }
+            if (estRenseigne(motifModule) && !motifModule.equals(motifPermission)) {
+                masquesParMotif.merge(motifModule, bit(permissionId), DynamicUrlAuthorizationManager::union);
+            }
+        }
+
+        UrlPatternTrie trie = new UrlPatternTrie();
+        masquesParMotif.forEach(trie::ajouter);
+        log.info("Règles d'autorisation des URL compilées: {} motifs", trie.getNombreMotifs());
+        return trie;
+    }
+
+    private static boolean estRenseigne(String motif) {
+        return motif != null && !motif.isBlank();
+    }
+
+    private static long[] bit(int permissionId) {
+        return PermissionBitIndex.activerBit(new long[0], permissionId);
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        long[] resultat = a.length >= b.length ? a.clone() : b.clone();
+        long[] autre = a.length >= b.length ? b : a;
+        for (int i = 0; i < autre.length; i++) {
+            resultat[i] |= autre[i];
+        }
+        return resultat;
+    }
+}
@@ -1,7 +1,10 @@
 package com.sh.erpcos.univers.securite.config;
 
+import com.sh.erpcos.univers.securite.entity.AuditLog;
 import com.sh.erpcos.univers.securite.service.AuditService;
 import com.sh.erpcos.univers.securite.service.CustomUserDetailsService;
+import com.sh.erpcos.univers.securite.service.DetectionForceBruteService;
+import com.sh.erpcos.univers.securite.service.SessionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -20,6 +23,7 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
@@ -33,6 +37,9 @@ public class SecurityConfig {
     
     private final CustomUserDetailsService userDetailsService;
     private final AuditService auditService;
+    private final DetectionForceBruteService detectionForceBruteService;
+    private final DynamicUrlAuthorizationManager dynamicUrlAuthorizationManager;
+    private final SessionService sessionService;
     
     @Bean
     public PasswordEncoder passwordEncoder() {
@@ -49,8 +56,9 @@ public class SecurityConfig {
             log.info("Connexion réussie pour l'utilisateur: {}", username);
             
          // Journaliser l'événement de connexion réussie
-            auditService.logAuthentication(username, "LOGIN_SUCCESS", true, 
+            AuditLog evenement = auditService.logAuthentication(username, "LOGIN_SUCCESS", true, 
                                          "Connexion réussie", request);
+            detectionForceBruteService.enregistrerSucces(username, evenement.getIpAddress());
             
             // Obtenir le contexte de l'application depuis la requête
             String contextPath = request.getContextPath();
@@ -67,9 +75,10 @@ public class SecurityConfig {
                      username, exception.getMessage());
             
             // Journaliser l'événement d'échec
-            auditService.logAuthentication(username, "LOGIN_FAILED", false, 
+            AuditLog evenement = auditService.logAuthentication(username, "LOGIN_FAILED", false, 
                                          "Échec d'authentification: " + exception.getMessage(), 
                                          request);
+            detectionForceBruteService.enregistrerEchec(username, evenement.getIpAddress());
             
             response.sendRedirect(request.getContextPath() + "/login?error=true");
         };
@@ -110,53 +119,18 @@ public class SecurityConfig {
                 
                // .requestMatchers("/pontbascule/**").permitAll()
                 
-                // Pont bascule - nécessite des permissions spécifiques
-                .requestMatchers("/pontbascule/**").hasAnyAuthority(
+                // Pont bascule - hors ModuleType, règle statique
+                .requestMatchers("/pontbascule/**").access(BitMaskAuthorizationManager.auMoinsUne(
                     "PONTBASCULE_LIRE", "PONTBASCULE_CREER", "PONTBASCULE_MODIFIER", "PONTBASCULE_SUPPRIMER"
-                )
+                ))
                 
               
-                // Sécurité - nécessite des permissions spécifiques
-                .requestMatchers("/securite/**").hasAnyAuthority(
-                		"SECURITE_LIRE", "SECURITE_CREER", "SECURITE_MODIFIER", 
-                        "SECURITE_SUPPRIMER", "SECURITE_GESTION_PERMISSIONS", "SECURITE_ASSIGNER_ROLES"
-               )
-                
-                // Contact - nécessite des permissions spécifiques
-                .requestMatchers("/contact/**").hasAnyAuthority(
-                    "CONTACT_LIRE", "CONTACT_CREER", "CONTACT_MODIFIER", "CONTACT_SUPPRIMER"
-                )
-                
-                // Comptabilité - nécessite des permissions spécifiques
-                .requestMatchers("/comptabilite/**").hasAnyAuthority(
-                    "COMPTABILITE_LIRE", "COMPTABILITE_CREER", "COMPTABILITE_MODIFIER", "COMPTABILITE_SUPPRIMER"
-                )
-                
-                // RH - nécessite des permissions spécifiques
-                .requestMatchers("/rh/**").hasAnyAuthority(
-                    "RH_LIRE", "RH_CREER", "RH_MODIFIER", "RH_SUPPRIMER"
-                )
-                
-                // Stock - nécessite des permissions spécifiques
-                .requestMatchers("/stock/**").hasAnyAuthority(
-                    "STOCK_LIRE", "STOCK_CREER", "STOCK_MODIFIER", "STOCK_SUPPRIMER"
-                )
-                
-                // Vente - nécessite des permissions spécifiques
-                .requestMatchers("/vente/**").hasAnyAuthority(
-                    "VENTE_LIRE", "VENTE_CREER", "VENTE_MODIFIER", "VENTE_SUPPRIMER"
-                )
-                
-                // Achat - nécessite des permissions spécifiques
-                .requestMatchers("/achat/**").hasAnyAuthority(
-                    "ACHAT_LIRE", "ACHAT_CREER", "ACHAT_MODIFIER", "ACHAT_SUPPRIMER"
-                )
-                
                 // Dashboard - accessible à tous les utilisateurs authentifiés
                 .requestMatchers("/dashboard").authenticated()
                 
-                // Toutes les autres requêtes nécessitent une authentification
-                .anyRequest().authenticated()
+                // Modules enregistrés en base (Module.urlPattern, Permission.urlPattern) ; les autres
+                // requêtes nécessitent seulement une authentification
+                .anyRequest().access(dynamicUrlAuthorizationManager)
             )
             .formLogin(form -> form
                 .loginPage("/login")
@@ -194,7 +168,9 @@ public class SecurityConfig {
                 .tokenValiditySeconds(86400)                     // 1 jour
                 .rememberMeCookieName("remember-me-erp")
                 .userDetailsService(userDetailsService)
-            );
+            )
+            // Activité des sessions notée en mémoire, écrite en base par lots
+            .addFilterAfter(new ActiviteSessionFilter(sessionService), AuthorizationFilter.class);
         return http.build();
     }
 }
@@ -0,0 +1,26 @@
+package com.sh.erpcos.univers.securite.config.initialiez;
+
+import com.sh.erpcos.univers.securite.service.AuditArchiveService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(6) // Après le partitionnement : un archivage interrompu est terminé avant toute purge
+@RequiredArgsConstructor
+@Slf4j
+public class AuditArchiveInitializer implements CommandLineRunner {
+
+    private final AuditArchiveService auditArchiveService;
+
+    @Override
+    public void run(String... args) {
+        try {
+            auditArchiveService.preparer();
+        } catch (Exception e) {
+            log.error("Impossible de charger l'archive des journaux d'audit: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.sh.erpcos.univers.securite.config.initialiez;
+
+import com.sh.erpcos.univers.securite.service.AuditPartitionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(3) // Après la création du schéma par Hibernate et l'initialisation des modules
+@RequiredArgsConstructor
+@Slf4j
+public class AuditPartitionInitializer implements CommandLineRunner {
+
+    private final AuditPartitionService auditPartitionService;
+
+    @Override
+    public void run(String... args) {
+        try {
+            auditPartitionService.preparer();
+        } catch (Exception e) {
+            // L'application reste utilisable sur la table non partitionnée
+            log.error("Impossible de préparer les partitions de audit_logs: {}", e.getMessage(), e);
+        }
+    }
+}
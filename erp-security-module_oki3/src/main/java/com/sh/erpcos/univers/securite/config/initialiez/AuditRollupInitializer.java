@@ -0,0 +1,26 @@
+package com.sh.erpcos.univers.securite.config.initialiez;
+
+import com.sh.erpcos.univers.securite.service.AuditRollupService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(4) // Après le partitionnement de audit_logs
+@RequiredArgsConstructor
+@Slf4j
+public class AuditRollupInitializer implements CommandLineRunner {
+
+    private final AuditRollupService auditRollupService;
+
+    @Override
+    public void run(String... args) {
+        try {
+            auditRollupService.preparer();
+        } catch (Exception e) {
+            log.error("Impossible de calculer les agrégats d'audit: {}", e.getMessage(), e);
+        }
+    }
+}
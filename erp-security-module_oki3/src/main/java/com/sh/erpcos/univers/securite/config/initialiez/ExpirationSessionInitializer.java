@@ -0,0 +1,30 @@
+package com.sh.erpcos.univers.securite.config.initialiez;
+
+import com.sh.erpcos.univers.securite.service.ExpirationSessionService;
+import com.sh.erpcos.univers.securite.service.SessionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(7)
+@RequiredArgsConstructor
+@Slf4j
+public class ExpirationSessionInitializer implements CommandLineRunner {
+
+    private final ExpirationSessionService expirationSessionService;
+    private final SessionService sessionService;
+
+    @Override
+    public void run(String... args) {
+        try {
+            // Sessions échues pendant l'arrêt, puis roue des sessions encore valides
+            sessionService.cleanupExpiredSessions();
+            expirationSessionService.reconstruire();
+        } catch (Exception e) {
+            log.error("Impossible de reconstruire la roue d'expiration des sessions: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.sh.erpcos.univers.securite.config.initialiez;
+
+import com.sh.erpcos.univers.securite.service.GeolocalisationIpService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(8)
+@RequiredArgsConstructor
+@Slf4j
+public class GeolocalisationIpInitializer implements CommandLineRunner {
+
+    private final GeolocalisationIpService geolocalisationIpService;
+
+    @Override
+    public void run(String... args) {
+        try {
+            geolocalisationIpService.charger();
+        } catch (Exception e) {
+            log.error("Impossible de charger la base de géolocalisation des adresses IP: {}", e.getMessage(), e);
+        }
+    }
+}
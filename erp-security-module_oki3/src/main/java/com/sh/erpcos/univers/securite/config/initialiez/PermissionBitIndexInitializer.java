@@ -0,0 +1,31 @@
+package com.sh.erpcos.univers.securite.config.initialiez;
+
+import com.sh.erpcos.univers.securite.entity.Permission;
+import com.sh.erpcos.univers.securite.repository.PermissionRepository;
+import com.sh.erpcos.univers.securite.util.PermissionBitIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+@Order(2) // Après ModuleInitializer : toutes les permissions existent déjà
+@RequiredArgsConstructor
+@Slf4j
+public class PermissionBitIndexInitializer implements CommandLineRunner {
+
+    private final PermissionRepository permissionRepository;
+
+    @Override
+    @Transactional(readOnly = true)
+    public void run(String... args) {
+        int total = 0;
+        for (Permission permission : permissionRepository.findAll()) {
+            PermissionBitIndex.enregistrer(permission.getId(), permission.getNom());
+            total++;
+        }
+        log.info("Index des permissions initialisé: {} permissions", total);
+    }
+}
@@ -0,0 +1,26 @@
+package com.sh.erpcos.univers.securite.config.initialiez;
+
+import com.sh.erpcos.univers.securite.service.RechercheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(5) // Après le partitionnement : les index trigrammes se propagent aux partitions
+@RequiredArgsConstructor
+@Slf4j
+public class RechercheInitializer implements CommandLineRunner {
+
+    private final RechercheService rechercheService;
+
+    @Override
+    public void run(String... args) {
+        try {
+            rechercheService.preparer();
+        } catch (Exception e) {
+            log.error("Impossible de créer les index de recherche: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package com.sh.erpcos.univers.securite.controller;
 
 import com.sh.erpcos.univers.securite.entity.AuditLog;
+import com.sh.erpcos.univers.securite.service.AuditExportService;
 import com.sh.erpcos.univers.securite.service.AuditService;
+import com.sh.erpcos.univers.securite.service.DetectionForceBruteService;
+import com.sh.erpcos.univers.securite.service.FluxAuditService;
+import com.sh.erpcos.univers.securite.service.RechercheService;
+import com.sh.erpcos.univers.securite.util.PageParCurseur;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 
@@ -27,31 +38,43 @@ import java.util.Map;
 public class AuditController {
     
     private final AuditService auditService;
+    private final AuditExportService auditExportService;
+    private final RechercheService rechercheService;
+    private final DetectionForceBruteService detectionForceBruteService;
+    private final FluxAuditService fluxAuditService;
     
     @GetMapping
     public String index(Model model,
-                       @RequestParam(defaultValue = "0") int page,
-                       @RequestParam(defaultValue = "20") int size) {
+                       @RequestParam(required = false) String curseur,
+                       @RequestParam(defaultValue = "20") int size,
+                       @RequestParam(defaultValue = "true") boolean total) {
         
-        Pageable pageable = PageRequest.of(page, size);
-        Page<AuditLog> auditLogs = auditService.getRecentLogs(pageable);
-        
-        model.addAttribute("auditLogs", auditLogs);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", auditLogs.getTotalPages());
-        model.addAttribute("totalElements", auditLogs.getTotalElements());
+        PageParCurseur<AuditLog> auditLogs = auditService.getRecentLogsParCurseur(curseur, size, total);
+        ajouterPage(model, auditLogs, curseur);
         
         // Statistiques rapides
-        LocalDateTime derniereSemaine = LocalDateTime.now().minusDays(7);
-        LocalDateTime maintenant = LocalDateTime.now();
-        
-        model.addAttribute("logsLastWeek", auditService.getLogCountByPeriod(derniereSemaine, maintenant));
-        model.addAttribute("errorLogsPage", auditService.getRecentErrorLogs(PageRequest.of(0, 5)));
-        model.addAttribute("criticalLogsPage", auditService.getRecentCriticalLogs(PageRequest.of(0, 5)));
+        model.addAttribute("logsLastWeek", auditService.getLogCountLastWeek());
+        model.addAttribute("errorLogsPage", auditService.searchLogsParCurseur(null, null, null, null, null,
+                null, null, false, null, 5, false));
+        model.addAttribute("criticalLogsPage", auditService.searchLogsParCurseur(null, null, null,
+                AuditLog.NiveauAudit.CRITICAL, null, null, null, null, null, 5, false));
         
         return "securite/audit/index";
     }
     
+    // Flux en direct des nouveaux événements (Server-Sent Events), filtré côté serveur
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(required = false) AuditLog.NiveauAudit niveau,
+                             @RequestParam(required = false) AuditLog.CategorieAudit categorie,
+                             @RequestParam(required = false) String username,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        try {
+            return fluxAuditService.abonner(niveau, categorie, username, lastEventId);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+    
     @GetMapping("/search")
     public String search(Model model,
                         @RequestParam(required = false) String username,
@@ -62,19 +85,23 @@ public class AuditController {
                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateFin,
                         @RequestParam(required = false) Boolean succes,
-                        @RequestParam(defaultValue = "0") int page,
-                        @RequestParam(defaultValue = "20") int size) {
-        
-        Pageable pageable = PageRequest.of(page, size);
-        Page<AuditLog> auditLogs = auditService.searchLogs(username, action, ressource, niveau, 
-                                                          categorie, dateDebut, dateFin, succes, pageable);
-        
-        model.addAttribute("auditLogs", auditLogs);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", auditLogs.getTotalPages());
-        model.addAttribute("totalElements", auditLogs.getTotalElements());
+                        @RequestParam(required = false) String q,
+                        @RequestParam(required = false) String curseur,
+                        @RequestParam(defaultValue = "20") int size,
+                        @RequestParam(defaultValue = "true") boolean total) {
+        
+        PageParCurseur<AuditLog> auditLogs = auditService.searchLogsParCurseur(username, action, ressource, niveau,
+                                                          categorie, dateDebut, dateFin, succes, curseur, size, total);
+        ajouterPage(model, auditLogs, curseur);
+        
+        // Recherche libre sur l'action et la ressource, classée par pertinence
+        if (q != null && !q.isBlank()) {
+            model.addAttribute("resultatsClasses", rechercheService.rechercher(q,
+                    EnumSet.of(RechercheService.Cible.AUDIT), 50));
+        }
         
         // Conserver les paramètres de recherche
+        model.addAttribute("searchQ", q);
         model.addAttribute("searchUsername", username);
         model.addAttribute("searchAction", action);
         model.addAttribute("searchRessource", ressource);
@@ -94,19 +121,16 @@ public class AuditController {
     @GetMapping("/user/{username}")
     public String userActivity(@PathVariable String username,
                               Model model,
-                              @RequestParam(defaultValue = "0") int page,
+                              @RequestParam(required = false) String curseur,
                               @RequestParam(defaultValue = "20") int size,
+                              @RequestParam(defaultValue = "true") boolean total,
                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateFin) {
         
-        Pageable pageable = PageRequest.of(page, size);
-        Page<AuditLog> auditLogs = auditService.getLogsByUser(username, pageable);
-        
-        model.addAttribute("auditLogs", auditLogs);
+        PageParCurseur<AuditLog> auditLogs = auditService.searchLogsParCurseur(username, null, null, null, null,
+                                                          null, null, null, curseur, size, total);
+        ajouterPage(model, auditLogs, curseur);
         model.addAttribute("username", username);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", auditLogs.getTotalPages());
-        model.addAttribute("totalElements", auditLogs.getTotalElements());
         
         // Activité détaillée si période spécifiée
         if (dateDebut != null && dateFin != null) {
@@ -141,7 +165,8 @@ public class AuditController {
         
         // Activités suspectes
         model.addAttribute("suspiciousActivities", auditService.getSuspiciousActivities(dateDebut, 5));
-        model.addAttribute("failedLogins", auditService.getFailedLoginAttempts());
+        model.addAttribute("failedLogins", auditService.getFailedLoginCount());
+        model.addAttribute("listeChaude", detectionForceBruteService.getListeChaude());
         
         model.addAttribute("dateDebut", dateDebut);
         model.addAttribute("dateFin", dateFin);
@@ -175,27 +200,31 @@ public class AuditController {
     
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('SECURITE_EXPORTER')")
-    @ResponseBody
-    public List<AuditLog> exportLogs(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
+    public ResponseEntity<StreamingResponseBody> exportLogs(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateFin,
                                     @RequestParam(required = false) AuditLog.NiveauAudit niveau,
-                                    @RequestParam(required = false) AuditLog.CategorieAudit categorie) {
+                                    @RequestParam(required = false) AuditLog.CategorieAudit categorie,
+                                    @RequestParam(defaultValue = "CSV") AuditExportService.Format format,
+                                    @RequestParam(defaultValue = "false") boolean gzip) {
         
         // Période par défaut : derniers 30 jours
-        if (dateDebut == null) {
-            dateDebut = LocalDateTime.now().minusDays(30);
-        }
-        if (dateFin == null) {
-            dateFin = LocalDateTime.now();
-        }
-        
-        List<AuditLog> logs = auditService.exportLogs(dateDebut, dateFin, niveau, categorie);
-        
-        // Log de l'export
-        auditService.logDataAccess("AUDIT_LOGS", null, "EXPORT", 
-                                  "Export de " + logs.size() + " logs d'audit");
-        
-        return logs;
+        LocalDateTime debut = dateDebut != null ? dateDebut : LocalDateTime.now().minusDays(30);
+        LocalDateTime fin = dateFin != null ? dateFin : LocalDateTime.now();
+        
+        // Les lignes sont écrites au fil de la lecture, sans charger la période en mémoire
+        StreamingResponseBody corps = sortie -> {
+            long nombre = auditExportService.exporter(sortie, format, gzip, debut, fin, niveau, categorie);
+            
+            // Log de l'export
+            auditService.logDataAccess("AUDIT_LOGS", null, "EXPORT", 
+                                      "Export de " + nombre + " logs d'audit");
+        };
+        
+        String nomFichier = "audit-logs." + format.getExtension() + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.parseMediaType(format.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(nomFichier).build().toString())
+                .body(corps);
     }
     
     @PostMapping("/cleanup")
@@ -218,16 +247,13 @@ public class AuditController {
     
     @GetMapping("/errors")
     public String errorLogs(Model model,
-                          @RequestParam(defaultValue = "0") int page,
-                          @RequestParam(defaultValue = "20") int size) {
+                          @RequestParam(required = false) String curseur,
+                          @RequestParam(defaultValue = "20") int size,
+                          @RequestParam(defaultValue = "true") boolean total) {
         
-        Pageable pageable = PageRequest.of(page, size);
-        Page<AuditLog> errorLogs = auditService.getRecentErrorLogs(pageable);
-        
-        model.addAttribute("auditLogs", errorLogs);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", errorLogs.getTotalPages());
-        model.addAttribute("totalElements", errorLogs.getTotalElements());
+        PageParCurseur<AuditLog> errorLogs = auditService.searchLogsParCurseur(null, null, null, null, null,
+                                                          null, null, false, curseur, size, total);
+        ajouterPage(model, errorLogs, curseur);
         model.addAttribute("pageTitle", "Logs d'erreur");
         
         return "securite/audit/errors";
@@ -235,16 +261,13 @@ public class AuditController {
     
     @GetMapping("/critical")
     public String criticalLogs(Model model,
-                             @RequestParam(defaultValue = "0") int page,
-                             @RequestParam(defaultValue = "20") int size) {
-        
-        Pageable pageable = PageRequest.of(page, size);
-        Page<AuditLog> criticalLogs = auditService.getRecentCriticalLogs(pageable);
+                             @RequestParam(required = false) String curseur,
+                             @RequestParam(defaultValue = "20") int size,
+                             @RequestParam(defaultValue = "true") boolean total) {
         
-        model.addAttribute("auditLogs", criticalLogs);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", criticalLogs.getTotalPages());
-        model.addAttribute("totalElements", criticalLogs.getTotalElements());
+        PageParCurseur<AuditLog> criticalLogs = auditService.searchLogsParCurseur(null, null, null,
+                AuditLog.NiveauAudit.CRITICAL, null, null, null, null, curseur, size, total);
+        ajouterPage(model, criticalLogs, curseur);
         model.addAttribute("pageTitle", "Logs critiques");
         
         return "securite/audit/critical";
@@ -252,21 +275,13 @@ public class AuditController {
     
     @GetMapping("/security-events")
     public String securityEvents(Model model,
-                               @RequestParam(defaultValue = "0") int page,
-                               @RequestParam(defaultValue = "20") int size) {
+                               @RequestParam(required = false) String curseur,
+                               @RequestParam(defaultValue = "20") int size,
+                               @RequestParam(defaultValue = "true") boolean total) {
         
-        Pageable pageable = PageRequest.of(page, size);
-        List<AuditLog> securityEvents = auditService.getLogsByCategory(AuditLog.CategorieAudit.SECURITY_EVENT);
-        
-        // Convertir en page pour la cohérence
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), securityEvents.size());
-        List<AuditLog> pageContent = securityEvents.subList(start, end);
-        
-        model.addAttribute("auditLogs", pageContent);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", (int) Math.ceil((double) securityEvents.size() / size));
-        model.addAttribute("totalElements", securityEvents.size());
+        PageParCurseur<AuditLog> securityEvents = auditService.searchLogsParCurseur(null, null, null, null,
+                AuditLog.CategorieAudit.SECURITY_EVENT, null, null, null, curseur, size, total);
+        ajouterPage(model, securityEvents, curseur);
         model.addAttribute("pageTitle", "Événements de sécurité");
         
         return "securite/audit/security-events";
@@ -279,11 +294,22 @@ public class AuditController {
         model.addAttribute("failedLogins", failedLogins);
         model.addAttribute("totalFailedLogins", failedLogins.size());
         
-        // Activités suspectes (plus de 5 tentatives échouées)
-        LocalDateTime derniereSemaine = LocalDateTime.now().minusDays(7);
-        List<Object[]> suspiciousActivities = auditService.getSuspiciousActivities(derniereSemaine, 5);
-        model.addAttribute("suspiciousActivities", suspiciousActivities);
+        // Utilisateurs et adresses IP au-dessus des seuils de force brute (détection en mémoire)
+        model.addAttribute("suspiciousActivities", detectionForceBruteService.getListeChaude());
         
         return "securite/audit/failed-logins";
     }
-}
\ No newline at end of file
+    
+    @GetMapping("/suspects")
+    @ResponseBody
+    public List<DetectionForceBruteService.Suspect> suspects() {
+        return detectionForceBruteService.getListeChaude();
+    }
+    
+    private static void ajouterPage(Model model, PageParCurseur<AuditLog> auditLogs, String curseur) {
+        model.addAttribute("auditLogs", auditLogs);
+        model.addAttribute("curseur", curseur);
+        model.addAttribute("curseurSuivant", auditLogs.getCurseurSuivant());
+        model.addAttribute("totalApproximatif", auditLogs.getTotalApproximatif());
+    }
+}
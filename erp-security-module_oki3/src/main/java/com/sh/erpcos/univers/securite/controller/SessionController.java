@@ -2,6 +2,7 @@ package com.sh.erpcos.univers.securite.controller;
 
 import com.sh.erpcos.univers.securite.entity.UserSession;
 import com.sh.erpcos.univers.securite.service.SessionService;
+import com.sh.erpcos.univers.securite.util.PageParCurseur;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -31,24 +32,19 @@ public class SessionController {
     
     @GetMapping
     public String index(Model model,
-                       @RequestParam(defaultValue = "0") int page,
-                       @RequestParam(defaultValue = "20") int size) {
+                       @RequestParam(required = false) String curseur,
+                       @RequestParam(defaultValue = "20") int size,
+                       @RequestParam(defaultValue = "true") boolean total) {
         
-        Pageable pageable = PageRequest.of(page, size);
-        Page<UserSession> activeSessions = sessionService.getAllActiveSessionsPage(pageable);
-        
-        model.addAttribute("sessions", activeSessions);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", activeSessions.getTotalPages());
-        model.addAttribute("totalElements", activeSessions.getTotalElements());
+        PageParCurseur<UserSession> activeSessions = sessionService.searchSessionsParCurseur(null, null, null,
+                null, null, true, curseur, size, total);
+        ajouterPage(model, activeSessions, curseur);
         
         // Statistiques rapides
         model.addAttribute("activeSessionCount", sessionService.getActiveSessionCount());
         model.addAttribute("activeUserCount", sessionService.getActiveUserCount());
         
-        LocalDateTime derniereSemaine = LocalDateTime.now().minusDays(7);
-        LocalDateTime maintenant = LocalDateTime.now();
-        model.addAttribute("sessionsLastWeek", sessionService.getSessionCountByPeriod(derniereSemaine, maintenant));
+        model.addAttribute("sessionsLastWeek", sessionService.getSessionCountLastWeek());
         
         return "securite/sessions/dashboard";
     }
@@ -60,17 +56,13 @@ public class SessionController {
                         @RequestParam(required = false) Boolean sessionActive,
                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateFin,
-                        @RequestParam(defaultValue = "0") int page,
-                        @RequestParam(defaultValue = "20") int size) {
-        
-        Pageable pageable = PageRequest.of(page, size);
-        Page<UserSession> sessions = sessionService.searchSessions(utilisateurId, ipAddress, sessionActive, 
-                                                                  dateDebut, dateFin, pageable);
+                        @RequestParam(required = false) String curseur,
+                        @RequestParam(defaultValue = "20") int size,
+                        @RequestParam(defaultValue = "true") boolean total) {
         
-        model.addAttribute("sessions", sessions);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", sessions.getTotalPages());
-        model.addAttribute("totalElements", sessions.getTotalElements());
+        PageParCurseur<UserSession> sessions = sessionService.searchSessionsParCurseur(utilisateurId, ipAddress,
+                sessionActive, dateDebut, dateFin, false, curseur, size, total);
+        ajouterPage(model, sessions, curseur);
         
         // Conserver les paramètres de recherche
         model.addAttribute("searchUtilisateurId", utilisateurId);
@@ -85,23 +77,17 @@ public class SessionController {
     @GetMapping("/user/{utilisateurId}")
     public String userSessions(@PathVariable Long utilisateurId,
                               Model model,
-                              @RequestParam(defaultValue = "0") int page,
-                              @RequestParam(defaultValue = "20") int size) {
+                              @RequestParam(required = false) String curseur,
+                              @RequestParam(defaultValue = "20") int size,
+                              @RequestParam(defaultValue = "true") boolean total) {
         
-        List<UserSession> userSessions = sessionService.getSessionsByUser(utilisateurId);
+        PageParCurseur<UserSession> userSessions = sessionService.searchSessionsParCurseur(utilisateurId, null, null,
+                null, null, false, curseur, size, total);
         List<UserSession> activeSessions = sessionService.getActiveSessionsForUser(utilisateurId);
         
-        // Pagination manuelle pour les sessions utilisateur
-        int start = page * size;
-        int end = Math.min(start + size, userSessions.size());
-        List<UserSession> pageContent = userSessions.subList(start, end);
-        
-        model.addAttribute("sessions", pageContent);
+        ajouterPage(model, userSessions, curseur);
         model.addAttribute("activeSessions", activeSessions);
         model.addAttribute("utilisateurId", utilisateurId);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", (int) Math.ceil((double) userSessions.size() / size));
-        model.addAttribute("totalElements", userSessions.size());
         model.addAttribute("activeSessionCount", activeSessions.size());
         
         return "securite/sessions/user-sessions";
@@ -260,16 +246,13 @@ public class SessionController {
     
     @GetMapping("/active")
     public String activeSessions(Model model,
-                               @RequestParam(defaultValue = "0") int page,
-                               @RequestParam(defaultValue = "20") int size) {
-        
-        Pageable pageable = PageRequest.of(page, size);
-        Page<UserSession> activeSessions = sessionService.getAllActiveSessionsPage(pageable);
+                               @RequestParam(required = false) String curseur,
+                               @RequestParam(defaultValue = "20") int size,
+                               @RequestParam(defaultValue = "true") boolean total) {
         
-        model.addAttribute("sessions", activeSessions);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", activeSessions.getTotalPages());
-        model.addAttribute("totalElements", activeSessions.getTotalElements());
+        PageParCurseur<UserSession> activeSessions = sessionService.searchSessionsParCurseur(null, null, null,
+                null, null, true, curseur, size, total);
+        ajouterPage(model, activeSessions, curseur);
         model.addAttribute("pageTitle", "Sessions actives");
         
         return "securite/sessions/active";
@@ -279,8 +262,9 @@ public class SessionController {
     public String sessionHistory(Model model,
                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateFin,
-                               @RequestParam(defaultValue = "0") int page,
-                               @RequestParam(defaultValue = "20") int size) {
+                               @RequestParam(required = false) String curseur,
+                               @RequestParam(defaultValue = "20") int size,
+                               @RequestParam(defaultValue = "true") boolean total) {
         
         // Période par défaut : derniers 7 jours
         if (dateDebut == null) {
@@ -290,13 +274,9 @@ public class SessionController {
             dateFin = LocalDateTime.now();
         }
         
-        Pageable pageable = PageRequest.of(page, size);
-        Page<UserSession> sessions = sessionService.getSessionsByPeriod(dateDebut, dateFin, pageable);
-        
-        model.addAttribute("sessions", sessions);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", sessions.getTotalPages());
-        model.addAttribute("totalElements", sessions.getTotalElements());
+        PageParCurseur<UserSession> sessions = sessionService.searchSessionsParCurseur(null, null, null,
+                dateDebut, dateFin, false, curseur, size, total);
+        ajouterPage(model, sessions, curseur);
         model.addAttribute("dateDebut", dateDebut);
         model.addAttribute("dateFin", dateFin);
         model.addAttribute("pageTitle", "Historique des sessions");
@@ -347,4 +327,11 @@ public class SessionController {
         
         return "securite/sessions/report";
     }
-}
\ No newline at end of file
+    
+    private static void ajouterPage(Model model, PageParCurseur<UserSession> sessions, String curseur) {
+        model.addAttribute("sessions", sessions);
+        model.addAttribute("curseur", curseur);
+        model.addAttribute("curseurSuivant", sessions.getCurseurSuivant());
+        model.addAttribute("totalApproximatif", sessions.getTotalApproximatif());
+    }
+}
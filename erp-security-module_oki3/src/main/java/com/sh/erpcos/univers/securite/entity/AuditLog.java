@@ -10,11 +10,15 @@ import lombok.AllArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "audit_logs",
-uniqueConstraints = {
-	    @UniqueConstraint(name = "uk_session_id", columnNames = "session_id"),
-	 }
-	)
+// Table partitionnée par mois sur date_action (voir AuditPartitionService) : clé primaire (id, date_action)
+// Un index par combinaison de filtres courante (voir AuditLogSpecifications), tous terminés par la clé de tri
+@Table(name = "audit_logs", indexes = {
+    @Index(name = "idx_audit_logs_date_action_id", columnList = "date_action, id"),
+    @Index(name = "idx_audit_logs_username_date", columnList = "username, date_action, id"),
+    @Index(name = "idx_audit_logs_categorie_succes_date", columnList = "categorie, succes, date_action, id"),
+    @Index(name = "idx_audit_logs_niveau_date", columnList = "niveau, date_action, id"),
+    @Index(name = "idx_audit_logs_ip_date", columnList = "ip_address, date_action, id")
+})
 @Getter
 @Setter
 @ToString
@@ -47,6 +51,10 @@ public class AuditLog {
     @Column(name = "ip_address", length = 45)
     private String ipAddress;
     
+    // Renseignée à partir de l'adresse IP (GeolocalisationIpService)
+    @Column(name = "localisation", length = 200)
+    private String localisation;
+    
     @Column(name = "user_agent", length = 500)
     private String userAgent;
     
@@ -70,6 +78,17 @@ public class AuditLog {
     @Column(name = "message_erreur", length = 500)
     private String messageErreur;
     
+    // Événements identiques regroupés sur une fenêtre (voir RegroupementAuditService) : date_action
+    // est celle de la première occurrence, les deux dates ne sont renseignées que si nombreOccurrences > 1
+    @Column(name = "nombre_occurrences", nullable = false, columnDefinition = "INTEGER NOT NULL DEFAULT 1")
+    private Integer nombreOccurrences = 1;
+    
+    @Column(name = "date_premiere_occurrence")
+    private LocalDateTime datePremiereOccurrence;
+    
+    @Column(name = "date_derniere_occurrence")
+    private LocalDateTime dateDerniereOccurrence;
+    
     public enum NiveauAudit {
         INFO, WARNING, ERROR, CRITICAL
     }
@@ -13,7 +13,11 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "user_sessions" , 
 		indexes = {
-	    @Index(name = "idx_date_expiration", columnList = "date_expiration")
+	    @Index(name = "idx_date_expiration", columnList = "date_expiration"),
+	    @Index(name = "idx_user_sessions_date_creation_id", columnList = "date_creation, id"),
+	    @Index(name = "idx_user_sessions_ip_date_creation", columnList = "ip_address, date_creation"),
+	    @Index(name = "idx_user_sessions_utilisateur_date_creation", columnList = "utilisateur_id, date_creation, id"),
+	    @Index(name = "idx_user_sessions_active_date_creation", columnList = "session_active, date_creation, id")
 	})
 @Getter
 @Setter
@@ -57,9 +61,15 @@ public class UserSession {
     @Column(name = "navigateur", length = 100)
     private String navigateur;
     
+    @Column(name = "version_navigateur", length = 20)
+    private String versionNavigateur; // version majeure
+    
     @Column(name = "systeme_exploitation", length = 100)
     private String systemeExploitation;
     
+    @Column(name = "type_appareil", length = 20)
+    private String typeAppareil; // Ordinateur, Mobile, Tablette, Robot
+    
     @Column(name = "localisation", length = 200)
     private String localisation;
     
@@ -6,6 +6,7 @@ import com.sh.erpcos.univers.securite.entity.UserSession;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -14,7 +15,8 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
+// Recherches multicritères : voir AuditLogSpecifications
+public interface AuditLogRepository extends JpaRepository<AuditLog, Long>, JpaSpecificationExecutor<AuditLog> {
 	
 	
 
@@ -51,42 +53,9 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     // Recherche par session
     List<AuditLog> findBySessionIdOrderByDateActionDesc(String sessionId);
     
-    // Recherche combinée avec JPQL
-    @Query("SELECT a FROM AuditLog a WHERE " +
-           "(:username IS NULL OR a.username = :username) AND " +
-           "(:action IS NULL OR LOWER(a.action) LIKE LOWER(CONCAT('%', :action, '%'))) AND " +
-           "(:ressource IS NULL OR LOWER(a.ressource) LIKE LOWER(CONCAT('%', :ressource, '%'))) AND " +
-           "(:niveau IS NULL OR a.niveau = :niveau) AND " +
-           "(:categorie IS NULL OR a.categorie = :categorie) AND " +
-           "(:dateDebut IS NULL OR a.dateAction >= :dateDebut) AND " +
-           "(:dateFin IS NULL OR a.dateAction <= :dateFin) AND " +
-           "(:succes IS NULL OR a.succes = :succes) " +
-           "ORDER BY a.dateAction DESC")
-    Page<AuditLog> rechercheAvancee(@Param("username") String username,
-                                   @Param("action") String action,
-                                   @Param("ressource") String ressource,
-                                   @Param("niveau") AuditLog.NiveauAudit niveau,
-                                   @Param("categorie") AuditLog.CategorieAudit categorie,
-                                   @Param("dateDebut") LocalDateTime dateDebut,
-                                   @Param("dateFin") LocalDateTime dateFin,
-                                   @Param("succes") Boolean succes,
-                                   Pageable pageable);
-    
-    // Statistiques avec JPQL
+    // Statistiques (les regroupements par niveau, catégorie, utilisateur et action sont lus dans AuditRollupService)
     long countByDateActionBetween(LocalDateTime dateDebut, LocalDateTime dateFin);
     
-    @Query("SELECT a.niveau, COUNT(a) FROM AuditLog a WHERE a.dateAction BETWEEN :dateDebut AND :dateFin GROUP BY a.niveau")
-    List<Object[]> getStatistiquesParNiveau(@Param("dateDebut") LocalDateTime dateDebut, @Param("dateFin") LocalDateTime dateFin);
-    
-    @Query("SELECT a.categorie, COUNT(a) FROM AuditLog a WHERE a.dateAction BETWEEN :dateDebut AND :dateFin GROUP BY a.categorie")
-    List<Object[]> getStatistiquesParCategorie(@Param("dateDebut") LocalDateTime dateDebut, @Param("dateFin") LocalDateTime dateFin);
-    
-    @Query("SELECT a.username, COUNT(a) FROM AuditLog a WHERE a.dateAction BETWEEN :dateDebut AND :dateFin GROUP BY a.username ORDER BY COUNT(a) DESC")
-    List<Object[]> getStatistiquesParUtilisateur(@Param("dateDebut") LocalDateTime dateDebut, @Param("dateFin") LocalDateTime dateFin);
-    
-    @Query("SELECT a.action, COUNT(a) FROM AuditLog a WHERE a.dateAction BETWEEN :dateDebut AND :dateFin GROUP BY a.action ORDER BY COUNT(a) DESC")
-    List<Object[]> getStatistiquesParAction(@Param("dateDebut") LocalDateTime dateDebut, @Param("dateFin") LocalDateTime dateFin);
-    
     // Logs récents
     Page<AuditLog> findAllByOrderByDateActionDesc(Pageable pageable);
     
@@ -102,20 +71,6 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     // Tentatives de connexion échouées
     List<AuditLog> findByCategorieAndSuccesFalseOrderByDateActionDesc(AuditLog.CategorieAudit categorie);
     
-    // Activités suspectes avec JPQL
-    @Query("SELECT a.username, a.ipAddress, COUNT(a) FROM AuditLog a " +
-           "WHERE a.categorie = :categorie AND a.succes = false " +
-           "AND a.dateAction >= :dateDebut " +
-           "GROUP BY a.username, a.ipAddress " +
-           "HAVING COUNT(a) >= :seuilTentatives " +
-           "ORDER BY COUNT(a) DESC")
-    List<Object[]> findActivitesSuspectes(@Param("categorie") AuditLog.CategorieAudit categorie,
-                                         @Param("dateDebut") LocalDateTime dateDebut, 
-                                         @Param("seuilTentatives") long seuilTentatives);
-    
-    // Nettoyage des anciens logs
-    void deleteByDateActionBefore(LocalDateTime dateLimit);
-    
     //added
     long countByDateActionAfter(LocalDateTime dateAction);
     long countBySuccesFalseAndDateActionAfter(LocalDateTime dateAction);
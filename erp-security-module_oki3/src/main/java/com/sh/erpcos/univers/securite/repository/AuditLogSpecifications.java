@@ -0,0 +1,55 @@
+package com.sh.erpcos.univers.securite.repository;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Critères de recherche des journaux d'audit.
+ *
+ * Seuls les filtres renseignés produisent un prédicat : la requête générée correspond exactement
+ * à la combinaison demandée et peut utiliser l'index composite adapté (voir AuditLog), là où
+ * "(:x IS NULL OR col = :x)" conduisait à un parcours séquentiel.
+ */
+public final class AuditLogSpecifications {
+
+    private AuditLogSpecifications() {
+    }
+
+    public static Specification<AuditLog> recherche(String username, String action, String ressource,
+                                                    AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie,
+                                                    LocalDateTime dateDebut, LocalDateTime dateFin, Boolean succes) {
+        return (root, query, cb) -> {
+            List<Predicate> predicats = new ArrayList<>();
+            if (username != null) {
+                predicats.add(cb.equal(root.get("username"), username));
+            }
+            if (action != null) {
+                predicats.add(cb.like(cb.lower(root.get("action")), "%" + action.toLowerCase() + "%"));
+            }
+            if (ressource != null) {
+                predicats.add(cb.like(cb.lower(root.get("ressource")), "%" + ressource.toLowerCase() + "%"));
+            }
+            if (niveau != null) {
+                predicats.add(cb.equal(root.get("niveau"), niveau));
+            }
+            if (categorie != null) {
+                predicats.add(cb.equal(root.get("categorie"), categorie));
+            }
+            if (dateDebut != null) {
+                predicats.add(cb.greaterThanOrEqualTo(root.get("dateAction"), dateDebut));
+            }
+            if (dateFin != null) {
+                predicats.add(cb.lessThanOrEqualTo(root.get("dateAction"), dateFin));
+            }
+            if (succes != null) {
+                predicats.add(cb.equal(root.get("succes"), succes));
+            }
+            return cb.and(predicats.toArray(Predicate[]::new));
+        };
+    }
+}
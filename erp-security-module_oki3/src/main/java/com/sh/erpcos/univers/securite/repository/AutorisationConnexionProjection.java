@@ -0,0 +1,26 @@
+package com.sh.erpcos.univers.securite.repository;
+
+/**
+ * Ligne plate (utilisateur, rôle) lue à la connexion, sans entité gérée.
+ * roleId et roleNom sont null pour un utilisateur sans rôle.
+ */
+public interface AutorisationConnexionProjection {
+
+    Long getUtilisateurId();
+
+    String getUsername();
+
+    String getPassword();
+
+    boolean getCompteActif();
+
+    boolean getCompteNonExpire();
+
+    boolean getCredentialsNonExpire();
+
+    boolean getCompteNonVerrouille();
+
+    Long getRoleId();
+
+    String getRoleNom();
+}
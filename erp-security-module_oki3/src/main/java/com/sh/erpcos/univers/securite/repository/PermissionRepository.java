@@ -38,15 +38,16 @@ public interface PermissionRepository extends JpaRepository<Permission, Integer>
     @Query("SELECT DISTINCT p.nomAction FROM Permission p WHERE p.nomModule = :nomModule AND p.permissionActif = true ORDER BY p.nomAction")
     List<String> findActionsByModule(@Param("nomModule") String nomModule);
     
-    @Query("SELECT p FROM Permission p WHERE p.nom LIKE %:recherche% OR p.description LIKE %:recherche% OR p.nomModule LIKE %:recherche%")
-    List<Permission> rechercherPermissions(@Param("recherche") String recherche);
-    
     @Query("SELECT p FROM Permission p WHERE p.urlPattern IS NOT NULL AND p.urlPattern != ''")
     List<Permission> findPermissionsAvecUrlPattern();
     
     @Query("SELECT p FROM Permission p ORDER BY p.nomModule ASC, p.nomAction ASC")
     List<Permission> findAllOrderByModuleEtAction();
     
+    // Règles d'URL (id, motif de la permission, motif du module, module actif) des permissions actives
+    @Query("SELECT p.id, p.urlPattern, m.urlPattern, m.actif FROM Permission p LEFT JOIN p.module m WHERE p.permissionActif = true")
+    List<Object[]> findReglesUrlActives();
+    
     @Query("SELECT COUNT(p) FROM Permission p WHERE p.permissionActif = true")
     long countPermissionsActives();
     
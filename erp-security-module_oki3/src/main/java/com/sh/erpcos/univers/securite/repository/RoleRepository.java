@@ -36,12 +36,17 @@ public interface RoleRepository extends JpaRepository<Role, Long> {
     @Query("SELECT r FROM Role r JOIN r.permissions p WHERE p.nomModule = :nomModule")
     List<Role> findByModule(@Param("nomModule") String nomModule);
     
-    @Query("SELECT r FROM Role r WHERE r.nom LIKE %:recherche% OR r.description LIKE %:recherche%")
-    List<Role> rechercherRoles(@Param("recherche") String recherche);
-    
     @Query("SELECT r FROM Role r ORDER BY r.niveauHierarchie ASC, r.nom ASC")
     List<Role> findAllOrderByHierarchie();
     
+    // Liens (id du rôle, id du parent) pour le calcul de la fermeture hiérarchique
+    @Query("SELECT r.id, p.id FROM Role r LEFT JOIN r.roleParent p")
+    List<Object[]> findLiensHierarchie();
+    
+    // Permissions directes (id du rôle, id, nom, actif) de tous les rôles
+    @Query("SELECT r.id, p.id, p.nom, p.permissionActif FROM Role r JOIN r.permissions p")
+    List<Object[]> findPermissionsDirectes();
+    
     @Query("SELECT COUNT(r) FROM Role r WHERE r.roleActif = true")
     long countRolesActifs();
     
@@ -5,6 +5,7 @@ import com.sh.erpcos.univers.securite.entity.Utilisateur;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -16,7 +17,8 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserSessionRepository extends JpaRepository<UserSession, Long> {
+// Recherches multicritères : voir UserSessionSpecifications
+public interface UserSessionRepository extends JpaRepository<UserSession, Long>, JpaSpecificationExecutor<UserSession> {
 
     // Recherche par session ID
     Optional<UserSession> findBySessionId(String sessionId);
@@ -26,6 +28,7 @@ public interface UserSessionRepository extends JpaRepository<UserSession, Long>
     // Sessions par utilisateur
     List<UserSession> findByUtilisateurOrderByDateCreationDesc(Utilisateur utilisateur);
     List<UserSession> findByUtilisateurIdOrderByDateCreationDesc(Long utilisateurId);
+    Optional<UserSession> findFirstByUtilisateurIdOrderByDateCreationDesc(Long utilisateurId);
 
     // Sessions actives - méthodes dérivées
     List<UserSession> findBySessionActiveTrueAndDateExpirationAfterOrderByDateCreationDesc(LocalDateTime maintenant);
@@ -110,50 +113,53 @@ public interface UserSessionRepository extends JpaRepository<UserSession, Long>
     @Query("SELECT AVG(s.dureeSession) FROM UserSession s WHERE s.dureeSession IS NOT NULL AND s.dateCreation >= :dateDebut AND s.dateCreation <= :dateFin")
     Double getAverageSessionDuration(@Param("dateDebut") LocalDateTime dateDebut, @Param("dateFin") LocalDateTime dateFin);
 
-    // Recherche avancée avec critères optionnels
-    @Query("SELECT s FROM UserSession s WHERE " +
-           "(:utilisateurId IS NULL OR s.utilisateur.id = :utilisateurId) AND " +
-           "(:ipAddress IS NULL OR s.ipAddress = :ipAddress) AND " +
-           "(:sessionActive IS NULL OR s.sessionActive = :sessionActive) AND " +
-           "(:dateDebut IS NULL OR s.dateCreation >= :dateDebut) AND " +
-           "(:dateFin IS NULL OR s.dateCreation <= :dateFin) " +
-           "ORDER BY s.dateCreation DESC")
-    Page<UserSession> rechercheAvancee(@Param("utilisateurId") Long utilisateurId,
-                                       @Param("ipAddress") String ipAddress,
-                                       @Param("sessionActive") Boolean sessionActive,
-                                       @Param("dateDebut") LocalDateTime dateDebut,
-                                       @Param("dateFin") LocalDateTime dateFin,
-                                       Pageable pageable);
-
-    // Sessions suspectes - attention: requête dépendante du dialecte (EXTRACT/EPOCH)
-      @Query(value = """
-            SELECT u.username,
-                   s1.ip_address,
-                   s2.ip_address,
-                   s1.date_creation,
-                   s2.date_creation
-            FROM user_sessions s1
-            JOIN user_sessions s2
-                  ON s1.utilisateur_id = s2.utilisateur_id
-            JOIN utilisateurs u
-                  ON s1.utilisateur_id = u.id
-            WHERE s1.id <> s2.id
-              AND s1.ip_address <> s2.ip_address
-              AND s1.session_active = true
-              AND s2.session_active = true
-              AND s1.date_creation >= :dateDebut
-              AND ABS(
-                    EXTRACT(EPOCH FROM (s1.date_creation - s2.date_creation))
-                  ) < (:intervalleMinutes * 60)
-            """, nativeQuery = true)
-        List<Object[]> findSuspiciousSessions(@Param("dateDebut") LocalDateTime dateDebut,
-                                              @Param("intervalleMinutes") long intervalleMinutes);
+
     // Nettoyage des anciennes sessions
     @Modifying
     @Transactional
     @Query("DELETE FROM UserSession s WHERE s.sessionActive = false AND s.dateCreation < :dateLimit")
     int deleteOldInactiveSessions(@Param("dateLimit") LocalDateTime dateLimit);
 
+    // Cycle de vie ensembliste : un seul UPDATE, duree_session calculée en SQL comme dans
+    // UserSession.terminateSession(). RETURNING renvoie les sessions modifiées pour l'audit, ce qu'un
+    // @Modifying (executeUpdate, nombre de lignes) ne permet pas : à appeler dans une transaction.
+    @Query(value = """
+            UPDATE user_sessions
+               SET session_active = false,
+                   date_derniere_activite = CAST(:maintenant AS timestamp),
+                   duree_session = FLOOR(EXTRACT(EPOCH FROM (CAST(:maintenant AS timestamp) - date_creation)) / 60)
+             WHERE session_active = true
+               AND date_expiration <= CAST(:maintenant AS timestamp)
+            RETURNING session_id
+            """, nativeQuery = true)
+    List<String> expirerSessions(@Param("maintenant") LocalDateTime maintenant);
+
+    // Lot échu dans la roue d'expiration ; une session prolongée entre-temps n'est pas touchée
+    @Query(value = """
+            UPDATE user_sessions
+               SET session_active = false,
+                   date_derniere_activite = CAST(:maintenant AS timestamp),
+                   duree_session = FLOOR(EXTRACT(EPOCH FROM (CAST(:maintenant AS timestamp) - date_creation)) / 60)
+             WHERE session_active = true
+               AND session_id IN (:sessionIds)
+               AND date_expiration <= CAST(:maintenant AS timestamp)
+            RETURNING session_id
+            """, nativeQuery = true)
+    List<String> expirerSessionsParId(@Param("sessionIds") List<String> sessionIds,
+                                      @Param("maintenant") LocalDateTime maintenant);
+
+    @Query(value = """
+            UPDATE user_sessions
+               SET session_active = false,
+                   date_derniere_activite = CAST(:maintenant AS timestamp),
+                   duree_session = FLOOR(EXTRACT(EPOCH FROM (CAST(:maintenant AS timestamp) - date_creation)) / 60)
+             WHERE session_active = true
+               AND utilisateur_id = :utilisateurId
+            RETURNING session_id
+            """, nativeQuery = true)
+    List<String> terminerSessionsUtilisateur(@Param("utilisateurId") Long utilisateurId,
+                                             @Param("maintenant") LocalDateTime maintenant);
+
 
     //added
 
@@ -0,0 +1,60 @@
+package com.sh.erpcos.univers.securite.repository;
+
+import com.sh.erpcos.univers.securite.entity.UserSession;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Critères de recherche des sessions : seuls les filtres renseignés produisent un prédicat.
+ */
+public final class UserSessionSpecifications {
+
+    private UserSessionSpecifications() {
+    }
+
+    /**
+     * @param expirationApres si renseignée, ne retient que les sessions expirant après cette date
+     */
+    public static Specification<UserSession> recherche(Long utilisateurId, String ipAddress, Boolean sessionActive,
+                                                       LocalDateTime dateDebut, LocalDateTime dateFin,
+                                                       LocalDateTime expirationApres) {
+        return (root, query, cb) -> {
+            List<Predicate> predicats = new ArrayList<>();
+            if (utilisateurId != null) {
+                predicats.add(cb.equal(root.get("utilisateur").get("id"), utilisateurId));
+            }
+            if (ipAddress != null) {
+                predicats.add(cb.equal(root.get("ipAddress"), ipAddress));
+            }
+            if (sessionActive != null) {
+                predicats.add(cb.equal(root.get("sessionActive"), sessionActive));
+            }
+            if (dateDebut != null) {
+                predicats.add(cb.greaterThanOrEqualTo(root.get("dateCreation"), dateDebut));
+            }
+            if (dateFin != null) {
+                predicats.add(cb.lessThanOrEqualTo(root.get("dateCreation"), dateFin));
+            }
+            if (expirationApres != null) {
+                predicats.add(cb.greaterThan(root.get("dateExpiration"), expirationApres));
+            }
+            return cb.and(predicats.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Charge l'utilisateur de chaque session dans la même requête (hors requête de comptage).
+     */
+    public static Specification<UserSession> avecUtilisateur() {
+        return (root, query, cb) -> {
+            if (query != null && !Long.class.equals(query.getResultType())) {
+                root.fetch("utilisateur");
+            }
+            return null;
+        };
+    }
+}
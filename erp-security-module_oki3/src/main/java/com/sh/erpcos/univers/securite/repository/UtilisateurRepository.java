@@ -4,6 +4,7 @@ import com.sh.erpcos.univers.securite.entity.Utilisateur;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -15,7 +16,8 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UtilisateurRepository extends JpaRepository<Utilisateur, Long> {
+// Recherches multicritères : voir UtilisateurSpecifications
+public interface UtilisateurRepository extends JpaRepository<Utilisateur, Long>, JpaSpecificationExecutor<Utilisateur> {
 	
 
     
@@ -27,8 +29,21 @@ public interface UtilisateurRepository extends JpaRepository<Utilisateur, Long>
             "WHERE u.username = :username")
      Optional<Utilisateur> findByUsernameWithPermissions(@Param("username") String username);
     
+    // Chargement de connexion : une ligne par rôle, les permissions viennent de la fermeture hiérarchique
+    @Query("SELECT u.id AS utilisateurId, u.username AS username, u.password AS password, " +
+            "u.compteActif AS compteActif, u.compteNonExpire AS compteNonExpire, " +
+            "u.credentialsNonExpire AS credentialsNonExpire, u.compteNonVerrouille AS compteNonVerrouille, " +
+            "r.id AS roleId, r.nom AS roleNom " +
+            "FROM Utilisateur u LEFT JOIN u.roles r " +
+            "WHERE u.username = :username")
+    List<AutorisationConnexionProjection> findAutorisationsConnexion(@Param("username") String username);
+    
     Optional<Utilisateur> findByEmail(String email);
     
+    // Nom seul, sans charger le graphe de l'utilisateur
+    @Query("SELECT u.username FROM Utilisateur u WHERE u.id = :id")
+    Optional<String> findUsernameById(@Param("id") Long id);
+    
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
@@ -44,12 +59,6 @@ public interface UtilisateurRepository extends JpaRepository<Utilisateur, Long>
     @Query("SELECT u FROM Utilisateur u JOIN u.roles r JOIN r.permissions p WHERE p.nomModule = :nomModule")
     List<Utilisateur> findByModule(@Param("nomModule") String nomModule);
     
-    @Query("SELECT u FROM Utilisateur u WHERE u.nom LIKE %:recherche% OR u.prenom LIKE %:recherche% OR u.email LIKE %:recherche% OR u.username LIKE %:recherche%")
-    List<Utilisateur> rechercherUtilisateurs(@Param("recherche") String recherche);
-    
-    @Query("SELECT u FROM Utilisateur u WHERE u.nom LIKE %:recherche% OR u.prenom LIKE %:recherche% OR u.email LIKE %:recherche% OR u.username LIKE %:recherche%")
-    Page<Utilisateur> rechercherUtilisateursPage(@Param("recherche") String recherche, Pageable pageable);
-    
     @Query("SELECT COUNT(u) FROM Utilisateur u WHERE u.compteActif = true")
     long countUtilisateursActifs();
     
@@ -97,16 +106,4 @@ public interface UtilisateurRepository extends JpaRepository<Utilisateur, Long>
     // Utilisateurs avec permissions spécifiques
     @Query("SELECT DISTINCT u FROM Utilisateur u JOIN u.roles r JOIN r.permissions p WHERE p.nomModule = :module AND p.nomAction = :action")
     List<Utilisateur> findUtilisateursAvecPermission(@Param("module") String module, @Param("action") String action);
-    
-    // Recherche avancée
-    @Query("SELECT u FROM Utilisateur u WHERE " +
-           "(:nom IS NULL OR u.nom LIKE %:nom%) AND " +
-           "(:prenom IS NULL OR u.prenom LIKE %:prenom%) AND " +
-           "(:email IS NULL OR u.email LIKE %:email%) AND " +
-           "(:actif IS NULL OR u.compteActif = :actif)")
-    Page<Utilisateur> rechercheAvancee(@Param("nom") String nom, 
-                                      @Param("prenom") String prenom, 
-                                      @Param("email") String email, 
-                                      @Param("actif") Boolean actif, 
-                                      Pageable pageable);
 }
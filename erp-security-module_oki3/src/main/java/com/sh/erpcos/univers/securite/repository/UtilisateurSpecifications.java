@@ -0,0 +1,36 @@
+package com.sh.erpcos.univers.securite.repository;
+
+import com.sh.erpcos.univers.securite.entity.Utilisateur;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Critères de recherche des utilisateurs : seuls les filtres renseignés produisent un prédicat.
+ */
+public final class UtilisateurSpecifications {
+
+    private UtilisateurSpecifications() {
+    }
+
+    public static Specification<Utilisateur> recherche(String nom, String prenom, String email, Boolean actif) {
+        return (root, query, cb) -> {
+            List<Predicate> predicats = new ArrayList<>();
+            if (nom != null) {
+                predicats.add(cb.like(root.get("nom"), "%" + nom + "%"));
+            }
+            if (prenom != null) {
+                predicats.add(cb.like(root.get("prenom"), "%" + prenom + "%"));
+            }
+            if (email != null) {
+                predicats.add(cb.like(root.get("email"), "%" + email + "%"));
+            }
+            if (actif != null) {
+                predicats.add(cb.equal(root.get("compteActif"), actif));
+            }
+            return cb.and(predicats.toArray(Predicate[]::new));
+        };
+    }
+}
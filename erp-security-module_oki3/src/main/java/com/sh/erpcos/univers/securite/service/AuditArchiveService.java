@@ -0,0 +1,719 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import com.sh.erpcos.univers.securite.util.KeysetCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Archive froide des journaux d'audit, hors de PostgreSQL, dans des segments compressés par colonne.
+ *
+ * Les mois fermés plus anciens que la rétention chaude (mois-chauds) sont lus dans audit_logs,
+ * écrits en segments d'au plus lignes-par-segment lignes triées par (date_action, id), puis
+ * supprimés de la base. Chaque colonne d'un segment est compressée séparément ; l'en-tête, non
+ * compressé, porte le nombre de lignes, les dates min/max, le dictionnaire des utilisateurs et le
+ * nombre de lignes par (utilisateur, niveau, catégorie, succès) : une recherche saute sans
+ * décompression les segments hors de sa période ou sans ligne pour ses critères, et les totaux se
+ * calculent sur les seuls en-têtes.
+ *
+ * Protocole d'archivage d'un mois : dans une même transaction REPEATABLE READ, lecture des lignes,
+ * écriture des segments en .tmp puis suppression des seules lignes lues ; après la validation,
+ * renommage des .tmp et suppression de la partition du mois si elle est vide. Au démarrage, un .tmp
+ * dont la première ligne est encore en base est supprimé (transaction annulée), sinon il est validé.
+ */
+@Service
+@Slf4j
+public class AuditArchiveService {
+
+    /**
+     * Critères de recherche, avec la même sémantique que AuditLogSpecifications.recherche.
+     */
+    public record Critere(String username, String action, String ressource, AuditLog.NiveauAudit niveau,
+                          AuditLog.CategorieAudit categorie, LocalDateTime dateDebut, LocalDateTime dateFin,
+                          Boolean succes) {
+    }
+
+    record EnteteSegment(Path fichier, int lignes, LocalDateTime dateMin, LocalDateTime dateMax, long premierId,
+                         List<String> utilisateurs, List<Statistique> statistiques) {
+    }
+
+    /**
+     * Nombre de lignes d'un segment pour une combinaison (utilisateur, niveau, catégorie, succès).
+     */
+    record Statistique(String username, AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie,
+                       Boolean succes, int lignes) {
+
+        boolean correspond(Critere critere) {
+            return (critere.username() == null || critere.username().equals(username))
+                    && (critere.niveau() == null || critere.niveau() == niveau)
+                    && (critere.categorie() == null || critere.categorie() == categorie)
+                    && (critere.succes() == null || critere.succes().equals(succes));
+        }
+    }
+
+    // Clé des statistiques à l'écriture : indices dans les dictionnaires du segment
+    private record CleStatistique(int utilisateur, int niveau, int categorie, byte succes) {
+    }
+
+    private static final int MAGIC = 0x45525041; // "ERPA"
+    private static final byte VERSION = 1;
+    private static final String EXTENSION = ".seg";
+    private static final String EXTENSION_TEMPORAIRE = ".seg.tmp";
+    private static final DateTimeFormatter FORMAT_MOIS = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final Comparator<AuditLog> TRI_RECENTS = Comparator.comparing(AuditLog::getDateAction)
+            .thenComparing(AuditLog::getId).reversed();
+    private static final int SEGMENTS_EN_CACHE = 4;
+
+    private static final String SQL_LECTURE = "SELECT id, date_action, utilisateur_id, username, action, " +
+            "ressource, ressource_id, details, ip_address, user_agent, session_id, niveau, categorie, succes, " +
+            "message_erreur, nombre_occurrences, date_premiere_occurrence, date_derniere_occurrence, localisation " +
+            "FROM audit_logs WHERE date_action >= ? AND date_action < ? ORDER BY date_action, id";
+    private static final String SQL_SUPPRESSION = "DELETE FROM audit_logs " +
+            "WHERE date_action >= ? AND date_action < ? AND id <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate jdbcTemplateLecture;
+    private final TransactionTemplate transactionArchivage;
+    private final AuditPartitionService auditPartitionService;
+    private final Path repertoire;
+    private final int moisChauds;
+    private final int lignesParSegment;
+
+    private final List<EnteteSegment> segments = new CopyOnWriteArrayList<>();
+    private final Map<Path, List<AuditLog>> cache = new LinkedHashMap<>(SEGMENTS_EN_CACHE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, List<AuditLog>> eldest) {
+            return size() > SEGMENTS_EN_CACHE;
+        }
+    };
+
+    public AuditArchiveService(JdbcTemplate jdbcTemplate,
+                               DataSource dataSource,
+                               PlatformTransactionManager transactionManager,
+                               AuditPartitionService auditPartitionService,
+                               @Value("${erp.securite.audit.archive.repertoire:data/audit-archive}") String repertoire,
+                               @Value("${erp.securite.audit.archive.mois-chauds:0}") int moisChauds,
+                               @Value("${erp.securite.audit.archive.lignes-par-segment:100000}") int lignesParSegment) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Lecture en flux (curseur serveur) des mois à archiver, comme pour l'export
+        this.jdbcTemplateLecture = new JdbcTemplate(dataSource);
+        this.jdbcTemplateLecture.setFetchSize(1000);
+        // Transaction propre à l'archivage, sur un instantané : la suppression ne voit que les lignes lues
+        this.transactionArchivage = new TransactionTemplate(transactionManager);
+        this.transactionArchivage.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionArchivage.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.auditPartitionService = auditPartitionService;
+        this.repertoire = Path.of(repertoire);
+        this.moisChauds = moisChauds;
+        this.lignesParSegment = lignesParSegment;
+    }
+
+    /**
+     * Termine les archivages interrompus puis charge les en-têtes des segments.
+     */
+    public void preparer() throws IOException {
+        Files.createDirectories(repertoire);
+        for (Path temporaire : lister(EXTENSION_TEMPORAIRE)) {
+            EnteteSegment entete = lireEntete(temporaire);
+            // La première ligne du segment n'est plus en base si et seulement si la transaction
+            // d'archivage a été validée
+            Boolean enBase = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM audit_logs " +
+                    "WHERE id = ? AND date_action = ?)", Boolean.class,
+                    entete.premierId(), Timestamp.valueOf(entete.dateMin()));
+            if (Boolean.TRUE.equals(enBase)) {
+                Files.delete(temporaire);
+                log.warn("Segment d'archive abandonné (archivage annulé en base): {}", temporaire.getFileName());
+            } else {
+                valider(temporaire);
+                log.info("Segment d'archive validé après interruption: {}", temporaire.getFileName());
+            }
+        }
+        for (Path fichier : lister(EXTENSION)) {
+            segments.add(lireEntete(fichier));
+        }
+        log.info("{} segments d'archive d'audit chargés", segments.size());
+    }
+
+    @Scheduled(cron = "${erp.securite.audit.archive.cron:0 5 0 * * *}")
+    public void archiverMoisFroids() {
+        if (moisChauds <= 0) {
+            return;
+        }
+        archiverAvant(YearMonth.now().minusMonths(moisChauds).atDay(1).atStartOfDay());
+    }
+
+    /**
+     * Archive puis supprime de la base les journaux antérieurs à dateLimite, mois par mois.
+     *
+     * @return le nombre de journaux archivés
+     */
+    public synchronized long archiverAvant(LocalDateTime dateLimite) {
+        LocalDateTime plusAncienne = jdbcTemplate.queryForObject(
+                "SELECT MIN(date_action) FROM audit_logs WHERE date_action < ?", LocalDateTime.class,
+                Timestamp.valueOf(dateLimite));
+        long total = 0;
+        for (YearMonth mois = plusAncienne != null ? YearMonth.from(plusAncienne) : null;
+             mois != null && mois.atDay(1).atStartOfDay().isBefore(dateLimite); mois = mois.plusMonths(1)) {
+            LocalDateTime debut = mois.atDay(1).atStartOfDay();
+            LocalDateTime fin = mois.plusMonths(1).atDay(1).atStartOfDay();
+            total += archiverPlage(mois, debut, fin.isBefore(dateLimite) ? fin : dateLimite);
+        }
+        return total;
+    }
+
+    /**
+     * Date du journal archivé le plus récent, ou null si l'archive est vide : une recherche dont la
+     * période commence avant doit aussi interroger l'archive.
+     */
+    public LocalDateTime getDateMaxArchivee() {
+        return segments.stream().map(EnteteSegment::dateMax).max(Comparator.naturalOrder()).orElse(null);
+    }
+
+    public boolean concerne(LocalDateTime dateDebut) {
+        LocalDateTime dateMax = getDateMaxArchivee();
+        return dateMax != null && (dateDebut == null || !dateDebut.isAfter(dateMax));
+    }
+
+    /**
+     * Journaux archivés correspondant au critère et situés après position dans l'ordre
+     * (date_action DESC, id DESC).
+     *
+     * @return au plus limite journaux, les plus récents d'abord
+     */
+    public List<AuditLog> rechercher(Critere critere, KeysetCursor.Position position, int limite) {
+        List<AuditLog> resultats = new ArrayList<>();
+        List<EnteteSegment> candidats = segments.stream()
+                .filter(entete -> candidat(entete, critere, position))
+                .sorted(Comparator.comparing(EnteteSegment::dateMax).reversed())
+                .toList();
+        for (EnteteSegment entete : candidats) {
+            // Segments parcourus du plus récent au plus ancien : on s'arrête dès que la limite est
+            // atteinte et que les segments suivants sont entièrement plus anciens
+            if (resultats.size() >= limite
+                    && entete.dateMax().isBefore(resultats.get(resultats.size() - 1).getDateAction())) {
+                break;
+            }
+            for (AuditLog auditLog : charger(entete)) {
+                if (correspond(auditLog, critere) && apres(auditLog, position)) {
+                    resultats.add(auditLog);
+                }
+            }
+            resultats.sort(TRI_RECENTS);
+            if (resultats.size() > limite) {
+                resultats = new ArrayList<>(resultats.subList(0, limite));
+            }
+        }
+        return resultats;
+    }
+
+    /**
+     * Nombre de journaux archivés correspondant au critère, calculé sur les statistiques des en-têtes
+     * sans décompresser de segment. Exact sans filtre sur l'action ni la ressource, qui en font un
+     * majorant ; un segment que la période ne couvre qu'en partie compte au prorata de sa durée.
+     */
+    public long estimer(Critere critere) {
+        double total = 0;
+        for (EnteteSegment entete : segments) {
+            if (couvre(entete, critere, KeysetCursor.DEBUT)) {
+                long lignes = entete.statistiques().stream()
+                        .filter(statistique -> statistique.correspond(critere))
+                        .mapToLong(Statistique::lignes)
+                        .sum();
+                total += lignes * fractionPeriode(entete, critere);
+            }
+        }
+        return Math.round(total);
+    }
+
+    private long archiverPlage(YearMonth mois, LocalDateTime debut, LocalDateTime fin) {
+        List<Path> temporaires = new ArrayList<>();
+        ConstructeurSegment[] courant = {new ConstructeurSegment()};
+        long[] lignes = {0};
+        long[] idMax = {Long.MIN_VALUE};
+        try {
+            transactionArchivage.executeWithoutResult(status -> {
+                jdbcTemplateLecture.query(SQL_LECTURE, rs -> {
+                    try {
+                        courant[0].ajouter(rs);
+                        lignes[0]++;
+                        idMax[0] = Math.max(idMax[0], rs.getLong("id"));
+                        if (courant[0].taille() >= lignesParSegment) {
+                            temporaires.add(courant[0].ecrire(fichierTemporaire(mois, temporaires.size())));
+                            courant[0] = new ConstructeurSegment();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, Timestamp.valueOf(debut), Timestamp.valueOf(fin));
+                if (lignes[0] == 0) {
+                    return;
+                }
+                try {
+                    if (courant[0].taille() > 0) {
+                        temporaires.add(courant[0].ecrire(fichierTemporaire(mois, temporaires.size())));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                // Même instantané que la lecture : une ligne validée depuis n'est pas supprimée et sera
+                // archivée au prochain passage ; un écart annule tout
+                int supprimees = jdbcTemplate.update(SQL_SUPPRESSION,
+                        Timestamp.valueOf(debut), Timestamp.valueOf(fin), idMax[0]);
+                if (supprimees != lignes[0]) {
+                    throw new IllegalStateException(supprimees + " journaux supprimés pour " + lignes[0] + " archivés");
+                }
+            });
+        } catch (RuntimeException e) {
+            supprimer(temporaires);
+            throw new IllegalStateException("Archivage des journaux d'audit de " + mois + " impossible", e);
+        }
+        if (lignes[0] == 0) {
+            return 0;
+        }
+
+        try {
+            for (Path temporaire : temporaires) {
+                segments.add(lireEntete(valider(temporaire)));
+            }
+        } catch (IOException e) {
+            // Les lignes ne sont plus en base : les .tmp restants seront validés au prochain démarrage
+            throw new UncheckedIOException("Validation des segments d'archive de " + mois + " impossible", e);
+        }
+        auditPartitionService.supprimerPartitionVide(mois);
+        log.info("{} journaux d'audit de {} archivés en {} segments", lignes[0], mois, temporaires.size());
+        return lignes[0];
+    }
+
+    private Path fichierTemporaire(YearMonth mois, int numero) {
+        return repertoire.resolve("audit-" + mois.format(FORMAT_MOIS) + "-"
+                + Long.toString(System.currentTimeMillis(), 36) + "-" + numero + EXTENSION_TEMPORAIRE);
+    }
+
+    private Path valider(Path temporaire) throws IOException {
+        String nom = temporaire.getFileName().toString();
+        Path fichier = temporaire.resolveSibling(nom.substring(0, nom.length() - EXTENSION_TEMPORAIRE.length()) + EXTENSION);
+        return Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean candidat(EnteteSegment entete, Critere critere, KeysetCursor.Position position) {
+        return couvre(entete, critere, position)
+                && entete.statistiques().stream().anyMatch(statistique -> statistique.correspond(critere));
+    }
+
+    private static boolean couvre(EnteteSegment entete, Critere critere, KeysetCursor.Position position) {
+        if (critere.dateDebut() != null && entete.dateMax().isBefore(critere.dateDebut())) {
+            return false;
+        }
+        if (critere.dateFin() != null && entete.dateMin().isAfter(critere.dateFin())) {
+            return false;
+        }
+        return !entete.dateMin().isAfter(position.date());
+    }
+
+    private static double fractionPeriode(EnteteSegment entete, Critere critere) {
+        LocalDateTime debut = critere.dateDebut() != null && critere.dateDebut().isAfter(entete.dateMin())
+                ? critere.dateDebut() : entete.dateMin();
+        LocalDateTime fin = critere.dateFin() != null && critere.dateFin().isBefore(entete.dateMax())
+                ? critere.dateFin() : entete.dateMax();
+        long duree = ChronoUnit.MICROS.between(entete.dateMin(), entete.dateMax());
+        if (duree == 0) {
+            return 1;
+        }
+        return Math.max(0, ChronoUnit.MICROS.between(debut, fin)) / (double) duree;
+    }
+
+    private static boolean correspond(AuditLog auditLog, Critere critere) {
+        return (critere.username() == null || critere.username().equals(auditLog.getUsername()))
+                && contient(auditLog.getAction(), critere.action())
+                && contient(auditLog.getRessource(), critere.ressource())
+                && (critere.niveau() == null || critere.niveau() == auditLog.getNiveau())
+                && (critere.categorie() == null || critere.categorie() == auditLog.getCategorie())
+                && (critere.dateDebut() == null || !auditLog.getDateAction().isBefore(critere.dateDebut()))
+                && (critere.dateFin() == null || !auditLog.getDateAction().isAfter(critere.dateFin()))
+                && (critere.succes() == null || critere.succes().equals(auditLog.getSucces()));
+    }
+
+    private static boolean contient(String valeur, String recherche) {
+        return recherche == null || (valeur != null && valeur.toLowerCase().contains(recherche.toLowerCase()));
+    }
+
+    private static boolean apres(AuditLog auditLog, KeysetCursor.Position position) {
+        int comparaison = auditLog.getDateAction().compareTo(position.date());
+        return comparaison < 0 || (comparaison == 0 && auditLog.getId() < position.id());
+    }
+
+    private List<AuditLog> charger(EnteteSegment entete) {
+        synchronized (cache) {
+            List<AuditLog> journaux = cache.get(entete.fichier());
+            if (journaux != null) {
+                return journaux;
+            }
+        }
+        List<AuditLog> journaux;
+        try {
+            journaux = lireSegment(entete.fichier());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture du segment d'archive " + entete.fichier() + " impossible", e);
+        }
+        synchronized (cache) {
+            cache.put(entete.fichier(), journaux);
+        }
+        return journaux;
+    }
+
+    private List<Path> lister(String extension) throws IOException {
+        try (Stream<Path> fichiers = Files.list(repertoire)) {
+            return fichiers.filter(fichier -> fichier.getFileName().toString().endsWith(extension)).sorted().toList();
+        }
+    }
+
+    private static void supprimer(List<Path> fichiers) {
+        for (Path fichier : fichiers) {
+            try {
+                Files.deleteIfExists(fichier);
+            } catch (IOException e) {
+                log.warn("Suppression de {} impossible: {}", fichier, e.getMessage());
+            }
+        }
+    }
+
+    // Format d'un segment : MAGIC, VERSION, lignes, date min, date max, dictionnaire des utilisateurs,
+    // identifiant de la première ligne, dictionnaires des niveaux et catégories, statistiques (indices
+    // utilisateur, niveau, catégorie, succès, nombre de lignes), puis pour chaque colonne sa longueur
+    // compressée et son contenu compressé (Deflate).
+
+    static EnteteSegment lireEntete(Path fichier) throws IOException {
+        try (DataInputStream entree = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichier)))) {
+            return lireEntete(fichier, entree);
+        }
+    }
+
+    private static EnteteSegment lireEntete(Path fichier, DataInputStream entree) throws IOException {
+        verifierVersion(fichier, entree);
+        int lignes = entree.readInt();
+        LocalDateTime dateMin = versDate(entree.readLong());
+        LocalDateTime dateMax = versDate(entree.readLong());
+        List<String> utilisateurs = lireDictionnaire(entree);
+        long premierId = entree.readLong();
+        List<String> niveaux = lireDictionnaire(entree);
+        List<String> categories = lireDictionnaire(entree);
+        int nombre = entree.readInt();
+        List<Statistique> statistiques = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            int utilisateur = entree.readInt();
+            int niveau = entree.readInt();
+            int categorie = entree.readInt();
+            byte succes = entree.readByte();
+            statistiques.add(new Statistique(
+                    utilisateur >= 0 ? utilisateurs.get(utilisateur) : null,
+                    niveau >= 0 ? AuditLog.NiveauAudit.valueOf(niveaux.get(niveau)) : null,
+                    categorie >= 0 ? AuditLog.CategorieAudit.valueOf(categories.get(categorie)) : null,
+                    succes < 0 ? null : succes == 1,
+                    entree.readInt()));
+        }
+        return new EnteteSegment(fichier, lignes, dateMin, dateMax, premierId, utilisateurs,
+                List.copyOf(statistiques));
+    }
+
+    static List<AuditLog> lireSegment(Path fichier) throws IOException {
+        try (DataInputStream entree = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichier)))) {
+            EnteteSegment entete = lireEntete(fichier, entree);
+            int lignes = entete.lignes();
+            List<String> utilisateurs = entete.utilisateurs();
+
+            List<AuditLog> journaux = new ArrayList<>(lignes);
+            for (int i = 0; i < lignes; i++) {
+                journaux.add(new AuditLog());
+            }
+            try (DataInputStream colonne = colonne(entree)) {
+                long id = 0;
+                for (AuditLog auditLog : journaux) {
+                    id += colonne.readLong();
+                    auditLog.setId(id);
+                }
+            }
+            try (DataInputStream colonne = colonne(entree)) {
+                long micros = 0;
+                for (AuditLog auditLog : journaux) {
+                    micros += colonne.readLong();
+                    auditLog.setDateAction(versDate(micros));
+                }
+            }
+            try (DataInputStream colonne = colonne(entree)) {
+                for (AuditLog auditLog : journaux) {
+                    auditLog.setUtilisateurId(lireLong(colonne));
+                }
+            }
+            try (DataInputStream colonne = colonne(entree)) {
+                for (AuditLog auditLog : journaux) {
+                    int indice = colonne.readInt();
+                    auditLog.setUsername(indice >= 0 ? utilisateurs.get(indice) : null);
+                }
+            }
+            lireTextes(entree, journaux, AuditLog::setAction);
+            lireTextes(entree, journaux, AuditLog::setRessource);
+            try (DataInputStream colonne = colonne(entree)) {
+                for (AuditLog auditLog : journaux) {
+                    auditLog.setRessourceId(lireLong(colonne));
+                }
+            }
+            lireTextes(entree, journaux, AuditLog::setDetails);
+            lireTextes(entree, journaux, AuditLog::setIpAddress);
+            lireTextes(entree, journaux, AuditLog::setUserAgent);
+            lireTextes(entree, journaux, AuditLog::setSessionId);
+            lireTextes(entree, journaux, (auditLog, niveau) ->
+                    auditLog.setNiveau(niveau != null ? AuditLog.NiveauAudit.valueOf(niveau) : null));
+            lireTextes(entree, journaux, (auditLog, categorie) ->
+                    auditLog.setCategorie(categorie != null ? AuditLog.CategorieAudit.valueOf(categorie) : null));
+            try (DataInputStream colonne = colonne(entree)) {
+                for (AuditLog auditLog : journaux) {
+                    byte succes = colonne.readByte();
+                    auditLog.setSucces(succes < 0 ? null : succes == 1);
+                }
+            }
+            lireTextes(entree, journaux, AuditLog::setMessageErreur);
+            try (DataInputStream colonne = colonne(entree)) {
+                for (AuditLog auditLog : journaux) {
+                    auditLog.setNombreOccurrences(colonne.readInt());
+                    auditLog.setDatePremiereOccurrence(lireDate(colonne));
+                    auditLog.setDateDerniereOccurrence(lireDate(colonne));
+                }
+            }
+            lireTextes(entree, journaux, AuditLog::setLocalisation);
+            return journaux;
+        }
+    }
+
+    private static void verifierVersion(Path fichier, DataInputStream entree) throws IOException {
+        if (entree.readInt() != MAGIC) {
+            throw new IOException("Segment d'archive invalide: " + fichier);
+        }
+        byte version = entree.readByte();
+        if (version != VERSION) {
+            throw new IOException("Version de segment d'archive inconnue (" + version + "): " + fichier);
+        }
+    }
+
+    private static DataInputStream colonne(DataInputStream entree) throws IOException {
+        int longueur = entree.readInt();
+        byte[] compresse = entree.readNBytes(longueur);
+        if (compresse.length != longueur) {
+            throw new EOFException("Segment d'archive tronqué");
+        }
+        return new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(compresse))));
+    }
+
+    private static void lireTextes(DataInputStream entree, List<AuditLog> journaux,
+                                   BiConsumer<AuditLog, String> affectation) throws IOException {
+        try (DataInputStream colonne = colonne(entree)) {
+            List<String> dictionnaire = lireDictionnaire(colonne);
+            for (AuditLog auditLog : journaux) {
+                int indice = colonne.readInt();
+                affectation.accept(auditLog, indice >= 0 ? dictionnaire.get(indice) : null);
+            }
+        }
+    }
+
+    private static List<String> lireDictionnaire(DataInputStream entree) throws IOException {
+        int taille = entree.readInt();
+        List<String> dictionnaire = new ArrayList<>(taille);
+        for (int i = 0; i < taille; i++) {
+            dictionnaire.add(new String(entree.readNBytes(entree.readInt()), StandardCharsets.UTF_8));
+        }
+        return dictionnaire;
+    }
+
+    private static Long lireLong(DataInputStream entree) throws IOException {
+        return entree.readBoolean() ? entree.readLong() : null;
+    }
+
+    private static LocalDateTime lireDate(DataInputStream entree) throws IOException {
+        return entree.readBoolean() ? versDate(entree.readLong()) : null;
+    }
+
+    private static long versMicros(LocalDateTime date) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), date);
+    }
+
+    private static LocalDateTime versDate(long micros) {
+        return LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plus(micros, ChronoUnit.MICROS);
+    }
+
+    /**
+     * Accumule les lignes d'un segment colonne par colonne, les chaînes sous forme d'indices dans
+     * un dictionnaire propre à chaque colonne.
+     */
+    static final class ConstructeurSegment {
+
+        private final ByteArrayOutputStream[] tampons = new ByteArrayOutputStream[17];
+        private final DataOutputStream[] colonnes = new DataOutputStream[17];
+        private final List<Map<String, Integer>> dictionnaires = new ArrayList<>();
+        private final Map<CleStatistique, Integer> statistiques = new LinkedHashMap<>();
+        private int lignes;
+        private long premierId;
+        private long dernierId;
+        private long derniereDate;
+        private long dateMin = Long.MAX_VALUE;
+        private long dateMax = Long.MIN_VALUE;
+
+        ConstructeurSegment() {
+            for (int i = 0; i < colonnes.length; i++) {
+                tampons[i] = new ByteArrayOutputStream();
+                colonnes[i] = new DataOutputStream(tampons[i]);
+                dictionnaires.add(new LinkedHashMap<>());
+            }
+        }
+
+        int taille() {
+            return lignes;
+        }
+
+        void ajouter(ResultSet rs) throws SQLException, IOException {
+            long id = rs.getLong("id");
+            long micros = versMicros(rs.getTimestamp("date_action").toLocalDateTime());
+            // Identifiants et dates en écarts successifs : petites valeurs, bien compressées
+            colonnes[0].writeLong(id - dernierId);
+            colonnes[1].writeLong(micros - derniereDate);
+            if (lignes == 0) {
+                premierId = id;
+            }
+            dernierId = id;
+            derniereDate = micros;
+            dateMin = Math.min(dateMin, micros);
+            dateMax = Math.max(dateMax, micros);
+
+            ecrireLong(colonnes[2], rs.getObject("utilisateur_id", Long.class));
+            int utilisateur = ecrireTexte(3, rs.getString("username"));
+            ecrireTexte(4, rs.getString("action"));
+            ecrireTexte(5, rs.getString("ressource"));
+            ecrireLong(colonnes[6], rs.getObject("ressource_id", Long.class));
+            ecrireTexte(7, rs.getString("details"));
+            ecrireTexte(8, rs.getString("ip_address"));
+            ecrireTexte(9, rs.getString("user_agent"));
+            ecrireTexte(10, rs.getString("session_id"));
+            int niveau = ecrireTexte(11, rs.getString("niveau"));
+            int categorie = ecrireTexte(12, rs.getString("categorie"));
+            Boolean succes = rs.getObject("succes", Boolean.class);
+            byte octetSucces = (byte) (succes == null ? -1 : succes ? 1 : 0);
+            colonnes[13].writeByte(octetSucces);
+            statistiques.merge(new CleStatistique(utilisateur, niveau, categorie, octetSucces), 1, Integer::sum);
+            ecrireTexte(14, rs.getString("message_erreur"));
+            colonnes[15].writeInt(rs.getInt("nombre_occurrences"));
+            ecrireDate(colonnes[15], rs.getTimestamp("date_premiere_occurrence"));
+            ecrireDate(colonnes[15], rs.getTimestamp("date_derniere_occurrence"));
+            ecrireTexte(16, rs.getString("localisation"));
+            lignes++;
+        }
+
+        Path ecrire(Path fichier) throws IOException {
+            try (DataOutputStream sortie = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(fichier)))) {
+                sortie.writeInt(MAGIC);
+                sortie.writeByte(VERSION);
+                sortie.writeInt(lignes);
+                sortie.writeLong(dateMin);
+                sortie.writeLong(dateMax);
+                // Le dictionnaire des utilisateurs reste en clair dans l'en-tête
+                ecrireDictionnaire(sortie, dictionnaires.get(3));
+                sortie.writeLong(premierId);
+                ecrireDictionnaire(sortie, dictionnaires.get(11));
+                ecrireDictionnaire(sortie, dictionnaires.get(12));
+                sortie.writeInt(statistiques.size());
+                for (Map.Entry<CleStatistique, Integer> statistique : statistiques.entrySet()) {
+                    sortie.writeInt(statistique.getKey().utilisateur());
+                    sortie.writeInt(statistique.getKey().niveau());
+                    sortie.writeInt(statistique.getKey().categorie());
+                    sortie.writeByte(statistique.getKey().succes());
+                    sortie.writeInt(statistique.getValue());
+                }
+                for (int i = 0; i < colonnes.length; i++) {
+                    colonnes[i].flush();
+                    ByteArrayOutputStream compresse = new ByteArrayOutputStream();
+                    try (DataOutputStream colonne = new DataOutputStream(new DeflaterOutputStream(compresse))) {
+                        if (estTexte(i) && i != 3) {
+                            ecrireDictionnaire(colonne, dictionnaires.get(i));
+                        }
+                        tampons[i].writeTo(colonne);
+                    }
+                    sortie.writeInt(compresse.size());
+                    compresse.writeTo(sortie);
+                }
+            }
+            return fichier;
+        }
+
+        private boolean estTexte(int colonne) {
+            return colonne == 3 || colonne == 4 || colonne == 5 || (colonne >= 7 && colonne <= 12) || colonne == 14
+                    || colonne == 16;
+        }
+
+        private int ecrireTexte(int colonne, String valeur) throws IOException {
+            Map<String, Integer> dictionnaire = dictionnaires.get(colonne);
+            int indice = valeur == null ? -1 : dictionnaire.computeIfAbsent(valeur, v -> dictionnaire.size());
+            colonnes[colonne].writeInt(indice);
+            return indice;
+        }
+
+        private void ecrireDictionnaire(DataOutputStream sortie, Map<String, Integer> dictionnaire) throws IOException {
+            sortie.writeInt(dictionnaire.size());
+            for (String valeur : dictionnaire.keySet()) {
+                byte[] octets = valeur.getBytes(StandardCharsets.UTF_8);
+                sortie.writeInt(octets.length);
+                sortie.write(octets);
+            }
+        }
+
+        private void ecrireLong(DataOutputStream sortie, Long valeur) throws IOException {
+            sortie.writeBoolean(valeur != null);
+            if (valeur != null) {
+                sortie.writeLong(valeur);
+            }
+        }
+
+        private void ecrireDate(DataOutputStream sortie, Timestamp valeur) throws IOException {
+            sortie.writeBoolean(valeur != null);
+            if (valeur != null) {
+                sortie.writeLong(versMicros(valeur.toLocalDateTime()));
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export des journaux d'audit en flux continu (CSV ou NDJSON, compressé en gzip si demandé).
+ *
+ * Les lignes sont lues avec un curseur serveur (fetch size dans une transaction en lecture seule)
+ * et écrites une à une dans la réponse, sans entité JPA ni liste intermédiaire : la mémoire
+ * utilisée reste constante quel que soit le nombre de lignes exportées.
+ */
+@Service
+@Slf4j
+public class AuditExportService {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final int TAILLE_LOT = 1000;
+    private static final int TAILLE_TAMPON = 64 * 1024;
+
+    private static final String[] COLONNES = {"id", "date_action", "username", "utilisateur_id", "action",
+            "ressource", "ressource_id", "niveau", "categorie", "succes", "ip_address", "user_agent",
+            "session_id", "details", "message_erreur", "nombre_occurrences", "date_premiere_occurrence",
+            "date_derniere_occurrence", "localisation"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public AuditExportService(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        // JdbcTemplate dédié : le fetch size ne doit pas s'appliquer aux autres requêtes
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(TAILLE_LOT);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Écrit les journaux de la période dans sortie, du plus récent au plus ancien.
+     *
+     * @return le nombre de journaux exportés
+     */
+    public long exporter(OutputStream sortie, Format format, boolean gzip,
+                         LocalDateTime dateDebut, LocalDateTime dateFin,
+                         AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie) throws IOException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", COLONNES))
+                .append(" FROM audit_logs WHERE date_action >= ? AND date_action <= ?");
+        List<Object> parametres = new ArrayList<>(List.of(Timestamp.valueOf(dateDebut), Timestamp.valueOf(dateFin)));
+        if (niveau != null) {
+            sql.append(" AND niveau = ?");
+            parametres.add(niveau.name());
+        }
+        if (categorie != null) {
+            sql.append(" AND categorie = ?");
+            parametres.add(categorie.name());
+        }
+        sql.append(" ORDER BY date_action DESC, id DESC");
+
+        OutputStream flux = gzip ? new GZIPOutputStream(sortie, TAILLE_TAMPON) : sortie;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(flux, StandardCharsets.UTF_8), TAILLE_TAMPON);
+        EcrivainLigne ecrivain = format == Format.CSV ? new EcrivainCsv(writer) : new EcrivainNdjson(writer);
+
+        long[] nombre = {0};
+        try {
+            ecrivain.entete();
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.query(sql.toString(), rs -> {
+                        try {
+                            ecrivain.ligne(rs);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        nombre[0]++;
+                    }, parametres.toArray()));
+        } catch (UncheckedIOException e) {
+            // Le client a interrompu le téléchargement
+            throw e.getCause();
+        }
+        ecrivain.fin();
+        writer.flush();
+        if (flux instanceof GZIPOutputStream gzipOutputStream) {
+            gzipOutputStream.finish();
+        }
+        log.debug("{} journaux d'audit exportés en {}", nombre[0], format);
+        return nombre[0];
+    }
+
+    private interface EcrivainLigne {
+        void entete() throws IOException;
+
+        void ligne(ResultSet rs) throws IOException, SQLException;
+
+        default void fin() throws IOException {
+        }
+    }
+
+    private static final class EcrivainCsv implements EcrivainLigne {
+
+        private final Writer writer;
+
+        EcrivainCsv(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void entete() throws IOException {
+            writer.write(String.join(",", COLONNES));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void ligne(ResultSet rs) throws IOException, SQLException {
+            for (int i = 1; i <= COLONNES.length; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                Object valeur = rs.getObject(i);
+                if (valeur instanceof Timestamp timestamp) {
+                    writer.write(timestamp.toLocalDateTime().toString());
+                } else if (valeur != null) {
+                    echapper(valeur.toString());
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        private void echapper(String valeur) throws IOException {
+            boolean guillemets = valeur.indexOf(',') >= 0 || valeur.indexOf('"') >= 0
+                    || valeur.indexOf('\n') >= 0 || valeur.indexOf('\r') >= 0;
+            if (!guillemets) {
+                writer.write(valeur);
+                return;
+            }
+            writer.write('"');
+            writer.write(valeur.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private final class EcrivainNdjson implements EcrivainLigne {
+
+        private final JsonGenerator generateur;
+
+        EcrivainNdjson(Writer writer) throws IOException {
+            // Le writer reste ouvert : sa fermeture revient au conteneur de servlets
+            this.generateur = jsonFactory.createGenerator(writer)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            this.generateur.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void entete() {
+        }
+
+        @Override
+        public void ligne(ResultSet rs) throws IOException, SQLException {
+            generateur.writeStartObject();
+            for (int i = 1; i <= COLONNES.length; i++) {
+                Object valeur = rs.getObject(i);
+                generateur.writeFieldName(COLONNES[i - 1]);
+                if (valeur == null) {
+                    generateur.writeNull();
+                } else if (valeur instanceof Number nombre) {
+                    generateur.writeNumber(nombre.longValue());
+                } else if (valeur instanceof Boolean booleen) {
+                    generateur.writeBoolean(booleen);
+                } else if (valeur instanceof Timestamp timestamp) {
+                    generateur.writeString(timestamp.toLocalDateTime().toString());
+                } else {
+                    generateur.writeString(valeur.toString());
+                }
+            }
+            generateur.writeEndObject();
+            generateur.writeRaw('\n');
+        }
+
+        @Override
+        public void fin() throws IOException {
+            generateur.flush();
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal local des événements d'audit, en ajout seul, avant leur écriture dans audit_logs.
+ *
+ * Les événements sont encodés en binaire compact et copiés dans un segment de fichier projeté
+ * en mémoire : l'ajout ne fait ni appel système ni accès à la base. Un thread dédié force
+ * l'écriture sur disque (fsync) par groupes, toutes les synchro-ms millisecondes.
+ * AuditWriter relit le journal depuis le point d'expédition et insère les événements par lots ;
+ * le point est enregistré en base dans la transaction qui insère le lot, si bien qu'après un
+ * arrêt brutal l'expédition reprend exactement là où elle s'était arrêtée, sans perte ni doublon.
+ *
+ * Format d'un enregistrement : longueur (int), CRC32 (int), contenu. Une longueur nulle marque
+ * la fin des données écrites, une longueur de -1 la fin d'un segment. Les segments entièrement
+ * expédiés sont supprimés.
+ */
+@Service
+@Slf4j
+public class AuditJournal {
+
+    public record Position(long segment, long decalage) implements Comparable<Position> {
+
+        @Override
+        public int compareTo(Position autre) {
+            int comparaison = Long.compare(segment, autre.segment);
+            return comparaison != 0 ? comparaison : Long.compare(decalage, autre.decalage);
+        }
+    }
+
+    public record Entree(AuditLog auditLog, Position fin) {
+    }
+
+    private static final String TABLE_POINTS = "audit_journal_points";
+    private static final String FICHIER_IDENTIFIANT = "journal.id";
+    private static final Pattern NOM_SEGMENT = Pattern.compile("(\\d{20})\\.journal");
+    private static final int ENTETE = 8;
+    private static final int FIN_SEGMENT = -1;
+    private static final byte VERSION = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean active;
+    private final Path repertoire;
+    private final int tailleSegment;
+    private final long intervalleSynchroNanos;
+
+    private final Object verrou = new Object();
+    private final AtomicBoolean aSynchroniser = new AtomicBoolean();
+    private final AtomicLong nombreIllisibles = new AtomicLong();
+
+    private String identifiant;
+    private FileChannel canalEcriture;
+    private MappedByteBuffer tamponEcriture;
+    private long segmentCourant;
+
+    private volatile Position positionEcrite;
+    private volatile boolean ouvert;
+    private volatile Thread synchroniseur;
+    private volatile boolean tableCreee;
+
+    public AuditJournal(JdbcTemplate jdbcTemplate,
+                        @Value("${erp.securite.audit.journal.actif:true}") boolean active,
+                        @Value("${erp.securite.audit.journal.repertoire:data/audit-journal}") String repertoire,
+                        @Value("${erp.securite.audit.journal.taille-segment-mo:64}") int tailleSegmentMo,
+                        @Value("${erp.securite.audit.journal.synchro-ms:20}") long synchroMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.active = active;
+        this.repertoire = Path.of(repertoire);
+        this.tailleSegment = tailleSegmentMo * 1024 * 1024;
+        this.intervalleSynchroNanos = TimeUnit.MILLISECONDS.toNanos(synchroMs);
+    }
+
+    /**
+     * Ouvre le journal. Le dernier segment, qui peut se terminer par un enregistrement incomplet
+     * après un arrêt brutal, est clos et l'écriture reprend dans un nouveau segment.
+     */
+    @PostConstruct
+    void ouvrir() {
+        if (!active) {
+            return;
+        }
+        try {
+            Files.createDirectories(repertoire);
+            identifiant = lireIdentifiant();
+            List<Long> segments = listerSegments();
+            long dernier = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+            if (dernier > 0) {
+                clore(dernier);
+            }
+            segmentCourant = dernier + 1;
+            ouvrirSegment(segmentCourant);
+            positionEcrite = new Position(segmentCourant, 0);
+        } catch (IOException e) {
+            log.error("Journal d'audit indisponible dans {}, écriture directe en base: {}", repertoire, e.getMessage());
+            return;
+        }
+        ouvert = true;
+        Thread thread = new Thread(this::boucleSynchronisation, "audit-journal-fsync");
+        thread.setDaemon(true);
+        synchroniseur = thread;
+        thread.start();
+        log.info("Journal d'audit ouvert dans {} (segments de {} Mo)", repertoire.toAbsolutePath(),
+                tailleSegment / (1024 * 1024));
+    }
+
+    public boolean isOuvert() {
+        return ouvert;
+    }
+
+    /**
+     * Enregistrements sautés à la lecture (corrompus ou non décodables) depuis le démarrage.
+     */
+    public long getNombreIllisibles() {
+        return nombreIllisibles.get();
+    }
+
+    /**
+     * Ajoute un événement à la fin du journal. L'événement est durable au plus tard au prochain
+     * fsync groupé.
+     *
+     * @throws IOException si le journal est fermé ou si un nouveau segment ne peut être créé
+     */
+    public void ajouter(AuditLog auditLog) throws IOException {
+        byte[] contenu = encoder(auditLog);
+        if (ENTETE + contenu.length + Integer.BYTES > tailleSegment) {
+            throw new IOException("Événement d'audit trop volumineux pour le journal: " + contenu.length + " octets");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(contenu);
+
+        synchronized (verrou) {
+            if (!ouvert) {
+                throw new IOException("Journal d'audit fermé");
+            }
+            // Quatre octets restent toujours libres pour le marqueur de fin de segment
+            if (tamponEcriture.remaining() < ENTETE + contenu.length + Integer.BYTES) {
+                basculer();
+            }
+            int debut = tamponEcriture.position();
+            tamponEcriture.position(debut + Integer.BYTES);
+            tamponEcriture.putInt((int) crc.getValue());
+            tamponEcriture.put(contenu);
+            // La longueur est écrite en dernier : un lecteur ne voit jamais un enregistrement partiel
+            tamponEcriture.putInt(debut, contenu.length);
+            positionEcrite = new Position(segmentCourant, tamponEcriture.position());
+        }
+        aSynchroniser.set(true);
+    }
+
+    /**
+     * Position juste après le dernier événement ajouté.
+     */
+    public Position getPositionEcrite() {
+        return positionEcrite;
+    }
+
+    /**
+     * Lit au plus max événements à partir de depuis, sans dépasser la position écrite.
+     */
+    public List<Entree> lire(Position depuis, int max) throws IOException {
+        List<Entree> entrees = new ArrayList<>();
+        Position limite = positionEcrite;
+        Position position = depuis;
+        FileChannel canal = null;
+        long segmentOuvert = -1;
+        try {
+            while (entrees.size() < max && position.compareTo(limite) < 0) {
+                if (position.segment() != segmentOuvert) {
+                    if (canal != null) {
+                        canal.close();
+                        canal = null;
+                    }
+                    segmentOuvert = position.segment();
+                    Path fichier = cheminSegment(segmentOuvert);
+                    if (!Files.exists(fichier)) {
+                        position = new Position(segmentOuvert + 1, 0);
+                        continue;
+                    }
+                    canal = FileChannel.open(fichier, StandardOpenOption.READ);
+                }
+                Entree entree = lireEnregistrement(canal, position);
+                if (entree == null) {
+                    if (position.segment() == limite.segment()) {
+                        break;
+                    }
+                    position = new Position(position.segment() + 1, 0);
+                    continue;
+                }
+                entrees.add(entree);
+                position = entree.fin();
+            }
+        } finally {
+            if (canal != null) {
+                canal.close();
+            }
+        }
+        return entrees;
+    }
+
+    /**
+     * Point d'expédition enregistré en base, ou le début du journal si rien n'a encore été expédié.
+     */
+    public Position lirePointExpedition() {
+        creerTable();
+        List<Position> points = jdbcTemplate.query("SELECT segment, decalage FROM " + TABLE_POINTS +
+                " WHERE journal_id = ?", (rs, rowNum) -> new Position(rs.getLong("segment"), rs.getLong("decalage")),
+                identifiant);
+        if (!points.isEmpty()) {
+            return points.get(0);
+        }
+        try {
+            List<Long> segments = listerSegments();
+            return new Position(segments.isEmpty() ? segmentCourant : segments.get(0), 0);
+        } catch (IOException e) {
+            return new Position(segmentCourant, 0);
+        }
+    }
+
+    /**
+     * Enregistre le point d'expédition. Doit être appelé dans la transaction qui insère les
+     * événements expédiés.
+     */
+    public void enregistrerPointExpedition(Position position) {
+        jdbcTemplate.update("INSERT INTO " + TABLE_POINTS + " (journal_id, segment, decalage, date_maj) " +
+                "VALUES (?, ?, ?, now()) ON CONFLICT (journal_id) DO UPDATE SET segment = EXCLUDED.segment, " +
+                "decalage = EXCLUDED.decalage, date_maj = EXCLUDED.date_maj", identifiant,
+                position.segment(), position.decalage());
+    }
+
+    /**
+     * Supprime les segments entièrement expédiés.
+     */
+    public void liberer(Position pointExpedition) {
+        try {
+            for (long segment : listerSegments()) {
+                if (segment >= pointExpedition.segment() || segment >= segmentCourant) {
+                    break;
+                }
+                Files.deleteIfExists(cheminSegment(segment));
+                log.debug("Segment de journal d'audit {} supprimé", segment);
+            }
+        } catch (IOException e) {
+            log.warn("Impossible de supprimer les segments expédiés du journal d'audit: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void fermer() {
+        if (!ouvert) {
+            return;
+        }
+        synchronized (verrou) {
+            ouvert = false;
+            tamponEcriture.force();
+            try {
+                canalEcriture.close();
+            } catch (IOException e) {
+                log.warn("Fermeture du journal d'audit: {}", e.getMessage());
+            }
+        }
+        Thread thread = synchroniseur;
+        LockSupport.unpark(thread);
+        log.info("Journal d'audit fermé à la position {}", positionEcrite);
+    }
+
+    private void boucleSynchronisation() {
+        while (ouvert) {
+            LockSupport.parkNanos(this, intervalleSynchroNanos);
+            if (!aSynchroniser.getAndSet(false)) {
+                continue;
+            }
+            MappedByteBuffer tampon;
+            synchronized (verrou) {
+                if (!ouvert) {
+                    return;
+                }
+                tampon = tamponEcriture;
+            }
+            tampon.force();
+        }
+    }
+
+    private void basculer() throws IOException {
+        tamponEcriture.putInt(tamponEcriture.position(), FIN_SEGMENT);
+        tamponEcriture.force();
+        canalEcriture.close();
+        ouvrirSegment(segmentCourant + 1);
+        segmentCourant++;
+    }
+
+    private void ouvrirSegment(long segment) throws IOException {
+        canalEcriture = FileChannel.open(cheminSegment(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        tamponEcriture = canalEcriture.map(FileChannel.MapMode.READ_WRITE, 0, tailleSegment);
+    }
+
+    /**
+     * Marque la fin d'un segment laissé ouvert par l'exécution précédente, juste après son
+     * dernier enregistrement valide.
+     */
+    private void clore(long segment) throws IOException {
+        try (FileChannel canal = FileChannel.open(cheminSegment(segment), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            Position position = new Position(segment, 0);
+            Entree entree;
+            while ((entree = lireEnregistrement(canal, position)) != null) {
+                position = entree.fin();
+            }
+            if (position.decalage() + Integer.BYTES <= canal.size()) {
+                canal.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, FIN_SEGMENT), position.decalage());
+                canal.force(true);
+            }
+        }
+    }
+
+    /**
+     * @return l'enregistrement à cette position (sans événement s'il est corrompu ou ne peut être
+     * décodé), ou null en fin de segment ou sur une longueur invalide (écriture interrompue)
+     */
+    private Entree lireEnregistrement(FileChannel canal, Position position) throws IOException {
+        long decalage = position.decalage();
+        if (decalage + ENTETE > canal.size()) {
+            return null;
+        }
+        ByteBuffer entete = ByteBuffer.allocate(ENTETE);
+        canal.read(entete, decalage);
+        int longueur = entete.getInt(0);
+        if (longueur <= 0 || decalage + ENTETE + longueur > canal.size()) {
+            return null;
+        }
+        ByteBuffer contenu = ByteBuffer.allocate(longueur);
+        canal.read(contenu, decalage + ENTETE);
+        Position fin = new Position(position.segment(), decalage + ENTETE + longueur);
+        CRC32 crc = new CRC32();
+        crc.update(contenu.array());
+        if ((int) crc.getValue() != entete.getInt(Integer.BYTES)) {
+            // La longueur, dans les bornes, reste fiable : seul cet enregistrement est sauté, sans
+            // bloquer l'expédition ni perdre les suivants
+            nombreIllisibles.incrementAndGet();
+            log.error("Enregistrement corrompu dans le segment de journal d'audit {} à la position {}",
+                    position.segment(), decalage);
+            return new Entree(null, fin);
+        }
+        try {
+            return new Entree(decoder(contenu.array()), fin);
+        } catch (IOException | IllegalArgumentException e) {
+            // Illisible mais intègre : l'enregistrement est sauté plutôt que de bloquer l'expédition
+            nombreIllisibles.incrementAndGet();
+            log.error("Enregistrement illisible dans le segment de journal d'audit {} à la position {}: {}",
+                    position.segment(), decalage, e.getMessage());
+            return new Entree(null, fin);
+        }
+    }
+
+    private void creerTable() {
+        if (tableCreee) {
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE_POINTS + " (" +
+                "journal_id VARCHAR(64) PRIMARY KEY, " +
+                "segment BIGINT NOT NULL, " +
+                "decalage BIGINT NOT NULL, " +
+                "date_maj TIMESTAMP NOT NULL)");
+        tableCreee = true;
+    }
+
+    /**
+     * Identifiant de ce journal, pour que plusieurs instances partageant la base conservent
+     * chacune leur propre point d'expédition.
+     */
+    private String lireIdentifiant() throws IOException {
+        Path fichier = repertoire.resolve(FICHIER_IDENTIFIANT);
+        if (Files.exists(fichier)) {
+            return Files.readString(fichier, StandardCharsets.UTF_8).trim();
+        }
+        String nouveau = UUID.randomUUID().toString();
+        Files.writeString(fichier, nouveau, StandardCharsets.UTF_8);
+        return nouveau;
+    }
+
+    private List<Long> listerSegments() throws IOException {
+        try (Stream<Path> fichiers = Files.list(repertoire)) {
+            return fichiers.map(fichier -> NOM_SEGMENT.matcher(fichier.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path cheminSegment(long segment) {
+        return repertoire.resolve(String.format("%020d.journal", segment));
+    }
+
+    private static byte[] encoder(AuditLog auditLog) {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(256);
+        try (DataOutputStream sortie = new DataOutputStream(octets)) {
+            sortie.writeByte(VERSION);
+            ecrireLong(sortie, auditLog.getUtilisateurId());
+            ecrireTexte(sortie, auditLog.getUsername());
+            ecrireTexte(sortie, auditLog.getAction());
+            ecrireTexte(sortie, auditLog.getRessource());
+            ecrireLong(sortie, auditLog.getRessourceId());
+            ecrireTexte(sortie, auditLog.getDetails());
+            ecrireTexte(sortie, auditLog.getIpAddress());
+            ecrireTexte(sortie, auditLog.getUserAgent());
+            ecrireTexte(sortie, auditLog.getSessionId());
+            LocalDateTime date = auditLog.getDateAction();
+            sortie.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+            sortie.writeInt(date.getNano());
+            ecrireTexte(sortie, auditLog.getNiveau() != null ? auditLog.getNiveau().name() : null);
+            ecrireTexte(sortie, auditLog.getCategorie() != null ? auditLog.getCategorie().name() : null);
+            sortie.writeByte(auditLog.getSucces() == null ? -1 : auditLog.getSucces() ? 1 : 0);
+            ecrireTexte(sortie, auditLog.getMessageErreur());
+            sortie.writeInt(auditLog.getNombreOccurrences() != null ? auditLog.getNombreOccurrences() : 1);
+            ecrireDate(sortie, auditLog.getDatePremiereOccurrence());
+            ecrireDate(sortie, auditLog.getDateDerniereOccurrence());
+            ecrireTexte(sortie, auditLog.getLocalisation());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    private static AuditLog decoder(byte[] contenu) throws IOException {
+        DataInputStream entree = new DataInputStream(new ByteArrayInputStream(contenu));
+        byte version = entree.readByte();
+        if (version != VERSION) {
+            throw new IOException("Version d'enregistrement de journal d'audit inconnue: " + version);
+        }
+        AuditLog auditLog = new AuditLog();
+        auditLog.setUtilisateurId(lireLong(entree));
+        auditLog.setUsername(lireTexte(entree));
+        auditLog.setAction(lireTexte(entree));
+        auditLog.setRessource(lireTexte(entree));
+        auditLog.setRessourceId(lireLong(entree));
+        auditLog.setDetails(lireTexte(entree));
+        auditLog.setIpAddress(lireTexte(entree));
+        auditLog.setUserAgent(lireTexte(entree));
+        auditLog.setSessionId(lireTexte(entree));
+        auditLog.setDateAction(LocalDateTime.ofEpochSecond(entree.readLong(), entree.readInt(), ZoneOffset.UTC));
+        String niveau = lireTexte(entree);
+        auditLog.setNiveau(niveau != null ? AuditLog.NiveauAudit.valueOf(niveau) : null);
+        String categorie = lireTexte(entree);
+        auditLog.setCategorie(categorie != null ? AuditLog.CategorieAudit.valueOf(categorie) : null);
+        byte succes = entree.readByte();
+        auditLog.setSucces(succes < 0 ? null : succes == 1);
+        auditLog.setMessageErreur(lireTexte(entree));
+        auditLog.setNombreOccurrences(entree.readInt());
+        auditLog.setDatePremiereOccurrence(lireDate(entree));
+        auditLog.setDateDerniereOccurrence(lireDate(entree));
+        auditLog.setLocalisation(lireTexte(entree));
+        return auditLog;
+    }
+
+    private static void ecrireLong(DataOutputStream sortie, Long valeur) throws IOException {
+        sortie.writeBoolean(valeur != null);
+        if (valeur != null) {
+            sortie.writeLong(valeur);
+        }
+    }
+
+    private static Long lireLong(DataInputStream entree) throws IOException {
+        return entree.readBoolean() ? entree.readLong() : null;
+    }
+
+    private static void ecrireDate(DataOutputStream sortie, LocalDateTime date) throws IOException {
+        sortie.writeBoolean(date != null);
+        if (date != null) {
+            sortie.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+            sortie.writeInt(date.getNano());
+        }
+    }
+
+    private static LocalDateTime lireDate(DataInputStream entree) throws IOException {
+        return entree.readBoolean() ? LocalDateTime.ofEpochSecond(entree.readLong(), entree.readInt(), ZoneOffset.UTC) : null;
+    }
+
+    private static void ecrireTexte(DataOutputStream sortie, String valeur) throws IOException {
+        if (valeur == null) {
+            sortie.writeInt(-1);
+            return;
+        }
+        byte[] octets = valeur.getBytes(StandardCharsets.UTF_8);
+        sortie.writeInt(octets.length);
+        sortie.write(octets);
+    }
+
+    private static String lireTexte(DataInputStream entree) throws IOException {
+        int longueur = entree.readInt();
+        if (longueur < 0) {
+            return null;
+        }
+        return new String(entree.readNBytes(longueur), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,276 @@
+package com.sh.erpcos.univers.securite.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Partitionnement mensuel de audit_logs (PostgreSQL, RANGE sur date_action).
+ *
+ * Au démarrage, la table créée par Hibernate est convertie une fois en table partitionnée.
+ * Les partitions des mois à venir sont créées à l'avance chaque jour, et la rétention se fait
+ * en détachant puis supprimant des partitions entières au lieu de supprimer ligne à ligne.
+ * Si l'archive froide est active, la rétention ne supprime que les partitions déjà vidées par
+ * l'archivage : un mois non archivé reste en base.
+ * Une partition par défaut recueille les lignes hors plage, pour ne jamais perdre un événement.
+ */
+@Service
+@Slf4j
+public class AuditPartitionService {
+
+    private static final String TABLE = "audit_logs";
+    private static final String PARTITION_DEFAUT = TABLE + "_p_defaut";
+    private static final Pattern NOM_PARTITION = Pattern.compile(TABLE + "_p(\\d{4})(\\d{2})");
+    private static final DateTimeFormatter SUFFIXE = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final List<String> INDEX = List.of(
+            "idx_audit_logs_date_action_id ON " + TABLE + " (date_action, id)",
+            "idx_audit_logs_username_date ON " + TABLE + " (username, date_action, id)",
+            "idx_audit_logs_categorie_succes_date ON " + TABLE + " (categorie, succes, date_action, id)",
+            "idx_audit_logs_niveau_date ON " + TABLE + " (niveau, date_action, id)",
+            "idx_audit_logs_ip_date ON " + TABLE + " (ip_address, date_action, id)",
+            "idx_audit_logs_echecs_date ON " + TABLE + " (date_action, id) WHERE succes = false");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditRollupService auditRollupService;
+    private final int moisAvance;
+    private final int retentionMois;
+    private final int moisChauds;
+
+    public AuditPartitionService(JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 AuditRollupService auditRollupService,
+                                 @Value("${erp.securite.audit.partitions.mois-avance:3}") int moisAvance,
+                                 @Value("${erp.securite.audit.partitions.retention-mois:0}") int retentionMois,
+                                 @Value("${erp.securite.audit.archive.mois-chauds:0}") int moisChauds) {
+        // Les mois archivés sont ceux qui précèdent les mois-chauds derniers : une rétention plus
+        // courte purgerait des mois avant leur archivage
+        if (moisChauds > 0 && retentionMois > 0 && retentionMois <= moisChauds) {
+            throw new IllegalStateException("erp.securite.audit.partitions.retention-mois (" + retentionMois +
+                    ") doit dépasser erp.securite.audit.archive.mois-chauds (" + moisChauds + ")");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.auditRollupService = auditRollupService;
+        this.moisAvance = moisAvance;
+        this.retentionMois = retentionMois;
+        this.moisChauds = moisChauds;
+    }
+
+    /**
+     * Convertit audit_logs en table partitionnée si nécessaire, puis crée les partitions à venir.
+     */
+    public void preparer() {
+        if (!estPartitionnee()) {
+            transactionTemplate.executeWithoutResult(status -> convertir());
+        }
+        creerIndex();
+        creerPartitionsAVenir();
+    }
+
+    @Scheduled(cron = "${erp.securite.audit.partitions.cron:0 15 0 * * *}")
+    public void maintenir() {
+        if (!estPartitionnee()) {
+            return;
+        }
+        creerPartitionsAVenir();
+        if (retentionMois > 0) {
+            YearMonth moisLimite = YearMonth.now().minusMonths(retentionMois);
+            if (moisChauds > 0) {
+                supprimerPartitionsArchivees(moisLimite);
+            } else {
+                purgerAvant(moisLimite.atDay(1).atStartOfDay());
+            }
+            auditRollupService.purgerAvant(moisLimite.atDay(1).atStartOfDay());
+        }
+    }
+
+    /**
+     * Supprime les journaux antérieurs à dateLimite : les partitions entièrement antérieures sont
+     * détachées puis supprimées, seule la partition à cheval sur la limite est purgée par DELETE.
+     * Si la conversion au démarrage a échoué, la table n'est pas partitionnée : la purge se fait
+     * alors par un simple DELETE.
+     *
+     * @return le nombre de partitions supprimées
+     */
+    public int purgerAvant(LocalDateTime dateLimite) {
+        if (!estPartitionnee()) {
+            int lignes = jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE date_action < ?",
+                    Timestamp.valueOf(dateLimite));
+            log.info("{} journaux d'audit supprimés ({} non partitionnée)", lignes, TABLE);
+            return 0;
+        }
+        int supprimees = 0;
+        for (String partition : listerPartitions()) {
+            Matcher matcher = NOM_PARTITION.matcher(partition);
+            if (!matcher.matches()) {
+                continue;
+            }
+            YearMonth mois = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            LocalDateTime debut = mois.atDay(1).atStartOfDay();
+            LocalDateTime fin = mois.plusMonths(1).atDay(1).atStartOfDay();
+
+            if (!fin.isAfter(dateLimite)) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+                    jdbcTemplate.execute("DROP TABLE " + partition);
+                });
+                supprimees++;
+                log.info("Partition d'audit supprimée: {}", partition);
+            } else if (debut.isBefore(dateLimite)) {
+                int lignes = jdbcTemplate.update("DELETE FROM " + partition + " WHERE date_action < ?",
+                        Timestamp.valueOf(dateLimite));
+                log.info("{} journaux supprimés dans la partition {}", lignes, partition);
+            }
+        }
+        jdbcTemplate.update("DELETE FROM " + PARTITION_DEFAUT + " WHERE date_action < ?", Timestamp.valueOf(dateLimite));
+        return supprimees;
+    }
+
+    /**
+     * Rétention avec archive froide : les partitions antérieures à moisLimite ne sont supprimées
+     * que vides. Une partition qui a encore des lignes n'a pas été archivée (archivage en échec) et
+     * reste en place jusqu'au prochain archivage réussi.
+     */
+    private void supprimerPartitionsArchivees(YearMonth moisLimite) {
+        for (String partition : listerPartitions()) {
+            Matcher matcher = NOM_PARTITION.matcher(partition);
+            if (!matcher.matches()) {
+                continue;
+            }
+            YearMonth mois = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            if (mois.isBefore(moisLimite) && !supprimerPartitionVide(mois)) {
+                log.warn("Partition d'audit {} conservée malgré la rétention : mois pas encore archivé", partition);
+            }
+        }
+    }
+
+    /**
+     * Supprime la partition du mois si elle ne contient plus aucune ligne, par exemple après son
+     * archivage. Une ligne arrivée entre-temps la conserve : rien n'est supprimé sans avoir été lu.
+     *
+     * @return true si la partition a été supprimée
+     */
+    public boolean supprimerPartitionVide(YearMonth mois) {
+        String partition = TABLE + "_p" + mois.format(SUFFIXE);
+        if (!estPartitionnee() || !listerPartitions().contains(partition)) {
+            return false;
+        }
+        Boolean supprimee = transactionTemplate.execute(status -> {
+            // DETACH verrouille de toute façon la table mère : la prendre d'abord évite un interblocage
+            // avec les insertions, qui verrouillent la mère puis la partition
+            jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN ACCESS EXCLUSIVE MODE");
+            Boolean vide = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM " + partition + ")",
+                    Boolean.class);
+            if (!Boolean.TRUE.equals(vide)) {
+                return false;
+            }
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            return true;
+        });
+        if (Boolean.TRUE.equals(supprimee)) {
+            log.info("Partition d'audit vide supprimée: {}", partition);
+        }
+        return Boolean.TRUE.equals(supprimee);
+    }
+
+    public List<String> listerPartitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = ? ORDER BY c.relname", String.class, TABLE);
+    }
+
+    private boolean estPartitionnee() {
+        List<String> types = jdbcTemplate.queryForList(
+                "SELECT c.relkind::text FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE c.relname = ? AND n.nspname = current_schema()", String.class, TABLE);
+        return types.contains("p");
+    }
+
+    private void convertir() {
+        String ancienne = TABLE + "_avant_partitionnement";
+        log.info("Conversion de {} en table partitionnée par mois", TABLE);
+
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " RENAME TO " + ancienne);
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + TABLE + "_partition_id_seq");
+        // La clé primaire d'une table partitionnée doit contenir la clé de partitionnement
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " (LIKE " + ancienne + " INCLUDING DEFAULTS) " +
+                "PARTITION BY RANGE (date_action)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ALTER COLUMN id SET DEFAULT nextval('" + TABLE + "_partition_id_seq')");
+        jdbcTemplate.execute("ALTER SEQUENCE " + TABLE + "_partition_id_seq OWNED BY " + TABLE + ".id");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD PRIMARY KEY (id, date_action)");
+        jdbcTemplate.execute("CREATE TABLE " + PARTITION_DEFAUT + " PARTITION OF " + TABLE + " DEFAULT");
+
+        LocalDateTime plusAncienne = jdbcTemplate.queryForObject(
+                "SELECT MIN(date_action) FROM " + ancienne, LocalDateTime.class);
+        YearMonth premierMois = plusAncienne != null ? YearMonth.from(plusAncienne) : YearMonth.now();
+        for (YearMonth mois = premierMois; !mois.isAfter(YearMonth.now().plusMonths(moisAvance)); mois = mois.plusMonths(1)) {
+            creerPartition(mois);
+        }
+
+        int lignes = jdbcTemplate.update("INSERT INTO " + TABLE + " SELECT * FROM " + ancienne);
+        jdbcTemplate.execute("SELECT setval('" + TABLE + "_partition_id_seq', " +
+                "GREATEST((SELECT COALESCE(MAX(id), 0) FROM " + TABLE + "), 1))");
+        jdbcTemplate.execute("DROP TABLE " + ancienne + " CASCADE");
+        log.info("{} journaux d'audit migrés dans les partitions mensuelles", lignes);
+    }
+
+    /**
+     * Index des recherches et de la pagination par clé, propagés à chaque partition. Ils reprennent
+     * ceux déclarés sur l'entité AuditLog (perdus lors de la conversion), plus l'index partiel des
+     * échecs qu'Hibernate ne sait pas déclarer.
+     */
+    private void creerIndex() {
+        for (String index : INDEX) {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + index);
+        }
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_audit_logs_date_action");
+    }
+
+    private void creerPartitionsAVenir() {
+        YearMonth courant = YearMonth.now();
+        for (int i = 0; i <= moisAvance; i++) {
+            YearMonth mois = courant.plusMonths(i);
+            transactionTemplate.executeWithoutResult(status -> creerPartition(mois));
+        }
+    }
+
+    /**
+     * Crée la partition du mois si elle n'existe pas. Les lignes de ce mois tombées entre-temps
+     * dans la partition par défaut y sont déplacées, sinon PostgreSQL refuserait la création.
+     */
+    private void creerPartition(YearMonth mois) {
+        String partition = TABLE + "_p" + mois.format(SUFFIXE);
+        Boolean existe = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition);
+        if (Boolean.TRUE.equals(existe)) {
+            return;
+        }
+
+        LocalDate debut = mois.atDay(1);
+        LocalDate fin = mois.plusMonths(1).atDay(1);
+        jdbcTemplate.execute("CREATE TEMP TABLE audit_logs_a_deplacer ON COMMIT DROP AS " +
+                "WITH deplaces AS (DELETE FROM " + PARTITION_DEFAUT +
+                " WHERE date_action >= '" + debut + "' AND date_action < '" + fin + "' RETURNING *) " +
+                "SELECT * FROM deplaces");
+        jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + TABLE +
+                " FOR VALUES FROM ('" + debut + "') TO ('" + fin + "')");
+        jdbcTemplate.execute("INSERT INTO " + TABLE + " SELECT * FROM audit_logs_a_deplacer");
+        jdbcTemplate.execute("DROP TABLE audit_logs_a_deplacer");
+        log.info("Partition d'audit créée: {}", partition);
+    }
+}
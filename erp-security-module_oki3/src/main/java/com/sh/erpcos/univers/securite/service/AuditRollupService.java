@@ -0,0 +1,311 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Agrégats horaires des journaux d'audit, tenus à jour au fil de l'écriture.
+ *
+ * Chaque lot écrit par AuditWriter incrémente, dans la même transaction, un compteur par
+ * (heure, niveau, catégorie, utilisateur, action, succès), ainsi qu'un compteur des échecs de
+ * connexion par (heure, utilisateur, adresse IP). Les statistiques d'une période lisent les heures
+ * complètes dans ces agrégats et seules les heures partielles aux bornes dans audit_logs :
+ * le coût dépend du nombre de compteurs et non plus de la taille de la table.
+ *
+ * Les compteurs comptent des occurrences : un journal regroupé (nombre_occurrences) compte pour
+ * autant d'événements.
+ *
+ * Les colonnes de clé sont NOT NULL (contrainte d'unicité de l'UPSERT) : un utilisateur ou une
+ * adresse absents sont stockés en chaîne vide et restitués à null.
+ */
+@Service
+@Slf4j
+public class AuditRollupService {
+
+    public enum Dimension {
+        NIVEAU("niveau"), CATEGORIE("categorie"), UTILISATEUR("username"), ACTION("action");
+
+        private final String colonne;
+
+        Dimension(String colonne) {
+            this.colonne = colonne;
+        }
+    }
+
+    private static final String TABLE_AGREGATS = "audit_rollups_horaires";
+    private static final String TABLE_ECHECS = "audit_echecs_connexion_horaires";
+
+    private static final String SQL_UPSERT_AGREGAT = "INSERT INTO " + TABLE_AGREGATS +
+            " (heure, niveau, categorie, username, action, succes, nombre) VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (heure, niveau, categorie, username, action, succes) " +
+            "DO UPDATE SET nombre = " + TABLE_AGREGATS + ".nombre + EXCLUDED.nombre";
+
+    private static final String SQL_UPSERT_ECHEC = "INSERT INTO " + TABLE_ECHECS +
+            " (heure, username, ip_address, nombre) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (heure, username, ip_address) " +
+            "DO UPDATE SET nombre = " + TABLE_ECHECS + ".nombre + EXCLUDED.nombre";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile boolean tablesCreees;
+
+    public AuditRollupService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Crée les tables d'agrégats avant que AuditWriter ne commence à écrire.
+     */
+    @PostConstruct
+    void creerTables() {
+        Boolean existe = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, TABLE_AGREGATS);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE_AGREGATS + " (" +
+                "heure TIMESTAMP NOT NULL, " +
+                "niveau VARCHAR(20) NOT NULL, " +
+                "categorie VARCHAR(30) NOT NULL, " +
+                "username VARCHAR(50) NOT NULL DEFAULT '', " +
+                "action VARCHAR(100) NOT NULL, " +
+                "succes BOOLEAN NOT NULL, " +
+                "nombre BIGINT NOT NULL, " +
+                "PRIMARY KEY (heure, niveau, categorie, username, action, succes))");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE_ECHECS + " (" +
+                "heure TIMESTAMP NOT NULL, " +
+                "username VARCHAR(50) NOT NULL DEFAULT '', " +
+                "ip_address VARCHAR(45) NOT NULL DEFAULT '', " +
+                "nombre BIGINT NOT NULL, " +
+                "PRIMARY KEY (heure, username, ip_address))");
+        tablesCreees = !Boolean.TRUE.equals(existe);
+    }
+
+    /**
+     * Au premier démarrage avec agrégats, les calcule à partir de l'historique existant.
+     */
+    public void preparer() {
+        if (tablesCreees) {
+            reconstruire();
+            tablesCreees = false;
+        }
+    }
+
+    /**
+     * Recalcule entièrement les agrégats à partir de audit_logs.
+     */
+    public void reconstruire() {
+        transactionTemplate.executeWithoutResult(status -> {
+            verrouiller();
+            jdbcTemplate.execute("DELETE FROM " + TABLE_AGREGATS);
+            jdbcTemplate.execute("DELETE FROM " + TABLE_ECHECS);
+            int agregats = recalculer(null, null);
+            log.info("{} agrégats horaires d'audit reconstruits", agregats);
+        });
+    }
+
+    /**
+     * Incrémente les compteurs pour un lot de journaux. Doit être appelé dans la transaction
+     * qui insère le lot, pour que journaux et agrégats restent cohérents.
+     */
+    public void enregistrer(List<AuditLog> lot) {
+        Map<List<Object>, Long> agregats = new HashMap<>();
+        Map<List<Object>, Long> echecs = new HashMap<>();
+        for (AuditLog auditLog : lot) {
+            Timestamp heure = Timestamp.valueOf(auditLog.getDateAction().truncatedTo(ChronoUnit.HOURS));
+            boolean succes = !Boolean.FALSE.equals(auditLog.getSucces());
+            agregats.merge(List.of(heure, auditLog.getNiveau().name(), auditLog.getCategorie().name(),
+                    versCle(auditLog.getUsername()), auditLog.getAction(), succes), occurrences(auditLog), Long::sum);
+            if (!succes && auditLog.getCategorie() == AuditLog.CategorieAudit.AUTHENTICATION) {
+                echecs.merge(List.of(heure, versCle(auditLog.getUsername()), versCle(auditLog.getIpAddress())),
+                        occurrences(auditLog), Long::sum);
+            }
+        }
+
+        jdbcTemplate.batchUpdate(SQL_UPSERT_AGREGAT, lignes(agregats));
+        if (!echecs.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_UPSERT_ECHEC, lignes(echecs));
+        }
+    }
+
+    /**
+     * Supprime les agrégats antérieurs à dateLimite ; l'heure à cheval sur la limite est
+     * recalculée à partir des journaux restants.
+     */
+    public void purgerAvant(LocalDateTime dateLimite) {
+        LocalDateTime heure = dateLimite.truncatedTo(ChronoUnit.HOURS);
+        transactionTemplate.executeWithoutResult(status -> {
+            verrouiller();
+            Timestamp limite = Timestamp.valueOf(heure.plusHours(1));
+            jdbcTemplate.update("DELETE FROM " + TABLE_AGREGATS + " WHERE heure < ?", limite);
+            jdbcTemplate.update("DELETE FROM " + TABLE_ECHECS + " WHERE heure < ?", limite);
+            recalculer(heure, heure.plusHours(1));
+        });
+    }
+
+    public long compter(LocalDateTime dateDebut, LocalDateTime dateFin) {
+        Bornes bornes = new Bornes(dateDebut, dateFin);
+        Long total = jdbcTemplate.queryForObject(
+                "SELECT COALESCE((SELECT SUM(nombre) FROM " + TABLE_AGREGATS + " WHERE heure >= ? AND heure < ?), 0) + " +
+                "(SELECT COALESCE(SUM(nombre_occurrences), 0) FROM audit_logs WHERE " + Bornes.CONDITION_BORDS + ")",
+                Long.class, bornes.parametres().toArray());
+        return total != null ? total : 0L;
+    }
+
+    /**
+     * @return des lignes [valeur, nombre] triées par nombre décroissant ; les niveaux et
+     *         catégories sont restitués sous forme d'énumérations
+     */
+    public List<Object[]> statistiques(Dimension dimension, LocalDateTime dateDebut, LocalDateTime dateFin) {
+        Bornes bornes = new Bornes(dateDebut, dateFin);
+        String colonne = dimension.colonne;
+        String sql = "SELECT cle, SUM(nombre) FROM (" +
+                "SELECT NULLIF(" + colonne + ", '') AS cle, SUM(nombre) AS nombre FROM " + TABLE_AGREGATS +
+                " WHERE heure >= ? AND heure < ? GROUP BY 1 " +
+                "UNION ALL " +
+                "SELECT " + colonne + ", SUM(nombre_occurrences) FROM audit_logs WHERE " + Bornes.CONDITION_BORDS + " GROUP BY 1" +
+                ") t GROUP BY cle ORDER BY 2 DESC";
+
+        Function<String, Object> conversion = switch (dimension) {
+            case NIVEAU -> AuditLog.NiveauAudit::valueOf;
+            case CATEGORIE -> AuditLog.CategorieAudit::valueOf;
+            default -> valeur -> valeur;
+        };
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            String valeur = rs.getString(1);
+            return new Object[]{valeur != null ? conversion.apply(valeur) : null, rs.getLong(2)};
+        }, bornes.parametres().toArray());
+    }
+
+    /**
+     * Couples (utilisateur, adresse IP) ayant cumulé au moins seuilTentatives échecs de connexion
+     * depuis dateDebut.
+     *
+     * @return des lignes [username, ipAddress, nombre] triées par nombre décroissant
+     */
+    public List<Object[]> activitesSuspectes(LocalDateTime dateDebut, long seuilTentatives) {
+        LocalDateTime premiereHeure = heureSuperieure(dateDebut);
+        String sql = "SELECT username, ip_address, SUM(nombre) FROM (" +
+                "SELECT NULLIF(username, '') AS username, NULLIF(ip_address, '') AS ip_address, nombre FROM " +
+                TABLE_ECHECS + " WHERE heure >= ? " +
+                "UNION ALL " +
+                "SELECT username, ip_address, SUM(nombre_occurrences) FROM audit_logs " +
+                "WHERE categorie = ? AND succes = false AND date_action >= ? AND date_action < ? " +
+                "GROUP BY username, ip_address" +
+                ") t GROUP BY username, ip_address HAVING SUM(nombre) >= ? ORDER BY 3 DESC";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new Object[]{rs.getString(1), rs.getString(2), rs.getLong(3)},
+                Timestamp.valueOf(premiereHeure), AuditLog.CategorieAudit.AUTHENTICATION.name(),
+                Timestamp.valueOf(dateDebut), Timestamp.valueOf(premiereHeure), seuilTentatives);
+    }
+
+    /**
+     * Nombre total d'échecs de connexion enregistrés.
+     */
+    public long compterEchecsConnexion() {
+        Long total = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(nombre), 0) FROM " + TABLE_AGREGATS +
+                " WHERE categorie = ? AND succes = false", Long.class, AuditLog.CategorieAudit.AUTHENTICATION.name());
+        return total != null ? total : 0L;
+    }
+
+    /**
+     * Bloque les incréments concurrents le temps d'un recalcul : un lot en cours d'écriture
+     * n'incrémentera ses compteurs qu'après le recalcul, qui ne voit pas encore ses journaux.
+     */
+    private void verrouiller() {
+        jdbcTemplate.execute("LOCK TABLE " + TABLE_AGREGATS + ", " + TABLE_ECHECS + " IN EXCLUSIVE MODE");
+    }
+
+    /**
+     * Insère les agrégats de la plage [debut, fin) calculés depuis audit_logs (toute la table si
+     * les bornes sont nulles). Les agrégats de cette plage doivent avoir été supprimés.
+     */
+    private int recalculer(LocalDateTime debut, LocalDateTime fin) {
+        String filtre = debut != null ? " WHERE date_action >= ? AND date_action < ?" : "";
+        Object[] parametres = debut != null
+                ? new Object[]{Timestamp.valueOf(debut), Timestamp.valueOf(fin)}
+                : new Object[0];
+
+        int agregats = jdbcTemplate.update("INSERT INTO " + TABLE_AGREGATS +
+                " (heure, niveau, categorie, username, action, succes, nombre) " +
+                "SELECT date_trunc('hour', date_action), niveau, categorie, COALESCE(username, ''), action, " +
+                "COALESCE(succes, true), SUM(nombre_occurrences) FROM audit_logs" + filtre + " GROUP BY 1, 2, 3, 4, 5, 6", parametres);
+
+        String filtreEchecs = (filtre.isEmpty() ? " WHERE " : filtre + " AND ") +
+                "categorie = '" + AuditLog.CategorieAudit.AUTHENTICATION.name() + "' AND succes = false";
+        jdbcTemplate.update("INSERT INTO " + TABLE_ECHECS + " (heure, username, ip_address, nombre) " +
+                "SELECT date_trunc('hour', date_action), COALESCE(username, ''), COALESCE(ip_address, ''), SUM(nombre_occurrences) " +
+                "FROM audit_logs" + filtreEchecs + " GROUP BY 1, 2, 3", parametres);
+        return agregats;
+    }
+
+    private static List<Object[]> lignes(Map<List<Object>, Long> compteurs) {
+        List<Object[]> lignes = new ArrayList<>(compteurs.size());
+        compteurs.forEach((cle, nombre) -> {
+            Object[] ligne = cle.toArray(new Object[cle.size() + 1]);
+            ligne[cle.size()] = nombre;
+            lignes.add(ligne);
+        });
+        return lignes;
+    }
+
+    private static long occurrences(AuditLog auditLog) {
+        return auditLog.getNombreOccurrences() != null ? auditLog.getNombreOccurrences() : 1;
+    }
+
+    private static String versCle(String valeur) {
+        return Objects.requireNonNullElse(valeur, "");
+    }
+
+    private static LocalDateTime heureSuperieure(LocalDateTime date) {
+        LocalDateTime heure = date.truncatedTo(ChronoUnit.HOURS);
+        return heure.equals(date) ? heure : heure.plusHours(1);
+    }
+
+    /**
+     * Découpe [dateDebut, dateFin] en heures complètes, lues dans les agrégats, et en deux bords
+     * partiels [dateDebut, premiereHeure) et [derniereHeure, dateFin], lus dans audit_logs.
+     */
+    private static final class Bornes {
+
+        static final String CONDITION_BORDS =
+                "((date_action >= ? AND date_action < ?) OR (date_action >= ? AND date_action <= ?))";
+
+        private final LocalDateTime premiereHeure;
+        private final LocalDateTime derniereHeure;
+        private final LocalDateTime dateDebut;
+        private final LocalDateTime dateFin;
+
+        Bornes(LocalDateTime dateDebut, LocalDateTime dateFin) {
+            LocalDateTime premiere = heureSuperieure(dateDebut);
+            LocalDateTime derniere = dateFin.truncatedTo(ChronoUnit.HOURS);
+            if (premiere.isBefore(derniere)) {
+                this.premiereHeure = premiere;
+                this.derniereHeure = derniere;
+            } else {
+                // Période de moins d'une heure complète : tout est lu dans audit_logs
+                this.premiereHeure = dateDebut;
+                this.derniereHeure = dateDebut;
+            }
+            this.dateDebut = dateDebut;
+            this.dateFin = dateFin;
+        }
+
+        List<Object> parametres() {
+            return List.of(Timestamp.valueOf(premiereHeure), Timestamp.valueOf(derniereHeure),
+                    Timestamp.valueOf(dateDebut), Timestamp.valueOf(premiereHeure),
+                    Timestamp.valueOf(derniereHeure), Timestamp.valueOf(dateFin));
+        }
+    }
+}
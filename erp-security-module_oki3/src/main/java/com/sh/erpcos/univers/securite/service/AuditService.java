@@ -2,10 +2,17 @@ package com.sh.erpcos.univers.securite.service;
 
 import com.sh.erpcos.univers.securite.entity.AuditLog;
 import com.sh.erpcos.univers.securite.repository.AuditLogRepository;
+import com.sh.erpcos.univers.securite.repository.AuditLogSpecifications;
+import com.sh.erpcos.univers.securite.util.KeysetCursor;
+import com.sh.erpcos.univers.securite.util.PageParCurseur;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -14,6 +21,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -26,6 +35,21 @@ import java.util.concurrent.CompletableFuture;
 public class AuditService {
     
     private final AuditLogRepository auditLogRepository;
+    private final AuditWriter auditWriter;
+    private final RegroupementAuditService regroupementAuditService;
+    private final AuditRollupService auditRollupService;
+    private final EstimationLignesService estimationLignesService;
+    private final AuditArchiveService auditArchiveService;
+    private final LiveMetricsRegistry liveMetricsRegistry;
+    private final GeolocalisationIpService geolocalisationIpService;
+    
+    private static final Sort TRI_RECENTS = Sort.by(Sort.Order.desc("dateAction"), Sort.Order.desc("id"));
+    private static final Comparator<AuditLog> ORDRE_RECENTS = Comparator.comparing(AuditLog::getDateAction)
+            .thenComparing(AuditLog::getId).reversed();
+    // Part de l'archive froide dans une liste non paginée : au plus LIMITE_ARCHIVE_LISTE journaux des
+    // MOIS_ARCHIVE_LISTE derniers mois archivés, pour ne décompresser que quelques segments
+    private static final int LIMITE_ARCHIVE_LISTE = 1000;
+    private static final int MOIS_ARCHIVE_LISTE = 12;
     
     // Méthodes de logging asynchrones
     @Async
@@ -65,40 +89,16 @@ public class AuditService {
     public AuditLog log(String action, String ressource, AuditLog.NiveauAudit niveau, 
                        AuditLog.CategorieAudit categorie, String details, boolean succes, String messageErreur) {
         
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String username = (auth != null && auth.isAuthenticated()) ? auth.getName() : "SYSTEM";
-        
-        AuditLog auditLog = new AuditLog();
-        auditLog.setUsername(username);
-        auditLog.setAction(action);
-        auditLog.setRessource(ressource);
-        auditLog.setNiveau(niveau);
-        auditLog.setCategorie(categorie);
-        auditLog.setDetails(details);
-        auditLog.setSucces(succes);
-        auditLog.setMessageErreur(messageErreur);
-        auditLog.setDateAction(LocalDateTime.now());
-        
-        return auditLogRepository.save(auditLog);
+        AuditLog auditLog = creerAuditLog(action, ressource, niveau, categorie, details, succes, messageErreur);
+        soumettre(auditLog);
+        return auditLog;
     }
     
     public AuditLog log(String action, String ressource, AuditLog.NiveauAudit niveau, 
                        AuditLog.CategorieAudit categorie, String details, boolean succes, 
                        String messageErreur, HttpServletRequest request) {
         
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String username = (auth != null && auth.isAuthenticated()) ? auth.getName() : "SYSTEM";
-        
-        AuditLog auditLog = new AuditLog();
-        auditLog.setUsername(username);
-        auditLog.setAction(action);
-        auditLog.setRessource(ressource);
-        auditLog.setNiveau(niveau);
-        auditLog.setCategorie(categorie);
-        auditLog.setDetails(details);
-        auditLog.setSucces(succes);
-        auditLog.setMessageErreur(messageErreur);
-        auditLog.setDateAction(LocalDateTime.now());
+        AuditLog auditLog = creerAuditLog(action, ressource, niveau, categorie, details, succes, messageErreur);
         
         if (request != null) {
             auditLog.setIpAddress(getClientIpAddress(request));
@@ -106,7 +106,8 @@ public class AuditService {
             auditLog.setSessionId(request.getSession().getId());
         }
         
-        return auditLogRepository.save(auditLog);
+        soumettre(auditLog);
+        return auditLog;
     }
     
     // Méthodes spécialisées pour différents types d'événements
@@ -127,7 +128,8 @@ public class AuditService {
             auditLog.setSessionId(request.getSession().getId());
         }
         
-        return auditLogRepository.save(auditLog);
+        soumettre(auditLog);
+        return auditLog;
     }
     
     public AuditLog logDataAccess(String ressource, Long ressourceId, String action, String details) {
@@ -136,16 +138,28 @@ public class AuditService {
     }
     
     public AuditLog logDataModification(String ressource, Long ressourceId, String action, String details) {
-        AuditLog auditLog = log(action, ressource + (ressourceId != null ? ":" + ressourceId : ""), 
-                               AuditLog.NiveauAudit.INFO, AuditLog.CategorieAudit.DATA_MODIFICATION, details);
+        AuditLog auditLog = creerAuditLog(action, ressource + (ressourceId != null ? ":" + ressourceId : ""), 
+                               AuditLog.NiveauAudit.INFO, AuditLog.CategorieAudit.DATA_MODIFICATION, details, true, null);
         auditLog.setRessourceId(ressourceId);
-        return auditLogRepository.save(auditLog);
+        soumettre(auditLog);
+        return auditLog;
     }
     
     public AuditLog logSecurityEvent(String action, String details, AuditLog.NiveauAudit niveau) {
         return log(action, "SECURITY", niveau, AuditLog.CategorieAudit.SECURITY_EVENT, details);
     }
     
+    // Événement de sécurité concernant un autre utilisateur que l'utilisateur connecté (ex. tentative de connexion)
+    public AuditLog logSecurityEvent(String username, String ipAddress, String action, String details,
+                                     AuditLog.NiveauAudit niveau) {
+        AuditLog auditLog = creerAuditLog(action, "SECURITY", niveau, AuditLog.CategorieAudit.SECURITY_EVENT,
+                                          details, false, null);
+        auditLog.setUsername(username);
+        auditLog.setIpAddress(ipAddress);
+        soumettre(auditLog);
+        return auditLog;
+    }
+    
     public AuditLog logUserManagement(String action, String targetUser, String details) {
         return log(action, "USER:" + targetUser, AuditLog.NiveauAudit.INFO, 
                   AuditLog.CategorieAudit.USER_MANAGEMENT, details);
@@ -172,12 +186,22 @@ public class AuditService {
     }
     
     // Méthodes de recherche et consultation
+    // Les journaux archivés les plus récents sont placés après ceux de la base, qui sont tous plus récents
     public List<AuditLog> getLogsByUser(String username) {
-        return auditLogRepository.findByUsernameOrderByDateActionDesc(username);
+        List<AuditLog> logs = auditLogRepository.findByUsernameOrderByDateActionDesc(username);
+        LocalDateTime dateMaxArchivee = auditArchiveService.getDateMaxArchivee();
+        if (dateMaxArchivee == null) {
+            return logs;
+        }
+        AuditArchiveService.Critere critere = new AuditArchiveService.Critere(username, null, null, null, null,
+                dateMaxArchivee.minusMonths(MOIS_ARCHIVE_LISTE), null, null);
+        logs = new ArrayList<>(logs);
+        logs.addAll(auditArchiveService.rechercher(critere, KeysetCursor.DEBUT, LIMITE_ARCHIVE_LISTE));
+        return logs;
     }
     
     public Page<AuditLog> getLogsByUser(String username, Pageable pageable) {
-        return auditLogRepository.findByUsernameOrderByDateActionDesc(username, pageable);
+        return searchLogs(username, null, null, null, null, null, null, null, pageable);
     }
     
     public List<AuditLog> getLogsByPeriod(LocalDateTime dateDebut, LocalDateTime dateFin) {
@@ -200,8 +224,34 @@ public class AuditService {
                                     AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie,
                                     LocalDateTime dateDebut, LocalDateTime dateFin, Boolean succes,
                                     Pageable pageable) {
-        return auditLogRepository.rechercheAvancee(username, action, ressource, niveau, categorie, 
-                                                  dateDebut, dateFin, succes, pageable);
+        Specification<AuditLog> criteres = AuditLogSpecifications.recherche(username, action, ressource, niveau,
+                                                                           categorie, dateDebut, dateFin, succes);
+        Pageable triee = pageable.isPaged()
+                ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), TRI_RECENTS)
+                : Pageable.unpaged(TRI_RECENTS);
+        Page<AuditLog> page = auditLogRepository.findAll(criteres, triee);
+        // Une liste non paginée ne lit pas l'archive : elle devrait en décompresser tous les segments
+        if (pageable.isUnpaged() || !auditArchiveService.concerne(dateDebut)) {
+            return page;
+        }
+
+        // Les lignes archivées sont toutes plus anciennes que celles de la base : elles suivent la
+        // dernière page de la base, au décalage restant
+        AuditArchiveService.Critere critere = new AuditArchiveService.Critere(username, action, ressource,
+                niveau, categorie, dateDebut, dateFin, succes);
+        long totalBase = page.getTotalElements();
+        long totalArchive = auditArchiveService.estimer(critere);
+        List<AuditLog> lignes = new ArrayList<>(page.getContent());
+        int manquantes = pageable.getPageSize() - lignes.size();
+        if (manquantes > 0 && totalArchive > 0) {
+            long decalage = Math.max(0, pageable.getOffset() - totalBase);
+            if (decalage < totalArchive) {
+                List<AuditLog> archives = auditArchiveService.rechercher(critere, KeysetCursor.DEBUT,
+                        (int) Math.min(decalage + manquantes, Integer.MAX_VALUE));
+                lignes.addAll(archives.subList((int) Math.min(decalage, archives.size()), archives.size()));
+            }
+        }
+        return new PageImpl<>(lignes, triee, totalBase + totalArchive);
     }
     
     public Page<AuditLog> getRecentLogs(Pageable pageable) {
@@ -216,36 +266,123 @@ public class AuditService {
         return auditLogRepository.findByNiveauOrderByDateActionDesc(AuditLog.NiveauAudit.CRITICAL, pageable);
     }
     
+    // Pagination par clé (dateAction, id) : pas d'OFFSET ni de COUNT(*), le total est estimé sur demande
+    @Transactional(readOnly = true)
+    public PageParCurseur<AuditLog> searchLogsParCurseur(String username, String action, String ressource,
+                                                         AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie,
+                                                         LocalDateTime dateDebut, LocalDateTime dateFin, Boolean succes,
+                                                         String curseur, int tailleDemandee, boolean avecTotal) {
+        int taille = PageParCurseur.borner(tailleDemandee);
+        KeysetCursor.Position position = KeysetCursor.decoder(curseur);
+        Specification<AuditLog> criteres = AuditLogSpecifications.recherche(username, action, ressource, niveau,
+                categorie, dateDebut, dateFin, succes).and(KeysetCursor.apres(position, "dateAction"));
+        List<AuditLog> lignes = auditLogRepository.findBy(criteres, requete -> requete.sortBy(TRI_RECENTS)
+                .limit(taille + 1).all());
+        Long total = avecTotal
+                ? estimerTotal(username, action, ressource, niveau, categorie, dateDebut, dateFin, succes)
+                : null;
+        if (auditArchiveService.concerne(dateDebut)) {
+            AuditArchiveService.Critere critere = new AuditArchiveService.Critere(username, action, ressource,
+                    niveau, categorie, dateDebut, dateFin, succes);
+            // L'archive n'est lue que si la page l'atteint : base épuisée, ou dernière ligne lue pas
+            // plus récente que le journal archivé le plus récent
+            if (lignes.size() <= taille
+                    || !lignes.get(taille).getDateAction().isAfter(auditArchiveService.getDateMaxArchivee())) {
+                lignes = new ArrayList<>(lignes);
+                lignes.addAll(auditArchiveService.rechercher(critere, position, taille + 1));
+                lignes.sort(ORDRE_RECENTS);
+                lignes = lignes.subList(0, Math.min(lignes.size(), taille + 1));
+            }
+            if (total != null) {
+                total += auditArchiveService.estimer(critere);
+            }
+        }
+        return PageParCurseur.de(lignes, taille, AuditLog::getDateAction, AuditLog::getId, total);
+    }
+    
+    public PageParCurseur<AuditLog> getRecentLogsParCurseur(String curseur, int taille, boolean avecTotal) {
+        return searchLogsParCurseur(null, null, null, null, null, null, null, null, curseur, taille, avecTotal);
+    }
+    
+    private long estimerTotal(String username, String action, String ressource,
+                              AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie,
+                              LocalDateTime dateDebut, LocalDateTime dateFin, Boolean succes) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> parametres = new ArrayList<>();
+        if (username != null) {
+            conditions.add("username = ?");
+            parametres.add(username);
+        }
+        if (action != null) {
+            conditions.add("action ILIKE ?");
+            parametres.add("%" + action + "%");
+        }
+        if (ressource != null) {
+            conditions.add("ressource ILIKE ?");
+            parametres.add("%" + ressource + "%");
+        }
+        if (niveau != null) {
+            conditions.add("niveau = ?");
+            parametres.add(niveau.name());
+        }
+        if (categorie != null) {
+            conditions.add("categorie = ?");
+            parametres.add(categorie.name());
+        }
+        if (dateDebut != null) {
+            conditions.add("date_action >= ?");
+            parametres.add(dateDebut);
+        }
+        if (dateFin != null) {
+            conditions.add("date_action <= ?");
+            parametres.add(dateFin);
+        }
+        if (succes != null) {
+            conditions.add("succes = ?");
+            parametres.add(succes);
+        }
+        return estimationLignesService.estimerRequete("audit_logs", conditions, parametres);
+    }
+    
     // Méthodes de statistiques
     public long getLogCountByPeriod(LocalDateTime dateDebut, LocalDateTime dateFin) {
-        return auditLogRepository.countByDateActionBetween(dateDebut, dateFin);
+        return auditRollupService.compter(dateDebut, dateFin);
+    }
+    
+    // Compteur en direct des 7 derniers jours (LiveMetricsRegistry), sans requête
+    public long getLogCountLastWeek() {
+        return liveMetricsRegistry.getEvenementsAuditSemaine();
     }
     
     public List<Object[]> getStatisticsByLevel(LocalDateTime dateDebut, LocalDateTime dateFin) {
-        return auditLogRepository.getStatistiquesParNiveau(dateDebut, dateFin);
+        return auditRollupService.statistiques(AuditRollupService.Dimension.NIVEAU, dateDebut, dateFin);
     }
     
     public List<Object[]> getStatisticsByCategory(LocalDateTime dateDebut, LocalDateTime dateFin) {
-        return auditLogRepository.getStatistiquesParCategorie(dateDebut, dateFin);
+        return auditRollupService.statistiques(AuditRollupService.Dimension.CATEGORIE, dateDebut, dateFin);
     }
     
     public List<Object[]> getStatisticsByUser(LocalDateTime dateDebut, LocalDateTime dateFin) {
-        return auditLogRepository.getStatistiquesParUtilisateur(dateDebut, dateFin);
+        return auditRollupService.statistiques(AuditRollupService.Dimension.UTILISATEUR, dateDebut, dateFin);
     }
     
     public List<Object[]> getStatisticsByAction(LocalDateTime dateDebut, LocalDateTime dateFin) {
-        return auditLogRepository.getStatistiquesParAction(dateDebut, dateFin);
+        return auditRollupService.statistiques(AuditRollupService.Dimension.ACTION, dateDebut, dateFin);
     }
     
     // Détection d'activités suspectes
     public List<Object[]> getSuspiciousActivities(LocalDateTime dateDebut, long seuilTentatives) {
-        return auditLogRepository.findActivitesSuspectes(AuditLog.CategorieAudit.AUTHENTICATION, dateDebut, seuilTentatives);
+        return auditRollupService.activitesSuspectes(dateDebut, seuilTentatives);
     }
     
     public List<AuditLog> getFailedLoginAttempts() {
         return auditLogRepository.findByCategorieAndSuccesFalseOrderByDateActionDesc(AuditLog.CategorieAudit.AUTHENTICATION);
     }
     
+    public long getFailedLoginCount() {
+        return auditRollupService.compterEchecsConnexion();
+    }
+    
     public List<AuditLog> getUserActivity(String username, LocalDateTime dateDebut, LocalDateTime dateFin) {
         return auditLogRepository.findByUsernameAndDateActionBetweenOrderByDateActionDesc(username, dateDebut, dateFin);
     }
@@ -260,7 +397,7 @@ public class AuditService {
         report.put("statistiquesByUser", getStatisticsByUser(dateDebut, dateFin));
         report.put("statistiquesByAction", getStatisticsByAction(dateDebut, dateFin));
         report.put("suspiciousActivities", getSuspiciousActivities(dateDebut, 5));
-        report.put("failedLogins", getFailedLoginAttempts().size());
+        report.put("failedLogins", getFailedLoginCount());
         
         return report;
     }
@@ -269,12 +406,42 @@ public class AuditService {
     @Transactional
     public void cleanOldLogs(LocalDateTime dateLimit) {
         log.info("Nettoyage des logs antérieurs à {}", dateLimit);
-        auditLogRepository.deleteByDateActionBefore(dateLimit);
+        auditWriter.vider();
+        // L'archivage supprime lui-même les journaux lus et les partitions vidées : un journal validé
+        // pendant l'archivage reste en base jusqu'au passage suivant au lieu d'être perdu
+        long archives = auditArchiveService.archiverAvant(dateLimit);
+        log.info("{} journaux d'audit archivés", archives);
+        auditRollupService.purgerAvant(dateLimit);
         logSystemConfig("CLEAN_OLD_LOGS", "AUDIT_LOGS", 
                        "Nettoyage des logs antérieurs à " + dateLimit);
     }
     
     // Utilitaires
+    private void soumettre(AuditLog auditLog) {
+        if (auditLog.getIpAddress() != null && auditLog.getLocalisation() == null) {
+            auditLog.setLocalisation(geolocalisationIpService.localiser(auditLog.getIpAddress()));
+        }
+        regroupementAuditService.soumettre(auditLog);
+    }
+    
+    private AuditLog creerAuditLog(String action, String ressource, AuditLog.NiveauAudit niveau, 
+                                  AuditLog.CategorieAudit categorie, String details, boolean succes, String messageErreur) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String username = (auth != null && auth.isAuthenticated()) ? auth.getName() : "SYSTEM";
+        
+        AuditLog auditLog = new AuditLog();
+        auditLog.setUsername(username);
+        auditLog.setAction(action);
+        auditLog.setRessource(ressource);
+        auditLog.setNiveau(niveau);
+        auditLog.setCategorie(categorie);
+        auditLog.setDetails(details);
+        auditLog.setSucces(succes);
+        auditLog.setMessageErreur(messageErreur);
+        auditLog.setDateAction(LocalDateTime.now());
+        return auditLog;
+    }
+    
     private String getClientIpAddress(HttpServletRequest request) {
         String xForwardedFor = request.getHeader("X-Forwarded-For");
         if (xForwardedFor != null && !xForwardedFor.isEmpty() && !"unknown".equalsIgnoreCase(xForwardedFor)) {
@@ -298,13 +465,6 @@ public class AuditService {
                auditLog.getDateAction() != null;
     }
     
-    // Export des logs
-    public List<AuditLog> exportLogs(LocalDateTime dateDebut, LocalDateTime dateFin, 
-                                    AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie) {
-        return auditLogRepository.rechercheAvancee(null, null, null, niveau, categorie, 
-                                                  dateDebut, dateFin, null, Pageable.unpaged()).getContent();
-    }
-    
     //added
     /**
      * Compte le nombre total d'actions d'audit depuis une date donnée
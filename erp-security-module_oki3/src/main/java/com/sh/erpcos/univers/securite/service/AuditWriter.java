@@ -0,0 +1,482 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Écriture des journaux d'audit en arrière-plan.
+ *
+ * Le thread appelant ne fait que déposer l'événement dans une file bornée sans verrou ;
+ * un thread dédié la vide par lots et les insère avec un batch JDBC. Quand la file est
+ * pleine, la politique configurée s'applique :
+ * - BLOCK : l'appelant attend qu'une place se libère ;
+ * - DROP_INFO : les événements INFO sont abandonnés, les autres sont écrits directement ;
+ * - SYNC : l'événement est écrit directement par l'appelant.
+ * Chaque lot met à jour, dans la même transaction, les agrégats horaires (AuditRollupService).
+ *
+ * Chaque événement est aussi publié sur le flux en direct (FluxAuditService), une fois durable :
+ * après son ajout au journal local, sinon après la validation de la transaction qui l'insère.
+ * Un événement abandonné ou en échec n'est pas publié.
+ *
+ * Quand le journal local (AuditJournal) est ouvert, il remplace la file : l'appelant ajoute
+ * l'événement au journal sans jamais attendre la base, et le thread dédié expédie le journal
+ * par lots en avançant le point d'expédition dans la transaction de chaque lot. Si la base est
+ * indisponible, l'expédition reprend plus tard au même point ; les événements restent sur disque.
+ * À l'arrêt de l'application, la file est entièrement vidée avant la fermeture du pool.
+ */
+@Service
+@Slf4j
+public class AuditWriter {
+
+    public enum PolitiqueSaturation {
+        BLOCK, DROP_INFO, SYNC
+    }
+
+    private static final String SQL_INSERTION = "INSERT INTO audit_logs (utilisateur_id, username, action, " +
+            "ressource, ressource_id, details, ip_address, user_agent, session_id, date_action, niveau, " +
+            "categorie, succes, message_erreur, nombre_occurrences, date_premiere_occurrence, date_derniere_occurrence, " +
+            "localisation) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Première occurrence retrouvée par sa date (partition et index (username, date_action, id)) et sa clé de regroupement
+    private static final String SQL_REGROUPEMENT = "UPDATE audit_logs SET nombre_occurrences = nombre_occurrences + ?, " +
+            "date_premiere_occurrence = date_action, date_derniere_occurrence = ? " +
+            "WHERE date_action = ? AND id = (SELECT id FROM audit_logs WHERE date_action = ? AND action = ? " +
+            "AND username IS NOT DISTINCT FROM ? AND ressource IS NOT DISTINCT FROM ? AND categorie = ? " +
+            "AND COALESCE(succes, true) = ? ORDER BY id LIMIT 1)";
+
+    private static final long ATTENTE_MAX_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditRollupService auditRollupService;
+    private final AuditJournal auditJournal;
+    private final FluxAuditService fluxAuditService;
+    private final LiveMetricsRegistry liveMetricsRegistry;
+    private final boolean asynchrone;
+    private final int capacite;
+    private final int tailleLot;
+    private final long intervalleNanos;
+    private final PolitiqueSaturation politique;
+
+    private final Queue<AuditLog> file = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger tailleFile = new AtomicInteger();
+
+    private final AtomicLong nombreEcrits = new AtomicLong();
+    private final AtomicLong nombreAbandonnes = new AtomicLong();
+    private final AtomicLong nombreEchecs = new AtomicLong();
+
+    private volatile boolean actif;
+    private volatile boolean journalise;
+    private volatile Thread ecrivain;
+    private volatile AuditJournal.Position pointExpedie;
+
+    public AuditWriter(JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       AuditRollupService auditRollupService,
+                       AuditJournal auditJournal,
+                       FluxAuditService fluxAuditService,
+                       LiveMetricsRegistry liveMetricsRegistry,
+                       @Value("${erp.securite.audit.ecriture.asynchrone:true}") boolean asynchrone,
+                       @Value("${erp.securite.audit.ecriture.capacite:10000}") int capacite,
+                       @Value("${erp.securite.audit.ecriture.taille-lot:500}") int tailleLot,
+                       @Value("${erp.securite.audit.ecriture.intervalle-ms:200}") long intervalleMs,
+                       @Value("${erp.securite.audit.ecriture.politique-saturation:BLOCK}") PolitiqueSaturation politique) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Transaction propre à l'écriture : un appelant transactionnel n'est ni joint ni marqué
+        // rollback-only par un échec d'insertion, et la reprise ligne par ligne part d'une transaction saine
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.auditRollupService = auditRollupService;
+        this.auditJournal = auditJournal;
+        this.fluxAuditService = fluxAuditService;
+        this.liveMetricsRegistry = liveMetricsRegistry;
+        this.asynchrone = asynchrone;
+        this.capacite = capacite;
+        this.tailleLot = tailleLot;
+        this.intervalleNanos = TimeUnit.MILLISECONDS.toNanos(intervalleMs);
+        this.politique = politique;
+    }
+
+    @PostConstruct
+    void demarrer() {
+        if (auditJournal.isOuvert()) {
+            actif = true;
+            journalise = true;
+            Thread thread = new Thread(this::boucleExpedition, "audit-journal-expediteur");
+            thread.setDaemon(false);
+            ecrivain = thread;
+            thread.start();
+            log.info("Expédition du journal d'audit démarrée (lots de {})", tailleLot);
+            return;
+        }
+        if (!asynchrone) {
+            log.info("Écriture de l'audit en mode synchrone");
+            return;
+        }
+        actif = true;
+        Thread thread = new Thread(this::boucleEcriture, "audit-writer");
+        thread.setDaemon(false);
+        ecrivain = thread;
+        thread.start();
+        log.info("Écriture asynchrone de l'audit démarrée (capacité {}, lots de {}, politique {})",
+                capacite, tailleLot, politique);
+    }
+
+    /**
+     * Dépose un événement d'audit. Ne bloque que si la file est pleine et la politique est BLOCK.
+     */
+    public void soumettre(AuditLog auditLog) {
+        if (auditLog.getDateAction() == null) {
+            auditLog.setDateAction(LocalDateTime.now());
+        }
+        if (journalise) {
+            try {
+                auditJournal.ajouter(auditLog);
+                fluxAuditService.publier(auditLog);
+                return;
+            } catch (IOException e) {
+                log.warn("Journal d'audit indisponible, écriture directe en base: {}", e.getMessage());
+                ecrire(List.of(auditLog));
+                return;
+            }
+        }
+        if (!actif) {
+            ecrire(List.of(auditLog));
+            return;
+        }
+        if (reserverPlace()) {
+            file.offer(auditLog);
+            if (tailleFile.get() >= tailleLot) {
+                LockSupport.unpark(ecrivain);
+            }
+            return;
+        }
+
+        switch (politique) {
+            case BLOCK -> {
+                while (!reserverPlace()) {
+                    if (!actif) {
+                        ecrire(List.of(auditLog));
+                        return;
+                    }
+                    LockSupport.unpark(ecrivain);
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+                file.offer(auditLog);
+            }
+            case DROP_INFO -> {
+                if (auditLog.getNiveau() == AuditLog.NiveauAudit.INFO) {
+                    nombreAbandonnes.incrementAndGet();
+                } else {
+                    ecrire(List.of(auditLog));
+                }
+            }
+            case SYNC -> ecrire(List.of(auditLog));
+        }
+    }
+
+    /**
+     * Écrit immédiatement, dans le thread appelant, tout ce qui est en attente. Avec le journal,
+     * attend que l'expédition ait rattrapé la dernière position écrite (au plus 30 secondes).
+     */
+    public void vider() {
+        if (journalise) {
+            attendreExpedition(TimeUnit.SECONDS.toNanos(30));
+            return;
+        }
+        List<AuditLog> lot;
+        while (!(lot = extraireLot()).isEmpty()) {
+            ecrire(lot);
+        }
+    }
+
+    /**
+     * Insère des journaux déjà datés (restauration d'une sauvegarde) dans la transaction de
+     * l'appelant, par lots et avec leurs agrégats horaires ; ni la file, ni le journal local, ni le
+     * flux en direct ne sont concernés.
+     */
+    public void importer(List<AuditLog> journaux) {
+        for (int debut = 0; debut < journaux.size(); debut += tailleLot) {
+            inserer(journaux.subList(debut, Math.min(debut + tailleLot, journaux.size())));
+        }
+    }
+
+    /**
+     * Ajoute des répétitions (RegroupementAuditService) à la ligne de leur première occurrence,
+     * avec les agrégats horaires et compteurs correspondants, dans une transaction propre.
+     *
+     * @return false si la première occurrence n'est pas (encore) en base
+     */
+    public boolean completerRegroupement(AuditLog premiere, int repetitions, LocalDateTime derniere) {
+        Timestamp date = Timestamp.valueOf(premiere.getDateAction());
+        Boolean complete = transactionTemplate.execute(status -> {
+            int lignes = jdbcTemplate.update(SQL_REGROUPEMENT, repetitions, Timestamp.valueOf(derniere), date, date,
+                    premiere.getAction(), premiere.getUsername(), premiere.getRessource(),
+                    premiere.getCategorie().name(), !Boolean.FALSE.equals(premiere.getSucces()));
+            if (lignes == 0) {
+                return false;
+            }
+            // Les répétitions comptent à l'heure de la première occurrence, comme SUM(nombre_occurrences)
+            AuditLog increment = new AuditLog();
+            increment.setUsername(premiere.getUsername());
+            increment.setAction(premiere.getAction());
+            increment.setIpAddress(premiere.getIpAddress());
+            increment.setDateAction(premiere.getDateAction());
+            increment.setNiveau(premiere.getNiveau());
+            increment.setCategorie(premiere.getCategorie());
+            increment.setSucces(premiere.getSucces());
+            increment.setNombreOccurrences(repetitions);
+            List<AuditLog> lot = List.of(increment);
+            auditRollupService.enregistrer(lot);
+            liveMetricsRegistry.evenementsEcrits(lot);
+            return true;
+        });
+        return Boolean.TRUE.equals(complete);
+    }
+
+    public int getTailleFile() {
+        return tailleFile.get();
+    }
+
+    public long getNombreEcrits() {
+        return nombreEcrits.get();
+    }
+
+    public long getNombreAbandonnes() {
+        return nombreAbandonnes.get();
+    }
+
+    public long getNombreEchecs() {
+        return nombreEchecs.get();
+    }
+
+    @PreDestroy
+    void arreter() {
+        if (!actif) {
+            return;
+        }
+        actif = false;
+        Thread thread = ecrivain;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Ce qui a pu être déposé pendant l'arrêt est écrit par le thread courant
+        vider();
+        log.info("Écriture asynchrone de l'audit arrêtée: {} écrits, {} abandonnés, {} en échec",
+                nombreEcrits.get(), nombreAbandonnes.get(), nombreEchecs.get());
+    }
+
+    private boolean reserverPlace() {
+        int taille;
+        do {
+            taille = tailleFile.get();
+            if (taille >= capacite) {
+                return false;
+            }
+        } while (!tailleFile.compareAndSet(taille, taille + 1));
+        return true;
+    }
+
+    private void attendreExpedition(long delaiNanos) {
+        AuditJournal.Position cible = auditJournal.getPositionEcrite();
+        long limite = System.nanoTime() + delaiNanos;
+        Thread thread = ecrivain;
+        while (thread.isAlive() && System.nanoTime() < limite) {
+            AuditJournal.Position point = pointExpedie;
+            if (point != null && point.compareTo(cible) >= 0) {
+                return;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    private void boucleExpedition() {
+        long attente = intervalleNanos;
+        while (true) {
+            boolean continuer = actif;
+            try {
+                if (pointExpedie == null) {
+                    pointExpedie = auditJournal.lirePointExpedition();
+                }
+                List<AuditJournal.Entree> lot = auditJournal.lire(pointExpedie, tailleLot);
+                if (lot.isEmpty()) {
+                    if (!continuer) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, intervalleNanos);
+                    continue;
+                }
+                expedier(lot);
+                auditJournal.liberer(pointExpedie);
+                attente = intervalleNanos;
+            } catch (Exception e) {
+                if (!continuer) {
+                    log.warn("Arrêt avec des journaux d'audit non expédiés, reprise au prochain démarrage: {}",
+                            e.getMessage());
+                    return;
+                }
+                log.warn("Expédition du journal d'audit interrompue, nouvel essai dans {} ms: {}",
+                        TimeUnit.NANOSECONDS.toMillis(attente), e.getMessage());
+                LockSupport.parkNanos(this, attente);
+                attente = Math.min(attente * 2, ATTENTE_MAX_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Insère un lot lu dans le journal et avance le point d'expédition dans la même transaction.
+     * Une erreur de base indisponible est propagée pour que le lot soit repris plus tard ; toute
+     * autre erreur entraîne une reprise ligne par ligne, les lignes invalides étant écartées.
+     */
+    private void expedier(List<AuditJournal.Entree> lot) {
+        AuditJournal.Position fin = lot.get(lot.size() - 1).fin();
+        List<AuditLog> journaux = lot.stream().map(AuditJournal.Entree::auditLog).filter(Objects::nonNull).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                inserer(journaux);
+                auditJournal.enregistrerPointExpedition(fin);
+            });
+            nombreEcrits.addAndGet(journaux.size());
+            pointExpedie = fin;
+            return;
+        } catch (RuntimeException e) {
+            if (indisponible(e)) {
+                throw e;
+            }
+            log.warn("Échec de l'expédition groupée de {} journaux d'audit, reprise ligne par ligne: {}",
+                    lot.size(), e.getMessage());
+        }
+        for (AuditJournal.Entree entree : lot) {
+            List<AuditLog> ligne = entree.auditLog() != null ? List.of(entree.auditLog()) : List.of();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    inserer(ligne);
+                    auditJournal.enregistrerPointExpedition(entree.fin());
+                });
+                nombreEcrits.addAndGet(ligne.size());
+            } catch (RuntimeException e) {
+                if (indisponible(e)) {
+                    throw e;
+                }
+                nombreEchecs.incrementAndGet();
+                log.error("Impossible d'écrire le journal d'audit {}: {}", entree.auditLog() != null ? entree.auditLog().getAction() : null, e.getMessage());
+                transactionTemplate.executeWithoutResult(status -> auditJournal.enregistrerPointExpedition(entree.fin()));
+            }
+            pointExpedie = entree.fin();
+        }
+    }
+
+    private static boolean indisponible(Exception e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException;
+    }
+
+    private void boucleEcriture() {
+        while (actif) {
+            List<AuditLog> lot = extraireLot();
+            if (lot.isEmpty()) {
+                LockSupport.parkNanos(this, intervalleNanos);
+                continue;
+            }
+            ecrire(lot);
+        }
+        vider();
+    }
+
+    private List<AuditLog> extraireLot() {
+        List<AuditLog> lot = new ArrayList<>(Math.min(tailleLot, Math.max(tailleFile.get(), 1)));
+        AuditLog auditLog;
+        while (lot.size() < tailleLot && (auditLog = file.poll()) != null) {
+            tailleFile.decrementAndGet();
+            lot.add(auditLog);
+        }
+        return lot;
+    }
+
+    private void ecrire(List<AuditLog> lot) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> inserer(lot));
+        } catch (Exception e) {
+            if (lot.size() == 1) {
+                nombreEchecs.incrementAndGet();
+                log.error("Impossible d'écrire le journal d'audit {}: {}", lot.get(0).getAction(), e.getMessage());
+                return;
+            }
+            // Une ligne invalide ne doit pas faire perdre tout le lot : nouvel essai ligne par ligne
+            log.warn("Échec de l'insertion groupée de {} journaux d'audit, reprise ligne par ligne: {}",
+                    lot.size(), e.getMessage());
+            for (AuditLog auditLog : lot) {
+                ecrire(List.of(auditLog));
+            }
+            return;
+        }
+        nombreEcrits.addAndGet(lot.size());
+        lot.forEach(fluxAuditService::publier);
+    }
+
+    private void inserer(List<AuditLog> lot) {
+        if (lot.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(SQL_INSERTION, lot, lot.size(), this::lier);
+        auditRollupService.enregistrer(lot);
+        liveMetricsRegistry.evenementsEcrits(lot);
+    }
+
+    private void lier(PreparedStatement ps, AuditLog auditLog) throws SQLException {
+        ps.setObject(1, auditLog.getUtilisateurId(), Types.BIGINT);
+        ps.setString(2, auditLog.getUsername());
+        ps.setString(3, auditLog.getAction());
+        ps.setString(4, auditLog.getRessource());
+        ps.setObject(5, auditLog.getRessourceId(), Types.BIGINT);
+        ps.setString(6, auditLog.getDetails());
+        ps.setString(7, auditLog.getIpAddress());
+        ps.setString(8, auditLog.getUserAgent());
+        ps.setString(9, auditLog.getSessionId());
+        ps.setTimestamp(10, Timestamp.valueOf(auditLog.getDateAction()));
+        ps.setString(11, auditLog.getNiveau().name());
+        ps.setString(12, auditLog.getCategorie().name());
+        ps.setObject(13, auditLog.getSucces(), Types.BOOLEAN);
+        ps.setString(14, auditLog.getMessageErreur());
+        ps.setInt(15, auditLog.getNombreOccurrences() != null ? auditLog.getNombreOccurrences() : 1);
+        ps.setTimestamp(16, versTimestamp(auditLog.getDatePremiereOccurrence()));
+        ps.setTimestamp(17, versTimestamp(auditLog.getDateDerniereOccurrence()));
+        ps.setString(18, auditLog.getLocalisation());
+    }
+
+    private static Timestamp versTimestamp(LocalDateTime date) {
+        return date != null ? Timestamp.valueOf(date) : null;
+    }
+}
@@ -0,0 +1,193 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.repository.AutorisationConnexionProjection;
+import com.sh.erpcos.univers.securite.repository.UtilisateurRepository;
+import com.sh.erpcos.univers.securite.util.BitSetAuthorities;
+import com.sh.erpcos.univers.securite.util.BitSetUserDetails;
+import com.sh.erpcos.univers.securite.util.UserDetailsAdapter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Cache borné des autorisations compilées de chaque utilisateur.
+ *
+ * Le snapshot (mot de passe, statuts du compte, autorités) est compilé une seule fois
+ * à partir de la base puis servi depuis la mémoire pour les connexions et les
+ * connexions automatiques (remember-me). Il est invalidé par RoleService,
+ * PermissionService et UtilisateurService dès qu'une ligne sous-jacente change.
+ */
+@Service
+@Slf4j
+public class AuthorizationSnapshotService {
+
+    private final UtilisateurRepository utilisateurRepository;
+    private final RoleHierarchyService roleHierarchyService;
+    private final long dureeVieMillis;
+
+    // LRU en ordre d'accès : l'entrée la moins récemment utilisée est évincée au-delà de tailleMax
+    private final Map<String, SnapshotAutorisations> cache;
+
+    // Incrémenté à chaque invalidation : un chargement commencé avant n'est pas mis en cache
+    private final AtomicLong generation = new AtomicLong();
+
+    public AuthorizationSnapshotService(UtilisateurRepository utilisateurRepository,
+                                        RoleHierarchyService roleHierarchyService,
+                                        @Value("${erp.securite.autorisations.cache.taille-max:1000}") int tailleMax,
+                                        @Value("${erp.securite.autorisations.cache.duree-vie-minutes:30}") long dureeVieMinutes) {
+        this.utilisateurRepository = utilisateurRepository;
+        this.roleHierarchyService = roleHierarchyService;
+        this.dureeVieMillis = dureeVieMinutes * 60_000L;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SnapshotAutorisations> eldest) {
+                return size() > tailleMax;
+            }
+        });
+    }
+
+    public UserDetails chargerUserDetails(String username) {
+        SnapshotAutorisations snapshot = cache.get(username);
+        if (snapshot != null && !snapshot.estExpire(dureeVieMillis)) {
+            log.debug("Autorisations servies depuis le cache pour: {}", username);
+            return snapshot.toUserDetails();
+        }
+
+        long generationAvantChargement = generation.get();
+        snapshot = compiler(username);
+
+        synchronized (cache) {
+            if (generation.get() == generationAvantChargement) {
+                cache.put(username, snapshot);
+            }
+        }
+        return snapshot.toUserDetails();
+    }
+
+    // ====== Invalidation ======
+
+    public void invaliderUtilisateur(String username) {
+        invalider(snapshot -> snapshot.username().equals(username), false);
+    }
+
+    public void invaliderRole(Long roleId) {
+        invalider(snapshot -> snapshot.roleIds().contains(roleId), true);
+    }
+
+    public void invaliderPermission(Integer permissionId) {
+        invalider(snapshot -> snapshot.permissionIds().contains(permissionId), true);
+    }
+
+    public void invaliderTout() {
+        invalider(snapshot -> true, true);
+    }
+
+    public int getTailleCache() {
+        return cache.size();
+    }
+
+    /**
+     * Invalide immédiatement puis une seconde fois après le commit de la transaction en cours,
+     * pour qu'un chargement concurrent ne remette pas en cache l'état d'avant la modification.
+     * Une modification de rôle ou de permission rend aussi obsolète la fermeture hiérarchique.
+     */
+    private void invalider(Predicate<SnapshotAutorisations> critere, boolean hierarchique) {
+        Runnable invalidation = () -> {
+            generation.incrementAndGet();
+            if (hierarchique) {
+                roleHierarchyService.invalider();
+            }
+            synchronized (cache) {
+                cache.values().removeIf(critere);
+            }
+        };
+
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    private SnapshotAutorisations compiler(String username) {
+        // Lignes plates (utilisateur, rôle) : ni entité gérée ni produit rôles x permissions
+        List<AutorisationConnexionProjection> lignes = utilisateurRepository.findAutorisationsConnexion(username);
+        if (lignes.isEmpty()) {
+            log.warn("Utilisateur non trouvé: {}", username);
+            throw new UsernameNotFoundException("Utilisateur non trouvé: " + username);
+        }
+
+        // Chaque rôle apporte ses permissions et celles de ses ancêtres, déjà calculées par la fermeture.
+        // roleIds contient aussi les ancêtres, pour qu'une modification d'un rôle parent invalide ce snapshot.
+        BitSetAuthorities.Builder builder = BitSetAuthorities.builder();
+        Set<Long> roleIds = new HashSet<>();
+        Set<Integer> permissionIds = new HashSet<>();
+        for (AutorisationConnexionProjection ligne : lignes) {
+            if (ligne.getRoleId() == null) {
+                continue;
+            }
+            builder.role(UserDetailsAdapter.nomAutoriteRole(ligne.getRoleNom()));
+            builder.permissions(roleHierarchyService.getBitsEffectifs(ligne.getRoleId()));
+            roleIds.addAll(roleHierarchyService.getRoleEtAncetres(ligne.getRoleId()));
+            permissionIds.addAll(roleHierarchyService.getPermissionIdsEffectives(ligne.getRoleId()));
+        }
+
+        BitSetAuthorities authorities = builder.build();
+        log.debug("Autorisations compilées pour {}: {} autorités", username, authorities.size());
+
+        AutorisationConnexionProjection utilisateur = lignes.get(0);
+        return new SnapshotAutorisations(
+                utilisateur.getUsername(),
+                utilisateur.getPassword(),
+                utilisateur.getCompteActif(),
+                utilisateur.getCompteNonExpire(),
+                utilisateur.getCredentialsNonExpire(),
+                utilisateur.getCompteNonVerrouille(),
+                authorities,
+                Set.copyOf(roleIds),
+                Set.copyOf(permissionIds),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Données immuables d'un utilisateur. Un nouveau UserDetails est construit à chaque lecture,
+     * car Spring Security efface le mot de passe du principal après l'authentification.
+     */
+    private record SnapshotAutorisations(String username,
+                                         String password,
+                                         boolean compteActif,
+                                         boolean compteNonExpire,
+                                         boolean credentialsNonExpire,
+                                         boolean compteNonVerrouille,
+                                         BitSetAuthorities authorities,
+                                         Set<Long> roleIds,
+                                         Set<Integer> permissionIds,
+                                         long compileA) {
+
+        boolean estExpire(long dureeVieMillis) {
+            return System.currentTimeMillis() - compileA > dureeVieMillis;
+        }
+
+        UserDetails toUserDetails() {
+            return new BitSetUserDetails(username, password, compteActif, compteNonExpire,
+                    credentialsNonExpire, compteNonVerrouille, authorities);
+        }
+    }
+}
@@ -37,6 +37,8 @@ public class BackupRestoreService {
     private final PasswordPolicyRepository passwordPolicyRepository;
     private final TwoFactorAuthRepository twoFactorAuthRepository;
     private final AuditService auditService;
+    private final AuthorizationSnapshotService authorizationSnapshotService;
+    private final AuditWriter auditWriter;
     
     private  ObjectMapper objectMapper;
     @PostConstruct
@@ -53,7 +55,9 @@ public class BackupRestoreService {
                                UserSessionRepository userSessionRepository,
                                PasswordPolicyRepository passwordPolicyRepository,
                                TwoFactorAuthRepository twoFactorAuthRepository,
-                               AuditService auditService) {
+                               AuditService auditService,
+                               AuthorizationSnapshotService authorizationSnapshotService,
+                               AuditWriter auditWriter) {
         this.utilisateurRepository = utilisateurRepository;
         this.roleRepository = roleRepository;
         this.permissionRepository = permissionRepository;
@@ -62,6 +66,8 @@ public class BackupRestoreService {
         this.passwordPolicyRepository = passwordPolicyRepository;
         this.twoFactorAuthRepository = twoFactorAuthRepository;
         this.auditService = auditService;
+        this.authorizationSnapshotService = authorizationSnapshotService;
+        this.auditWriter = auditWriter;
         
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
@@ -216,6 +222,9 @@ public class BackupRestoreService {
             }
         }
         
+        // Utilisateurs, rôles et permissions ont pu changer en masse
+        authorizationSnapshotService.invaliderTout();
+        
         auditService.logSystemConfig("FULL_BACKUP_RESTORED", "BACKUP_RESTORE", 
                                     "Restauration complète depuis: " + backupFileName + 
                                     " (overwrite: " + overwriteExisting + ")");
@@ -256,6 +265,9 @@ public class BackupRestoreService {
             }
         }
         
+        // Utilisateurs, rôles et permissions ont pu changer en masse
+        authorizationSnapshotService.invaliderTout();
+        
         auditService.logSystemConfig("USER_ROLE_BACKUP_RESTORED", "BACKUP_RESTORE", 
                                     "Restauration utilisateurs/rôles depuis: " + backupFileName);
         
@@ -507,8 +519,9 @@ public class BackupRestoreService {
         
         for (AuditLog log : logs) {
             log.setId(null); // Nouveau ID
-            auditLogRepository.save(log);
         }
+        // Insertion groupée avec les agrégats horaires, dans la transaction de la restauration
+        auditWriter.importer(logs);
         
         log.debug("Restauration de {} logs d'audit", logs.size());
     }
@@ -0,0 +1,173 @@
+package com.sh.erpcos.univers.securite.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classification des en-têtes User-Agent : navigateur et version majeure, système d'exploitation
+ * et type d'appareil.
+ *
+ * Les règles sont des jetons essayés dans l'ordre, du plus spécifique au plus générique : Edge et
+ * Opera annoncent aussi "Chrome", Chrome annonce "Safari", iOS annonce "Mac OS X" et Android
+ * annonce "Linux". Les résultats sont mémorisés par en-tête brut dans un cache LRU borné : le parc
+ * n'envoie qu'un petit nombre d'en-têtes distincts.
+ */
+@Service
+public class ClassificationUserAgentService {
+
+    public record Classification(String navigateur, String versionNavigateur, String systemeExploitation,
+                                 String typeAppareil) {
+    }
+
+    /**
+     * Règle de navigateur : premier jeton présent ; la version suit le jeton de version.
+     */
+    private record RegleNavigateur(String navigateur, List<String> jetons, String jetonVersion) {
+
+        RegleNavigateur(String navigateur, String... jetons) {
+            this(navigateur, List.of(jetons), jetons[0]);
+        }
+    }
+
+    private record RegleSysteme(String systeme, List<String> jetons) {
+
+        RegleSysteme(String systeme, String... jetons) {
+            this(systeme, List.of(jetons));
+        }
+    }
+
+    public static final Classification INCONNUE = new Classification("Unknown", null, "Unknown", "Inconnu");
+
+    private static final List<RegleNavigateur> NAVIGATEURS = List.of(
+            new RegleNavigateur("Edge", "Edg/", "EdgA/", "EdgiOS/", "Edge/"),
+            new RegleNavigateur("Opera", "OPR/", "OPiOS/", "Opera/"),
+            new RegleNavigateur("Samsung Internet", "SamsungBrowser/"),
+            new RegleNavigateur("Yandex", "YaBrowser/"),
+            new RegleNavigateur("Vivaldi", "Vivaldi/"),
+            new RegleNavigateur("Firefox", "Firefox/", "FxiOS/"),
+            new RegleNavigateur("Chrome", "Chrome/", "CriOS/"),
+            new RegleNavigateur("Chromium", "Chromium/"),
+            new RegleNavigateur("Internet Explorer", List.of("MSIE ", "Trident/"), "rv:"),
+            // Safari en dernier : presque tous les navigateurs l'annoncent
+            new RegleNavigateur("Safari", List.of("Safari/"), "Version/"));
+
+    private static final List<RegleSysteme> SYSTEMES = List.of(
+            new RegleSysteme("Windows Phone", "Windows Phone"),
+            new RegleSysteme("Windows", "Windows"),
+            new RegleSysteme("iOS", "iPhone", "iPad", "iPod"),
+            new RegleSysteme("Android", "Android"),
+            new RegleSysteme("ChromeOS", "CrOS"),
+            new RegleSysteme("macOS", "Macintosh", "Mac OS X"),
+            new RegleSysteme("Linux", "Linux"));
+
+    private static final List<String> ROBOTS = List.of("bot", "crawler", "spider", "curl/", "wget/");
+
+    private final int maxEntrees;
+    private final Map<String, Classification> cache;
+    private final LongAdder succes = new LongAdder();
+    private final LongAdder echecs = new LongAdder();
+
+    public ClassificationUserAgentService(@Value("${erp.securite.sessions.user-agent.cache:1000}") int maxEntrees) {
+        this.maxEntrees = maxEntrees;
+        this.cache = new LinkedHashMap<>(Math.min(maxEntrees, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Classification> eldest) {
+                return size() > ClassificationUserAgentService.this.maxEntrees;
+            }
+        };
+    }
+
+    public Classification classer(String userAgent) {
+        if (userAgent == null || userAgent.isBlank()) {
+            return INCONNUE;
+        }
+        synchronized (cache) {
+            Classification classification = cache.get(userAgent);
+            if (classification != null) {
+                succes.increment();
+                return classification;
+            }
+        }
+        echecs.increment();
+        Classification classification = analyser(userAgent);
+        synchronized (cache) {
+            cache.put(userAgent, classification);
+        }
+        return classification;
+    }
+
+    public long getSuccesCache() {
+        return succes.sum();
+    }
+
+    public long getEchecsCache() {
+        return echecs.sum();
+    }
+
+    static Classification analyser(String userAgent) {
+        String navigateur = "Other";
+        String version = null;
+        for (RegleNavigateur regle : NAVIGATEURS) {
+            if (regle.jetons().stream().anyMatch(userAgent::contains)) {
+                navigateur = regle.navigateur();
+                version = versionMajeure(userAgent, regle);
+                break;
+            }
+        }
+
+        String systeme = "Other";
+        for (RegleSysteme regle : SYSTEMES) {
+            if (regle.jetons().stream().anyMatch(userAgent::contains)) {
+                systeme = regle.systeme();
+                break;
+            }
+        }
+
+        return new Classification(navigateur, version, systeme, typeAppareil(userAgent, systeme));
+    }
+
+    private static String typeAppareil(String userAgent, String systeme) {
+        String minuscules = userAgent.toLowerCase(Locale.ROOT);
+        if (ROBOTS.stream().anyMatch(minuscules::contains)) {
+            return "Robot";
+        }
+        if (userAgent.contains("iPad") || minuscules.contains("tablet")
+                || ("Android".equals(systeme) && !userAgent.contains("Mobile"))) {
+            return "Tablette";
+        }
+        if (userAgent.contains("Mobi") || userAgent.contains("iPhone") || userAgent.contains("iPod")
+                || "Windows Phone".equals(systeme)) {
+            return "Mobile";
+        }
+        return "Ordinateur";
+    }
+
+    /**
+     * Version majeure lue après le jeton de version de la règle, ou après le premier jeton présent.
+     */
+    private static String versionMajeure(String userAgent, RegleNavigateur regle) {
+        int position = userAgent.indexOf(regle.jetonVersion());
+        String jeton = regle.jetonVersion();
+        if (position < 0) {
+            for (String candidat : regle.jetons()) {
+                position = userAgent.indexOf(candidat);
+                if (position >= 0) {
+                    jeton = candidat;
+                    break;
+                }
+            }
+        }
+        int debut = position + jeton.length();
+        int fin = debut;
+        while (fin < userAgent.length() && Character.isDigit(userAgent.charAt(fin))) {
+            fin++;
+        }
+        return fin > debut ? userAgent.substring(debut, fin) : null;
+    }
+}
@@ -0,0 +1,240 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Détection en mémoire des attaques par force brute, alimentée par les gestionnaires de succès et
+ * d'échec d'authentification.
+ *
+ * Les échecs sont comptés par utilisateur et par adresse IP sur une fenêtre glissante découpée en
+ * tranches d'une minute ; chaque compteur a son propre verrou, sans verrou global. Dès qu'un seuil
+ * est franchi, un événement SECURITY_EVENT est journalisé (une fois par fenêtre et par clé), et la
+ * liste des clés au-dessus du seuil est disponible sans interroger la base. Le nombre de clés
+ * suivies est borné : au-delà, les moins récemment actives sont oubliées.
+ */
+@Service
+@Slf4j
+public class DetectionForceBruteService {
+
+    public enum TypeCle {
+        UTILISATEUR, IP
+    }
+
+    public record Suspect(TypeCle type, String cle, int echecs, LocalDateTime derniereTentative) {
+    }
+
+    private static final long DUREE_TRANCHE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final AuditService auditService;
+    private final int nombreTranches;
+    private final int seuilUtilisateur;
+    private final int seuilIp;
+    private final int maxCles;
+
+    private final Map<String, Fenetre> parUtilisateur = new ConcurrentHashMap<>();
+    private final Map<String, Fenetre> parIp = new ConcurrentHashMap<>();
+    private final AtomicBoolean purgeEnCours = new AtomicBoolean();
+
+    public DetectionForceBruteService(AuditService auditService,
+                                      @Value("${erp.securite.force-brute.fenetre-minutes:15}") int fenetreMinutes,
+                                      @Value("${erp.securite.force-brute.seuil-utilisateur:5}") int seuilUtilisateur,
+                                      @Value("${erp.securite.force-brute.seuil-ip:20}") int seuilIp,
+                                      @Value("${erp.securite.force-brute.max-cles:10000}") int maxCles) {
+        this.auditService = auditService;
+        this.nombreTranches = Math.max(fenetreMinutes, 1);
+        this.seuilUtilisateur = seuilUtilisateur;
+        this.seuilIp = seuilIp;
+        this.maxCles = maxCles;
+    }
+
+    /**
+     * Compte un échec d'authentification et journalise une alerte si un seuil est franchi.
+     */
+    public void enregistrerEchec(String username, String ipAddress) {
+        long tranche = trancheCourante();
+        if (username != null && !username.isBlank()) {
+            compter(parUtilisateur, username, seuilUtilisateur, tranche, "BRUTE_FORCE_UTILISATEUR",
+                    "pour le compte " + username, username, ipAddress);
+        }
+        if (ipAddress != null) {
+            compter(parIp, ipAddress, seuilIp, tranche, "BRUTE_FORCE_IP",
+                    "depuis l'adresse " + ipAddress, username, ipAddress);
+        }
+    }
+
+    /**
+     * Une connexion réussie remet à zéro le compteur de l'utilisateur ; si elle suit un nombre
+     * d'échecs au moins égal au seuil, elle est signalée (mot de passe possiblement deviné).
+     */
+    public void enregistrerSucces(String username, String ipAddress) {
+        if (username == null) {
+            return;
+        }
+        Fenetre fenetre = parUtilisateur.remove(username);
+        if (fenetre == null) {
+            return;
+        }
+        int echecs = fenetre.total(trancheCourante());
+        if (echecs >= seuilUtilisateur) {
+            auditService.logSecurityEvent(username, ipAddress, "CONNEXION_APRES_FORCE_BRUTE",
+                    "Connexion réussie après " + echecs + " échecs en " + nombreTranches + " minutes",
+                    AuditLog.NiveauAudit.CRITICAL);
+        }
+    }
+
+    /**
+     * Utilisateurs et adresses IP dont les échecs sur la fenêtre atteignent le seuil, les plus
+     * actifs d'abord.
+     */
+    public List<Suspect> getListeChaude() {
+        long tranche = trancheCourante();
+        List<Suspect> suspects = new ArrayList<>();
+        ajouterSuspects(suspects, TypeCle.UTILISATEUR, parUtilisateur, seuilUtilisateur, tranche);
+        ajouterSuspects(suspects, TypeCle.IP, parIp, seuilIp, tranche);
+        suspects.sort(Comparator.comparingInt(Suspect::echecs).reversed());
+        return suspects;
+    }
+
+    public int getNombreClesSuivies() {
+        return parUtilisateur.size() + parIp.size();
+    }
+
+    /**
+     * Oublie les clés sans échec sur la fenêtre.
+     */
+    @Scheduled(fixedRate = 60000)
+    public void purger() {
+        long tranche = trancheCourante();
+        parUtilisateur.values().removeIf(fenetre -> fenetre.expiree(tranche));
+        parIp.values().removeIf(fenetre -> fenetre.expiree(tranche));
+    }
+
+    private void ajouterSuspects(List<Suspect> suspects, TypeCle type, Map<String, Fenetre> fenetres,
+                                 int seuil, long tranche) {
+        fenetres.forEach((cle, fenetre) -> {
+            int echecs = fenetre.total(tranche);
+            if (echecs >= seuil) {
+                suspects.add(new Suspect(type, cle, echecs, fenetre.derniereTentative()));
+            }
+        });
+    }
+
+    private void compter(Map<String, Fenetre> fenetres, String cle, int seuil, long tranche, String action,
+                         String description, String username, String ipAddress) {
+        Fenetre fenetre = fenetre(fenetres, cle, tranche);
+        int echecs = fenetre.incrementer(tranche);
+        if (echecs >= seuil && fenetre.marquerAlerte(tranche)) {
+            auditService.logSecurityEvent(username, ipAddress, action,
+                    echecs + " échecs de connexion en " + nombreTranches + " minutes " + description,
+                    AuditLog.NiveauAudit.CRITICAL);
+            log.warn("Force brute suspectée {} ({} échecs)", description, echecs);
+        }
+    }
+
+    private Fenetre fenetre(Map<String, Fenetre> fenetres, String cle, long tranche) {
+        Fenetre fenetre = fenetres.get(cle);
+        if (fenetre != null) {
+            return fenetre;
+        }
+        if (fenetres.size() >= maxCles) {
+            libererPlace(fenetres, tranche);
+        }
+        return fenetres.computeIfAbsent(cle, c -> new Fenetre());
+    }
+
+    /**
+     * Table pleine : retire les clés expirées puis, si cela ne suffit pas, le dixième le moins
+     * récemment actif. Un seul thread à la fois s'en charge, les autres continuent sans attendre.
+     */
+    private void libererPlace(Map<String, Fenetre> fenetres, long tranche) {
+        if (!purgeEnCours.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            fenetres.values().removeIf(fenetre -> fenetre.expiree(tranche));
+            if (fenetres.size() < maxCles) {
+                return;
+            }
+            // Instantané des dates d'activité : elles changent pendant le tri
+            fenetres.entrySet().stream()
+                    .map(entree -> Map.entry(entree.getKey(), entree.getValue().derniereActivite))
+                    .sorted(Map.Entry.comparingByValue())
+                    .limit(Math.max(maxCles / 10, 1))
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(fenetres::remove);
+        } finally {
+            purgeEnCours.set(false);
+        }
+    }
+
+    private static long trancheCourante() {
+        return System.currentTimeMillis() / DUREE_TRANCHE_MS;
+    }
+
+    /**
+     * Compteurs d'une clé, un par tranche d'une minute, réutilisés de façon circulaire.
+     */
+    private final class Fenetre {
+
+        private final int[] compteurs = new int[nombreTranches];
+        private final long[] tranches = new long[nombreTranches];
+        private long derniereAlerte = Long.MIN_VALUE / 2;
+        private volatile long derniereActivite;
+
+        synchronized int incrementer(long tranche) {
+            int indice = (int) (tranche % nombreTranches);
+            if (tranches[indice] != tranche) {
+                tranches[indice] = tranche;
+                compteurs[indice] = 0;
+            }
+            compteurs[indice]++;
+            derniereActivite = System.currentTimeMillis();
+            return total(tranche);
+        }
+
+        synchronized int total(long tranche) {
+            int total = 0;
+            for (int i = 0; i < nombreTranches; i++) {
+                if (tranches[i] > tranche - nombreTranches) {
+                    total += compteurs[i];
+                }
+            }
+            return total;
+        }
+
+        /**
+         * @return true si aucune alerte n'a été levée pour cette clé sur la fenêtre en cours
+         */
+        synchronized boolean marquerAlerte(long tranche) {
+            if (tranche - derniereAlerte < nombreTranches) {
+                return false;
+            }
+            derniereAlerte = tranche;
+            return true;
+        }
+
+        boolean expiree(long tranche) {
+            return derniereActivite / DUREE_TRANCHE_MS <= tranche - nombreTranches;
+        }
+
+        LocalDateTime derniereTentative() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(derniereActivite), ZoneId.systemDefault());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Détection incrémentale des sessions concurrentes suspectes : un même utilisateur connecté depuis
+ * deux adresses IP différentes à moins de fenetre-minutes d'intervalle.
+ *
+ * Alimenté par SessionService.createSession : pour chaque utilisateur, un petit anneau des dernières
+ * connexions (adresse IP, date) est comparé à la nouvelle connexion au moment où elle est créée,
+ * sans parcourir user_sessions. Les paires détectées sont conservées dans un historique borné, lu
+ * directement par /sessions/suspicious.
+ */
+@Service
+@Slf4j
+public class DetectionSessionsConcurrentesService {
+
+    public record Alerte(String username, String ipPrecedente, String ipNouvelle,
+                         LocalDateTime datePrecedente, LocalDateTime dateNouvelle) {
+
+        // Forme des lignes de l'ancienne requête : username, ip, ip, date, date
+        Object[] enLigne() {
+            return new Object[]{username, ipPrecedente, ipNouvelle, datePrecedente, dateNouvelle};
+        }
+    }
+
+    private record Connexion(String ipAddress, LocalDateTime date) {
+    }
+
+    private final AuditService auditService;
+    private final long fenetreMinutes;
+    private final int tailleAnneau;
+    private final int maxAlertes;
+
+    private final Map<String, Deque<Connexion>> anneaux = new ConcurrentHashMap<>();
+    private final Deque<Alerte> alertes = new ArrayDeque<>();
+
+    public DetectionSessionsConcurrentesService(AuditService auditService,
+                                                @Value("${erp.securite.sessions.concurrentes.fenetre-minutes:30}") long fenetreMinutes,
+                                                @Value("${erp.securite.sessions.concurrentes.taille-anneau:8}") int tailleAnneau,
+                                                @Value("${erp.securite.sessions.concurrentes.max-alertes:1000}") int maxAlertes) {
+        this.auditService = auditService;
+        this.fenetreMinutes = fenetreMinutes;
+        this.tailleAnneau = tailleAnneau;
+        this.maxAlertes = maxAlertes;
+    }
+
+    /**
+     * Enregistre une nouvelle connexion et signale les connexions récentes du même utilisateur
+     * depuis une autre adresse IP.
+     */
+    public void enregistrer(String username, String ipAddress, LocalDateTime date) {
+        if (username == null || ipAddress == null || date == null) {
+            return;
+        }
+        List<Alerte> nouvelles = new ArrayList<>();
+        // Anneau modifié sous le verrou de sa clé (ConcurrentHashMap.compute), comme la purge
+        anneaux.compute(username, (u, anneau) -> {
+            if (anneau == null) {
+                anneau = new ArrayDeque<>(tailleAnneau);
+            }
+            for (Connexion connexion : anneau) {
+                if (!Objects.equals(connexion.ipAddress(), ipAddress)
+                        && Math.abs(Duration.between(connexion.date(), date).toMinutes()) < fenetreMinutes) {
+                    nouvelles.add(new Alerte(username, connexion.ipAddress(), ipAddress, connexion.date(), date));
+                }
+            }
+            if (anneau.size() >= tailleAnneau) {
+                anneau.pollFirst();
+            }
+            anneau.addLast(new Connexion(ipAddress, date));
+            return anneau;
+        });
+        if (nouvelles.isEmpty()) {
+            return;
+        }
+
+        synchronized (alertes) {
+            for (Alerte alerte : nouvelles) {
+                if (alertes.size() >= maxAlertes) {
+                    alertes.pollFirst();
+                }
+                alertes.addLast(alerte);
+            }
+        }
+        List<String> autresIp = nouvelles.stream().map(Alerte::ipPrecedente).distinct().toList();
+        auditService.logSecurityEvent(username, ipAddress, "SESSIONS_CONCURRENTES",
+                "Connexion depuis " + ipAddress + " moins de " + fenetreMinutes + " minutes après une connexion depuis "
+                        + String.join(", ", autresIp),
+                AuditLog.NiveauAudit.WARNING);
+        log.warn("Sessions concurrentes suspectes pour {} depuis {} et {}", username, ipAddress, autresIp);
+    }
+
+    /**
+     * Paires détectées depuis dateDebut dont l'écart est inférieur à intervalleMinutes (au plus la
+     * fenêtre de détection), les plus récentes d'abord. Lignes : username, ip précédente, ip nouvelle,
+     * date précédente, date nouvelle.
+     */
+    public List<Object[]> getAlertes(LocalDateTime dateDebut, long intervalleMinutes) {
+        List<Object[]> lignes = new ArrayList<>();
+        synchronized (alertes) {
+            alertes.descendingIterator().forEachRemaining(alerte -> {
+                if ((dateDebut == null || !alerte.dateNouvelle().isBefore(dateDebut))
+                        && Math.abs(Duration.between(alerte.datePrecedente(), alerte.dateNouvelle()).toMinutes()) < intervalleMinutes) {
+                    lignes.add(alerte.enLigne());
+                }
+            });
+        }
+        return lignes;
+    }
+
+    public int getNombreUtilisateursSuivis() {
+        return anneaux.size();
+    }
+
+    /**
+     * Oublie les utilisateurs dont la dernière connexion est sortie de la fenêtre.
+     */
+    @Scheduled(fixedRate = 60000)
+    public void purger() {
+        LocalDateTime limite = LocalDateTime.now().minusMinutes(fenetreMinutes);
+        for (String username : anneaux.keySet()) {
+            anneaux.computeIfPresent(username, (u, anneau) -> {
+                Connexion derniere = anneau.peekLast();
+                return derniere == null || derniere.date().isBefore(limite) ? null : anneau;
+            });
+        }
+    }
+}
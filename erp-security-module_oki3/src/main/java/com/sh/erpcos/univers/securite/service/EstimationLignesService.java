@@ -0,0 +1,55 @@
+package com.sh.erpcos.univers.securite.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Nombres de lignes approximatifs, pour afficher un total sans COUNT(*) sur de grandes tables.
+ *
+ * Sans filtre, l'estimation vient des statistiques de la table (pg_class.reltuples, additionnées
+ * sur les partitions) ; avec filtres, de l'estimation du planificateur (EXPLAIN).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EstimationLignesService {
+
+    private static final Pattern LIGNES_PLAN = Pattern.compile("\"Plan Rows\":\\s*(\\d+)");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public long estimerTable(String table) {
+        Long estimation = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint FROM pg_class c " +
+                "WHERE c.oid = to_regclass(?) " +
+                "OR c.oid IN (SELECT i.inhrelid FROM pg_inherits i WHERE i.inhparent = to_regclass(?))",
+                Long.class, table, table);
+        return estimation != null ? estimation : 0L;
+    }
+
+    /**
+     * @param table      table interrogée
+     * @param conditions conditions SQL combinées par AND (paramètres "?")
+     * @param parametres valeurs des paramètres, dans l'ordre des conditions
+     */
+    public long estimerRequete(String table, List<String> conditions, List<Object> parametres) {
+        if (conditions.isEmpty()) {
+            return estimerTable(table);
+        }
+        String plan = jdbcTemplate.queryForObject(
+                "EXPLAIN (FORMAT JSON) SELECT 1 FROM " + table + " WHERE " + String.join(" AND ", conditions),
+                String.class, parametres.toArray());
+        Matcher matcher = LIGNES_PLAN.matcher(plan != null ? plan : "");
+        if (!matcher.find()) {
+            log.warn("Estimation impossible pour la table {}", table);
+            return 0L;
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,267 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.UserSession;
+import com.sh.erpcos.univers.securite.repository.UserSessionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiration des sessions par roue temporelle hiérarchique, à la seconde près.
+ *
+ * Quatre niveaux de 64 emplacements : le niveau 0 compte des secondes, chaque niveau suivant des
+ * tranches 64 fois plus longues (64 s, ~68 min, ~73 h) ; au-delà de ~194 jours, une session reste
+ * au dernier emplacement du dernier niveau et y est replacée à chaque passage. Planifier, replanifier
+ * ou annuler une session est en O(1). À chaque seconde, l'emplacement courant du niveau 0 donne les
+ * sessions échues ; au début de chaque tranche, l'emplacement correspondant d'un niveau supérieur est
+ * redescendu dans les niveaux inférieurs.
+ *
+ * Les sessions échues pendant une seconde sont terminées ensemble, en un seul UPDATE et une seule
+ * ligne d'audit. SessionService.cleanupExpiredSessions reste en filet de sécurité, pour les sessions
+ * modifiées hors de cette instance.
+ */
+@Service
+@Slf4j
+public class ExpirationSessionService {
+
+    private static final int BITS_EMPLACEMENTS = 6;
+    private static final int EMPLACEMENTS = 1 << BITS_EMPLACEMENTS;
+    private static final int NIVEAUX = 4;
+
+    private static final class Entree {
+
+        private final String sessionId;
+        private long echeance;
+        private Set<Entree> emplacement;
+
+        Entree(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+    private final UserSessionRepository userSessionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditService auditService;
+    private final SuiviActiviteSessionService suiviActiviteSessionService;
+    private final LiveMetricsRegistry liveMetricsRegistry;
+    private final Clock horloge;
+
+    private final List<List<Set<Entree>>> niveaux = new ArrayList<>(NIVEAUX);
+    private final Map<String, Entree> entrees = new HashMap<>();
+    private final List<String> echues = new ArrayList<>();
+    // Dernière seconde traitée
+    private long courant;
+
+    private final ScheduledExecutorService minuterie;
+
+    @Autowired
+    public ExpirationSessionService(UserSessionRepository userSessionRepository,
+                                    TransactionTemplate transactionTemplate,
+                                    AuditService auditService,
+                                    SuiviActiviteSessionService suiviActiviteSessionService,
+                                    LiveMetricsRegistry liveMetricsRegistry) {
+        this(userSessionRepository, transactionTemplate, auditService, suiviActiviteSessionService,
+                liveMetricsRegistry, Clock.systemDefaultZone());
+    }
+
+    ExpirationSessionService(UserSessionRepository userSessionRepository,
+                             TransactionTemplate transactionTemplate,
+                             AuditService auditService,
+                             SuiviActiviteSessionService suiviActiviteSessionService,
+                             LiveMetricsRegistry liveMetricsRegistry,
+                             Clock horloge) {
+        this.userSessionRepository = userSessionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.auditService = auditService;
+        this.suiviActiviteSessionService = suiviActiviteSessionService;
+        this.liveMetricsRegistry = liveMetricsRegistry;
+        this.horloge = horloge;
+        this.courant = maintenant();
+        for (int niveau = 0; niveau < NIVEAUX; niveau++) {
+            List<Set<Entree>> emplacements = new ArrayList<>(EMPLACEMENTS);
+            for (int i = 0; i < EMPLACEMENTS; i++) {
+                emplacements.add(new HashSet<>());
+            }
+            niveaux.add(emplacements);
+        }
+        this.minuterie = Executors.newSingleThreadScheduledExecutor(tache -> {
+            Thread thread = new Thread(tache, "sessions-expiration");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    void demarrer() {
+        minuterie.scheduleAtFixedRate(this::avancer, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Planifie ou replanifie l'expiration d'une session.
+     */
+    public synchronized void planifier(String sessionId, LocalDateTime dateExpiration) {
+        if (sessionId == null || dateExpiration == null) {
+            return;
+        }
+        Entree entree = entrees.computeIfAbsent(sessionId, Entree::new);
+        retirer(entree);
+        // Arrondi à la seconde supérieure : échue plus tôt, la session ne serait pas encore expirée en base
+        Instant expiration = dateExpiration.atZone(horloge.getZone()).toInstant();
+        entree.echeance = expiration.getEpochSecond() + (expiration.getNano() > 0 ? 1 : 0);
+        placer(entree);
+    }
+
+    public synchronized void annuler(String sessionId) {
+        Entree entree = entrees.remove(sessionId);
+        if (entree != null) {
+            retirer(entree);
+        }
+    }
+
+    /**
+     * Reconstruit la roue à partir des sessions actives non expirées.
+     */
+    public void reconstruire() {
+        List<UserSession> sessions = userSessionRepository
+                .findBySessionActiveTrueAndDateExpirationAfterOrderByDateCreationDesc(LocalDateTime.now());
+        synchronized (this) {
+            niveaux.forEach(emplacements -> emplacements.forEach(Set::clear));
+            entrees.clear();
+            for (UserSession session : sessions) {
+                planifier(session.getSessionId(), session.getDateExpiration());
+            }
+        }
+        log.info("Roue d'expiration reconstruite: {} sessions actives", sessions.size());
+    }
+
+    public synchronized int getNombreSessions() {
+        return entrees.size();
+    }
+
+    @PreDestroy
+    void arreter() {
+        minuterie.shutdownNow();
+    }
+
+    private void avancer() {
+        List<String> lot = avancerJusqua(maintenant());
+        if (lot.isEmpty()) {
+            return;
+        }
+        try {
+            terminer(lot);
+        } catch (Exception e) {
+            // Les sessions non terminées le seront par SessionService.cleanupExpiredSessions
+            log.error("Erreur lors de l'expiration de {} sessions: {}", lot.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fait tourner la roue jusqu'à la seconde cible incluse.
+     *
+     * @return les sessions échues depuis le dernier appel
+     */
+    synchronized List<String> avancerJusqua(long cible) {
+        while (courant < cible) {
+            courant++;
+            traiterSeconde(courant);
+        }
+        List<String> lot = new ArrayList<>(echues);
+        echues.clear();
+        return lot;
+    }
+
+    private void traiterSeconde(long seconde) {
+        // Redescente des niveaux supérieurs au début de leurs tranches, du plus haut au plus bas
+        for (int niveau = NIVEAUX - 1; niveau >= 1; niveau--) {
+            int decalage = niveau * BITS_EMPLACEMENTS;
+            if ((seconde & ((1L << decalage) - 1)) == 0) {
+                Set<Entree> emplacement = niveaux.get(niveau).get((int) ((seconde >> decalage) & (EMPLACEMENTS - 1)));
+                List<Entree> aReplacer = new ArrayList<>(emplacement);
+                emplacement.clear();
+                for (Entree entree : aReplacer) {
+                    entree.emplacement = null;
+                    placer(entree);
+                }
+            }
+        }
+        Set<Entree> emplacement = niveaux.get(0).get((int) (seconde & (EMPLACEMENTS - 1)));
+        for (Entree entree : emplacement) {
+            entree.emplacement = null;
+            entrees.remove(entree.sessionId);
+            echues.add(entree.sessionId);
+        }
+        emplacement.clear();
+    }
+
+    /**
+     * Place l'entrée au niveau le plus bas dont la tranche d'échéance est à moins de 64 tranches de
+     * la seconde courante : l'emplacement n'est visité qu'au début de cette tranche.
+     */
+    private void placer(Entree entree) {
+        if (entree.echeance <= courant) {
+            entrees.remove(entree.sessionId);
+            echues.add(entree.sessionId);
+            return;
+        }
+        for (int niveau = 0; niveau < NIVEAUX; niveau++) {
+            int decalage = niveau * BITS_EMPLACEMENTS;
+            long tranche = entree.echeance >> decalage;
+            if (tranche - (courant >> decalage) < EMPLACEMENTS) {
+                ajouter(entree, niveau, tranche);
+                return;
+            }
+        }
+        // Au-delà de la portée de la roue : dernier emplacement du dernier niveau, replacé au passage
+        int decalage = (NIVEAUX - 1) * BITS_EMPLACEMENTS;
+        ajouter(entree, NIVEAUX - 1, (courant >> decalage) + EMPLACEMENTS - 1);
+    }
+
+    private void ajouter(Entree entree, int niveau, long tranche) {
+        Set<Entree> emplacement = niveaux.get(niveau).get((int) (tranche & (EMPLACEMENTS - 1)));
+        emplacement.add(entree);
+        entree.emplacement = emplacement;
+    }
+
+    private void retirer(Entree entree) {
+        if (entree.emplacement != null) {
+            entree.emplacement.remove(entree);
+            entree.emplacement = null;
+        }
+    }
+
+    private void terminer(List<String> sessionIds) {
+        LocalDateTime maintenant = LocalDateTime.now();
+        List<String> terminees = transactionTemplate.execute(status ->
+                userSessionRepository.expirerSessionsParId(sessionIds, maintenant));
+        if (terminees == null || terminees.isEmpty()) {
+            return;
+        }
+        terminees.forEach(suiviActiviteSessionService::oublier);
+        terminees.forEach(liveMetricsRegistry::sessionFermee);
+        log.info("{} sessions expirées terminées", terminees.size());
+        auditService.logSystemConfig("SESSIONS_EXPIRED", "SESSION_MANAGEMENT",
+                terminees.size() + " sessions expirées terminées: " + String.join(", ",
+                        terminees.subList(0, Math.min(terminees.size(), 50))) + (terminees.size() > 50 ? ", ..." : ""));
+    }
+
+    private long maintenant() {
+        return horloge.instant().getEpochSecond();
+    }
+}
@@ -0,0 +1,265 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Diffusion en direct des événements d'audit (Server-Sent Events, /audit/stream).
+ *
+ * AuditWriter publie chaque événement soumis ; la publication ne fait que numéroter l'événement,
+ * le conserver dans un historique borné et le déposer dans le tampon de chaque abonné dont les
+ * filtres correspondent. Les tampons sont bornés et perdent leurs événements les plus anciens :
+ * un navigateur lent ne ralentit jamais les écrivains. L'envoi aux navigateurs est fait par un
+ * petit groupe de threads dédiés. Un client qui se reconnecte avec Last-Event-ID reçoit les
+ * événements manqués encore présents dans l'historique.
+ */
+@Service
+@Slf4j
+public class FluxAuditService {
+
+    public record EvenementAudit(LocalDateTime dateAction, String username, String action, String ressource,
+                                 AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie, Boolean succes,
+                                 String ipAddress, Integer nombreOccurrences, String details) {
+
+        static EvenementAudit de(AuditLog auditLog) {
+            return new EvenementAudit(auditLog.getDateAction(), auditLog.getUsername(), auditLog.getAction(),
+                    auditLog.getRessource(), auditLog.getNiveau(), auditLog.getCategorie(), auditLog.getSucces(),
+                    auditLog.getIpAddress(), auditLog.getNombreOccurrences(), auditLog.getDetails());
+        }
+    }
+
+    private record Numerote(long sequence, EvenementAudit evenement) {
+    }
+
+    private static final long INTERVALLE_ENVOI_MS = 250;
+    private static final long INTERVALLE_PING_MS = TimeUnit.SECONDS.toMillis(15);
+
+    // Distingue les identifiants d'une exécution à l'autre : la numérotation repart de zéro
+    private final String epoque = Long.toString(System.currentTimeMillis(), 36);
+
+    private final int tailleHistorique;
+    private final int tailleTampon;
+    private final int maxAbonnes;
+    private final long dureeConnexionMs;
+
+    private final Deque<Numerote> historique = new ArrayDeque<>();
+    private final Set<Abonne> abonnes = ConcurrentHashMap.newKeySet();
+    private long sequence;
+
+    private final ScheduledExecutorService planificateur;
+    private final ExecutorService envois;
+
+    public FluxAuditService(@Value("${erp.securite.audit.flux.historique:1000}") int tailleHistorique,
+                            @Value("${erp.securite.audit.flux.tampon:256}") int tailleTampon,
+                            @Value("${erp.securite.audit.flux.max-abonnes:100}") int maxAbonnes,
+                            @Value("${erp.securite.audit.flux.threads-envoi:4}") int threadsEnvoi,
+                            @Value("${erp.securite.audit.flux.duree-connexion-minutes:30}") long dureeConnexionMinutes) {
+        this.tailleHistorique = tailleHistorique;
+        this.tailleTampon = tailleTampon;
+        this.maxAbonnes = maxAbonnes;
+        this.dureeConnexionMs = TimeUnit.MINUTES.toMillis(dureeConnexionMinutes);
+
+        AtomicInteger compteur = new AtomicInteger();
+        this.envois = Executors.newFixedThreadPool(threadsEnvoi, tache -> {
+            Thread thread = new Thread(tache, "audit-flux-envoi-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.planificateur = Executors.newSingleThreadScheduledExecutor(tache -> {
+            Thread thread = new Thread(tache, "audit-flux");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.planificateur.scheduleWithFixedDelay(this::planifierEnvois, INTERVALLE_ENVOI_MS, INTERVALLE_ENVOI_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publie un événement auprès des abonnés. Ne bloque jamais sur un abonné.
+     */
+    public void publier(AuditLog auditLog) {
+        if (abonnes.isEmpty() && tailleHistorique == 0) {
+            return;
+        }
+        EvenementAudit evenement = EvenementAudit.de(auditLog);
+        synchronized (historique) {
+            Numerote numerote = new Numerote(++sequence, evenement);
+            if (tailleHistorique > 0) {
+                if (historique.size() >= tailleHistorique) {
+                    historique.pollFirst();
+                }
+                historique.addLast(numerote);
+            }
+            for (Abonne abonne : abonnes) {
+                abonne.deposer(numerote);
+            }
+        }
+    }
+
+    /**
+     * Abonne un client au flux filtré. Avec dernierId (en-tête Last-Event-ID), les événements
+     * postérieurs encore dans l'historique sont renvoyés d'abord ; un identifiant d'une exécution
+     * précédente renvoie tout l'historique.
+     *
+     * @throws IllegalStateException si le nombre maximal d'abonnés est atteint
+     */
+    public SseEmitter abonner(AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie, String username,
+                              String dernierId) {
+        if (abonnes.size() >= maxAbonnes) {
+            throw new IllegalStateException("Nombre maximal d'abonnés au flux d'audit atteint");
+        }
+        SseEmitter emitter = new SseEmitter(dureeConnexionMs);
+        Abonne abonne = new Abonne(emitter, niveau, categorie, username);
+        emitter.onCompletion(() -> abonnes.remove(abonne));
+        emitter.onTimeout(() -> abonnes.remove(abonne));
+        emitter.onError(erreur -> abonnes.remove(abonne));
+
+        long depuis = sequenceDepuis(dernierId);
+        synchronized (historique) {
+            if (depuis >= 0) {
+                for (Numerote numerote : historique) {
+                    if (numerote.sequence() > depuis) {
+                        abonne.deposer(numerote);
+                    }
+                }
+            }
+            abonnes.add(abonne);
+        }
+        log.debug("Nouvel abonné au flux d'audit ({} abonnés)", abonnes.size());
+        return emitter;
+    }
+
+    public int getNombreAbonnes() {
+        return abonnes.size();
+    }
+
+    @PreDestroy
+    void arreter() {
+        planificateur.shutdownNow();
+        envois.shutdownNow();
+        abonnes.forEach(abonne -> abonne.emitter.complete());
+        abonnes.clear();
+    }
+
+    /**
+     * @return la séquence après laquelle reprendre, 0 pour tout l'historique, -1 sans reprise
+     */
+    private long sequenceDepuis(String dernierId) {
+        if (dernierId == null || dernierId.isBlank()) {
+            return -1;
+        }
+        int separateur = dernierId.indexOf('-');
+        if (separateur < 0 || !dernierId.substring(0, separateur).equals(epoque)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(dernierId.substring(separateur + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void planifierEnvois() {
+        long maintenant = System.currentTimeMillis();
+        for (Abonne abonne : abonnes) {
+            if (abonne.aEnvoyer(maintenant) && abonne.envoiEnCours.compareAndSet(false, true)) {
+                envois.execute(abonne::envoyer);
+            }
+        }
+    }
+
+    private final class Abonne {
+
+        private final SseEmitter emitter;
+        private final AuditLog.NiveauAudit niveau;
+        private final AuditLog.CategorieAudit categorie;
+        private final String username;
+
+        private final Deque<Numerote> tampon = new ArrayDeque<>();
+        private final AtomicBoolean envoiEnCours = new AtomicBoolean();
+        private volatile long dernierEnvoi = System.currentTimeMillis();
+        private long perdus;
+
+        Abonne(SseEmitter emitter, AuditLog.NiveauAudit niveau, AuditLog.CategorieAudit categorie, String username) {
+            this.emitter = emitter;
+            this.niveau = niveau;
+            this.categorie = categorie;
+            this.username = username;
+        }
+
+        void deposer(Numerote numerote) {
+            EvenementAudit evenement = numerote.evenement();
+            if ((niveau != null && niveau != evenement.niveau())
+                    || (categorie != null && categorie != evenement.categorie())
+                    || (username != null && !Objects.equals(username, evenement.username()))) {
+                return;
+            }
+            synchronized (tampon) {
+                if (tampon.size() >= tailleTampon) {
+                    tampon.pollFirst();
+                    perdus++;
+                }
+                tampon.addLast(numerote);
+            }
+        }
+
+        boolean aEnvoyer(long maintenant) {
+            synchronized (tampon) {
+                return !tampon.isEmpty() || maintenant - dernierEnvoi >= INTERVALLE_PING_MS;
+            }
+        }
+
+        void envoyer() {
+            try {
+                List<Numerote> lot;
+                long perdusDepuis;
+                synchronized (tampon) {
+                    lot = new ArrayList<>(tampon);
+                    tampon.clear();
+                    perdusDepuis = perdus;
+                    perdus = 0;
+                }
+                if (perdusDepuis > 0) {
+                    emitter.send(SseEmitter.event().name("perdus").data(perdusDepuis));
+                }
+                for (Numerote numerote : lot) {
+                    emitter.send(SseEmitter.event()
+                            .id(epoque + "-" + numerote.sequence())
+                            .name("audit")
+                            .data(numerote.evenement(), MediaType.APPLICATION_JSON));
+                }
+                if (lot.isEmpty() && perdusDepuis == 0) {
+                    emitter.send(SseEmitter.event().comment("ping"));
+                }
+                dernierEnvoi = System.currentTimeMillis();
+            } catch (IOException | IllegalStateException e) {
+                // Client déconnecté
+                abonnes.remove(this);
+                emitter.completeWithError(e);
+            } finally {
+                envoiEnCours.set(false);
+            }
+        }
+    }
+}
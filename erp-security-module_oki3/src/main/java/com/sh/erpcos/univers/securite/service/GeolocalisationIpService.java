@@ -0,0 +1,437 @@
+package com.sh.erpcos.univers.securite.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Géolocalisation hors ligne des adresses IP (IPv4 et IPv6) à partir d'un fichier CSV local de
+ * plages d'adresses.
+ *
+ * Format d'une ligne : debut,fin,pays,region,ville,latitude,longitude ; debut et fin sont des
+ * adresses littérales, les lignes vides ou commençant par # sont ignorées. Les plages sont triées
+ * dans des tableaux de long (deux long par adresse IPv6) et la recherche est dichotomique ;
+ * l'adresse recherchée est analysée caractère par caractère, sans allocation, et la localisation
+ * rendue est la chaîne partagée de la table. Les bornes des plages passent par le même analyseur,
+ * jamais par une résolution DNS.
+ *
+ * La localisation des deux connexions successives d'un utilisateur permet de repérer un
+ * déplacement impossible : une vitesse apparente supérieure à vitesse-max-kmh.
+ */
+@Service
+@Slf4j
+public class GeolocalisationIpService {
+
+    /**
+     * Table immuable, remplacée en bloc au rechargement.
+     */
+    private record Table(long[] debuts4, long[] fins4, int[] lieux4,
+                         long[] debutsHaut6, long[] debutsBas6, long[] finsHaut6, long[] finsBas6, int[] lieux6,
+                         String[] localisations, float[] latitudes, float[] longitudes) {
+
+        static final Table VIDE = new Table(new long[0], new long[0], new int[0], new long[0], new long[0],
+                new long[0], new long[0], new int[0], new String[0], new float[0], new float[0]);
+    }
+
+    private record Plage(long debutHaut, long debutBas, long finHaut, long finBas, int lieu) {
+    }
+
+    private static final double RAYON_TERRE_KM = 6371.0;
+    // En deçà, l'écart relève de l'imprécision de la base
+    private static final double DISTANCE_MIN_KM = 100.0;
+    // Tampon par thread des deux moitiés d'une adresse IPv6 : la recherche n'alloue rien
+    private static final ThreadLocal<long[]> TAMPON6 = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final Path fichier;
+    private final double vitesseMaxKmh;
+
+    private volatile Table table = Table.VIDE;
+
+    public GeolocalisationIpService(@Value("${erp.securite.geolocalisation.fichier:data/geoip.csv}") String fichier,
+                                    @Value("${erp.securite.geolocalisation.vitesse-max-kmh:900}") double vitesseMaxKmh) {
+        this.fichier = Path.of(fichier);
+        this.vitesseMaxKmh = vitesseMaxKmh;
+    }
+
+    /**
+     * Charge (ou recharge) le fichier de plages ; sans fichier, aucune adresse n'est localisée.
+     */
+    public void charger() throws IOException {
+        if (!Files.isReadable(fichier)) {
+            log.info("Pas de base de géolocalisation ({}): localisation des adresses IP désactivée", fichier);
+            return;
+        }
+        List<Plage> plages4 = new ArrayList<>();
+        List<Plage> plages6 = new ArrayList<>();
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> localisations = new ArrayList<>();
+        List<float[]> coordonnees = new ArrayList<>();
+        int ignorees = 0;
+
+        try (BufferedReader lecteur = Files.newBufferedReader(fichier, StandardCharsets.UTF_8)) {
+            String ligne;
+            while ((ligne = lecteur.readLine()) != null) {
+                if (ligne.isBlank() || ligne.startsWith("#")) {
+                    continue;
+                }
+                String[] champs = ligne.split(",", -1);
+                long[] debut;
+                long[] fin;
+                try {
+                    if (champs.length < 7) {
+                        throw new IllegalArgumentException();
+                    }
+                    debut = adresse(champs[0].trim());
+                    fin = adresse(champs[1].trim());
+                    if (debut.length != fin.length) {
+                        throw new IllegalArgumentException();
+                    }
+                    float latitude = Float.parseFloat(champs[5].trim());
+                    float longitude = Float.parseFloat(champs[6].trim());
+                    String localisation = libelle(champs[4].trim(), champs[3].trim(), champs[2].trim());
+                    Integer lieu = indices.get(localisation);
+                    if (lieu == null) {
+                        lieu = localisations.size();
+                        indices.put(localisation, lieu);
+                        localisations.add(localisation);
+                        coordonnees.add(new float[]{latitude, longitude});
+                    }
+                    Plage plage = new Plage(haut(debut), bas(debut), haut(fin), bas(fin), lieu);
+                    (debut.length == 1 ? plages4 : plages6).add(plage);
+                } catch (IllegalArgumentException e) {
+                    // En-tête ou ligne invalide
+                    ignorees++;
+                }
+            }
+        }
+
+        Comparator<Plage> ordre = (a, b) -> {
+            int comparaison = Long.compareUnsigned(a.debutHaut(), b.debutHaut());
+            return comparaison != 0 ? comparaison : Long.compareUnsigned(a.debutBas(), b.debutBas());
+        };
+        plages4.sort(ordre);
+        plages6.sort(ordre);
+
+        float[] latitudes = new float[coordonnees.size()];
+        float[] longitudes = new float[coordonnees.size()];
+        for (int i = 0; i < coordonnees.size(); i++) {
+            latitudes[i] = coordonnees.get(i)[0];
+            longitudes[i] = coordonnees.get(i)[1];
+        }
+        table = new Table(
+                plages4.stream().mapToLong(Plage::debutBas).toArray(),
+                plages4.stream().mapToLong(Plage::finBas).toArray(),
+                plages4.stream().mapToInt(Plage::lieu).toArray(),
+                plages6.stream().mapToLong(Plage::debutHaut).toArray(),
+                plages6.stream().mapToLong(Plage::debutBas).toArray(),
+                plages6.stream().mapToLong(Plage::finHaut).toArray(),
+                plages6.stream().mapToLong(Plage::finBas).toArray(),
+                plages6.stream().mapToInt(Plage::lieu).toArray(),
+                localisations.toArray(String[]::new), latitudes, longitudes);
+        log.info("Base de géolocalisation chargée: {} plages IPv4, {} plages IPv6, {} lieux ({} lignes ignorées)",
+                plages4.size(), plages6.size(), localisations.size(), ignorees);
+    }
+
+    /**
+     * @return "ville, région, pays", ou null si l'adresse n'est dans aucune plage
+     */
+    public String localiser(String ipAddress) {
+        Table courante = table;
+        int lieu = lieu(courante, ipAddress);
+        return lieu >= 0 ? courante.localisations()[lieu] : null;
+    }
+
+    /**
+     * Vitesse apparente entre deux connexions, en km/h ; NaN si l'une des adresses n'est pas localisée.
+     */
+    public double vitesseKmh(String ipAvant, LocalDateTime dateAvant, String ipApres, LocalDateTime dateApres) {
+        Table courante = table;
+        int lieuAvant = lieu(courante, ipAvant);
+        int lieuApres = lieu(courante, ipApres);
+        if (lieuAvant < 0 || lieuApres < 0) {
+            return Double.NaN;
+        }
+        double distance = distanceKm(courante.latitudes()[lieuAvant], courante.longitudes()[lieuAvant],
+                courante.latitudes()[lieuApres], courante.longitudes()[lieuApres]);
+        if (distance < DISTANCE_MIN_KM) {
+            return 0;
+        }
+        // Au moins une minute : deux connexions simultanées ne donnent pas une vitesse infinie
+        double heures = Math.max(Math.abs(Duration.between(dateAvant, dateApres).toSeconds()), 60) / 3600.0;
+        return distance / heures;
+    }
+
+    public boolean deplacementImpossible(String ipAvant, LocalDateTime dateAvant, String ipApres, LocalDateTime dateApres) {
+        return vitesseKmh(ipAvant, dateAvant, ipApres, dateApres) > vitesseMaxKmh;
+    }
+
+    public boolean isChargee() {
+        return table != Table.VIDE;
+    }
+
+    private static int lieu(Table table, String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return -1;
+        }
+        if (ip.indexOf(':') < 0) {
+            return lieu4(table, ipv4(ip, 0, ip.length()));
+        }
+        return lieu6(table, ip);
+    }
+
+    private static int lieu4(Table table, long ip) {
+        if (ip < 0) {
+            return -1;
+        }
+        long[] debuts = table.debuts4();
+        int bas = 0;
+        int haut = debuts.length - 1;
+        int trouve = -1;
+        while (bas <= haut) {
+            int milieu = (bas + haut) >>> 1;
+            if (debuts[milieu] <= ip) {
+                trouve = milieu;
+                bas = milieu + 1;
+            } else {
+                haut = milieu - 1;
+            }
+        }
+        return trouve >= 0 && ip <= table.fins4()[trouve] ? table.lieux4()[trouve] : -1;
+    }
+
+    /**
+     * Recherche la plage d'une adresse IPv6. Une adresse IPv4 mappée (::ffff:a.b.c.d) est recherchée
+     * dans les plages IPv4.
+     */
+    private static int lieu6(Table table, String ip) {
+        long[] adresse = TAMPON6.get();
+        if (!ipv6(ip, adresse)) {
+            return -1;
+        }
+        long haut = adresse[0];
+        long bas = adresse[1];
+        if (estMappee(haut, bas)) {
+            return lieu4(table, bas & 0xFFFFFFFFL);
+        }
+
+        long[] debutsHaut = table.debutsHaut6();
+        long[] debutsBas = table.debutsBas6();
+        int min = 0;
+        int max = debutsHaut.length - 1;
+        int trouve = -1;
+        while (min <= max) {
+            int milieu = (min + max) >>> 1;
+            if (comparer(debutsHaut[milieu], debutsBas[milieu], haut, bas) <= 0) {
+                trouve = milieu;
+                min = milieu + 1;
+            } else {
+                max = milieu - 1;
+            }
+        }
+        return trouve >= 0 && comparer(haut, bas, table.finsHaut6()[trouve], table.finsBas6()[trouve]) <= 0
+                ? table.lieux6()[trouve] : -1;
+    }
+
+    /**
+     * Analyse l'adresse IPv6 (zone %... ignorée) en deux long, 64 bits hauts puis bas, rangés dans
+     * adresse.
+     *
+     * @return false si l'adresse est invalide
+     */
+    private static boolean ipv6(String ip, long[] adresse) {
+        int longueur = ip.indexOf('%');
+        if (longueur < 0) {
+            longueur = ip.length();
+        } else if (longueur == ip.length() - 1) {
+            return false;
+        }
+        // Groupes avant "::" (gauche) et après (droite), accumulés sur 128 bits
+        long gaucheHaut = 0;
+        long gaucheBas = 0;
+        int gauche = 0;
+        long droiteHaut = 0;
+        long droiteBas = 0;
+        int droite = 0;
+        boolean compresse = false;
+        int i = 0;
+        if (ip.startsWith("::")) {
+            compresse = true;
+            i = 2;
+        }
+        while (i < longueur) {
+            int debut = i;
+            long groupe = 0;
+            while (i < longueur && i - debut < 5 && Character.digit(ip.charAt(i), 16) >= 0) {
+                groupe = (groupe << 4) | Character.digit(ip.charAt(i), 16);
+                i++;
+            }
+            long valeur;
+            int groupes;
+            if (i < longueur && ip.charAt(i) == '.') {
+                // IPv4 en fin d'adresse : deux groupes
+                valeur = ipv4(ip, debut, longueur);
+                groupes = 2;
+                i = longueur;
+            } else {
+                valeur = groupe;
+                groupes = 1;
+                if (i == debut || i - debut > 4) {
+                    return false;
+                }
+            }
+            if (valeur < 0) {
+                return false;
+            }
+            int decalage = 16 * groupes;
+            if (compresse) {
+                droiteHaut = (droiteHaut << decalage) | (droiteBas >>> (64 - decalage));
+                droiteBas = (droiteBas << decalage) | valeur;
+                droite += groupes;
+            } else {
+                gaucheHaut = (gaucheHaut << decalage) | (gaucheBas >>> (64 - decalage));
+                gaucheBas = (gaucheBas << decalage) | valeur;
+                gauche += groupes;
+            }
+            if (i < longueur) {
+                if (ip.charAt(i) != ':') {
+                    return false;
+                }
+                i++;
+                if (i < longueur && ip.charAt(i) == ':') {
+                    if (compresse) {
+                        return false;
+                    }
+                    compresse = true;
+                    i++;
+                } else if (i == longueur) {
+                    return false;
+                }
+            }
+        }
+        if (gauche + droite > 8 || (!compresse && gauche + droite != 8) || (compresse && gauche + droite == 8)) {
+            return false;
+        }
+
+        // Groupes de gauche décalés en tête de l'adresse, groupes de droite en fin
+        int decalage = 16 * (8 - gauche);
+        long haut;
+        long bas;
+        if (decalage >= 128) {
+            haut = 0;
+            bas = 0;
+        } else if (decalage >= 64) {
+            haut = gaucheBas << (decalage - 64);
+            bas = 0;
+        } else if (decalage > 0) {
+            haut = (gaucheHaut << decalage) | (gaucheBas >>> (64 - decalage));
+            bas = gaucheBas << decalage;
+        } else {
+            haut = gaucheHaut;
+            bas = gaucheBas;
+        }
+        adresse[0] = haut | droiteHaut;
+        adresse[1] = bas | droiteBas;
+        return true;
+    }
+
+    private static boolean estMappee(long haut, long bas) {
+        return haut == 0 && (bas >>> 32) == 0xFFFFL;
+    }
+
+    /**
+     * @return l'adresse IPv4 de ip[debut, fin) en entier non signé, ou -1 si elle est invalide
+     */
+    private static long ipv4(String ip, int debut, int fin) {
+        long adresse = 0;
+        int octets = 0;
+        int i = debut;
+        while (octets < 4) {
+            int valeur = 0;
+            int chiffres = 0;
+            while (i < fin && ip.charAt(i) >= '0' && ip.charAt(i) <= '9' && chiffres < 4) {
+                valeur = valeur * 10 + (ip.charAt(i) - '0');
+                chiffres++;
+                i++;
+            }
+            if (chiffres == 0 || chiffres > 3 || valeur > 255) {
+                return -1;
+            }
+            adresse = (adresse << 8) | valeur;
+            octets++;
+            if (octets < 4) {
+                if (i >= fin || ip.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i == fin ? adresse : -1;
+    }
+
+    private static int comparer(long hautA, long basA, long hautB, long basB) {
+        int comparaison = Long.compareUnsigned(hautA, hautB);
+        return comparaison != 0 ? comparaison : Long.compareUnsigned(basA, basB);
+    }
+
+    private static double distanceKm(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+        double dLatitude = Math.toRadians(latitudeB - latitudeA);
+        double dLongitude = Math.toRadians(longitudeB - longitudeA);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitudeA)) * Math.cos(Math.toRadians(latitudeB))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * RAYON_TERRE_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static String libelle(String ville, String region, String pays) {
+        StringBuilder libelle = new StringBuilder();
+        for (String partie : new String[]{ville, region, pays}) {
+            if (!partie.isEmpty()) {
+                if (libelle.length() > 0) {
+                    libelle.append(", ");
+                }
+                libelle.append(partie);
+            }
+        }
+        return libelle.toString();
+    }
+
+    /**
+     * Adresse d'une plage, analysée comme les adresses recherchées (jamais de résolution DNS) : un
+     * long pour une adresse IPv4 ou IPv4 mappée, deux (64 bits hauts puis bas) pour une adresse IPv6.
+     */
+    static long[] adresse(String litteral) {
+        if (litteral.indexOf(':') < 0) {
+            long ipv4 = ipv4(litteral, 0, litteral.length());
+            if (ipv4 < 0) {
+                throw new IllegalArgumentException("Adresse IP invalide: " + litteral);
+            }
+            return new long[]{ipv4};
+        }
+        long[] ipv6 = new long[2];
+        if (!ipv6(litteral, ipv6)) {
+            throw new IllegalArgumentException("Adresse IP invalide: " + litteral);
+        }
+        return estMappee(ipv6[0], ipv6[1]) ? new long[]{ipv6[1] & 0xFFFFFFFFL} : ipv6;
+    }
+
+    private static long haut(long[] adresse) {
+        return adresse.length == 1 ? 0 : adresse[0];
+    }
+
+    private static long bas(long[] adresse) {
+        return adresse[adresse.length - 1];
+    }
+}
@@ -0,0 +1,226 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs en direct des tableaux de bord (sessions actives, utilisateurs connectés, volumes de
+ * la semaine), lus sans requête.
+ *
+ * Les sessions actives sont suivies par identifiant avec, par utilisateur, le nombre de ses
+ * sessions : les deux totaux sont des tailles de tables. Les créations de sessions et les
+ * événements d'audit écrits sont comptés par jour dans des LongAdder. Le tout est tenu à jour par
+ * SessionService, ExpirationSessionService et AuditWriter après le commit de leur transaction, puis
+ * recalé périodiquement sur la base (sessions créées ou terminées par une autre instance).
+ */
+@Service
+@Slf4j
+public class LiveMetricsRegistry {
+
+    private static final int JOURS_SUIVIS = 7;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditRollupService auditRollupService;
+
+    private final Map<String, Long> sessionsActives = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> sessionsParUtilisateur = new ConcurrentHashMap<>();
+    private final Map<LocalDate, LongAdder> sessionsCreeesParJour = new ConcurrentHashMap<>();
+    private final Map<LocalDate, LongAdder> evenementsAuditParJour = new ConcurrentHashMap<>();
+    // Sessions fermées pendant un recalage : la lecture de la base a pu les voir encore actives
+    private volatile Set<String> fermeesPendantRecalage;
+
+    public LiveMetricsRegistry(JdbcTemplate jdbcTemplate, AuditRollupService auditRollupService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.auditRollupService = auditRollupService;
+    }
+
+    public void sessionOuverte(String sessionId, Long utilisateurId, LocalDateTime dateCreation) {
+        if (sessionId == null || utilisateurId == null) {
+            return;
+        }
+        apresCommit(() -> {
+            ajouterSession(sessionId, utilisateurId);
+            compter(sessionsCreeesParJour, dateCreation.toLocalDate(), 1);
+        });
+    }
+
+    public void sessionFermee(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        apresCommit(() -> {
+            Set<String> fermees = fermeesPendantRecalage;
+            if (fermees != null) {
+                fermees.add(sessionId);
+            }
+            retirerSession(sessionId);
+        });
+    }
+
+    /**
+     * Compte les événements d'un lot écrit en base ; un journal regroupé compte pour ses occurrences.
+     */
+    public void evenementsEcrits(List<AuditLog> lot) {
+        apresCommit(() -> {
+            for (AuditLog auditLog : lot) {
+                int occurrences = auditLog.getNombreOccurrences() != null ? auditLog.getNombreOccurrences() : 1;
+                compter(evenementsAuditParJour, auditLog.getDateAction().toLocalDate(), occurrences);
+            }
+        });
+    }
+
+    public long getSessionsActives() {
+        return sessionsActives.size();
+    }
+
+    public long getUtilisateursActifs() {
+        return sessionsParUtilisateur.size();
+    }
+
+    /**
+     * Sessions créées sur les 7 derniers jours calendaires, aujourd'hui compris.
+     */
+    public long getSessionsCreeesSemaine() {
+        return totalSemaine(sessionsCreeesParJour);
+    }
+
+    /**
+     * Événements d'audit sur les 7 derniers jours calendaires, aujourd'hui compris.
+     */
+    public long getEvenementsAuditSemaine() {
+        return totalSemaine(evenementsAuditParJour);
+    }
+
+    /**
+     * Recale les compteurs sur la base ; exécuté au démarrage puis périodiquement.
+     *
+     * Les tables vivantes ne sont jamais remplacées : seuls les écarts avec la base leur sont
+     * appliqués. Une session ouverte ou fermée, ou un compteur incrémenté pendant la lecture, n'est
+     * donc pas annulé par un état lu juste avant.
+     */
+    @Scheduled(fixedDelayString = "${erp.securite.metriques.recalage-ms:300000}")
+    public synchronized void recaler() {
+        Set<String> fermees = ConcurrentHashMap.newKeySet();
+        fermeesPendantRecalage = fermees;
+        try {
+            LocalDateTime maintenant = LocalDateTime.now();
+            LocalDate premierJour = maintenant.toLocalDate().minusDays(JOURS_SUIVIS - 1L);
+
+            // État vivant avant la lecture : ce qui change ensuite n'est pas comparé à la base
+            Set<String> sessionsAvant = Set.copyOf(sessionsActives.keySet());
+            Map<LocalDate, Long> creeesAvant = valeurs(sessionsCreeesParJour);
+            Map<LocalDate, Long> evenementsAvant = valeurs(evenementsAuditParJour);
+
+            Map<String, Long> sessions = new HashMap<>();
+            jdbcTemplate.query("SELECT session_id, utilisateur_id FROM user_sessions " +
+                    "WHERE session_active = true AND date_expiration > ?", rs -> {
+                sessions.put(rs.getString("session_id"), rs.getLong("utilisateur_id"));
+            }, Timestamp.valueOf(maintenant));
+
+            Map<LocalDate, Long> creees = new HashMap<>();
+            jdbcTemplate.query("SELECT CAST(date_creation AS date) AS jour, COUNT(*) AS nombre FROM user_sessions " +
+                    "WHERE date_creation >= ? GROUP BY CAST(date_creation AS date)", rs -> {
+                creees.put(rs.getDate("jour").toLocalDate(), rs.getLong("nombre"));
+            }, Date.valueOf(premierJour));
+
+            Map<LocalDate, Long> evenements = new HashMap<>();
+            for (LocalDate jour = premierJour; !jour.isAfter(maintenant.toLocalDate()); jour = jour.plusDays(1)) {
+                evenements.put(jour, auditRollupService.compter(jour.atStartOfDay(), jour.plusDays(1).atStartOfDay()));
+            }
+
+            sessions.forEach((sessionId, utilisateurId) -> {
+                if (!fermees.contains(sessionId)) {
+                    ajouterSession(sessionId, utilisateurId);
+                }
+            });
+            for (String sessionId : sessionsAvant) {
+                if (!sessions.containsKey(sessionId)) {
+                    retirerSession(sessionId);
+                }
+            }
+            appliquerEcarts(sessionsCreeesParJour, creeesAvant, creees, premierJour, maintenant.toLocalDate());
+            appliquerEcarts(evenementsAuditParJour, evenementsAvant, evenements, premierJour, maintenant.toLocalDate());
+            log.debug("Compteurs recalés: {} sessions actives, {} utilisateurs",
+                    sessionsActives.size(), sessionsParUtilisateur.size());
+        } catch (Exception e) {
+            log.error("Erreur lors du recalage des compteurs en direct: {}", e.getMessage());
+        } finally {
+            fermeesPendantRecalage = null;
+        }
+    }
+
+    /**
+     * Exécute la mise à jour après le commit de la transaction en cours, ou tout de suite hors
+     * transaction : une écriture annulée ne compte pas.
+     */
+    private static void apresCommit(Runnable miseAJour) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            miseAJour.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                miseAJour.run();
+            }
+        });
+    }
+
+    private void ajouterSession(String sessionId, Long utilisateurId) {
+        if (sessionsActives.putIfAbsent(sessionId, utilisateurId) == null) {
+            sessionsParUtilisateur.merge(utilisateurId, 1, Integer::sum);
+        }
+    }
+
+    private void retirerSession(String sessionId) {
+        Long utilisateurId = sessionsActives.remove(sessionId);
+        if (utilisateurId != null) {
+            // Retiré à zéro : la taille de la table reste le nombre d'utilisateurs connectés
+            sessionsParUtilisateur.computeIfPresent(utilisateurId, (id, nombre) -> nombre > 1 ? nombre - 1 : null);
+        }
+    }
+
+    private static Map<LocalDate, Long> valeurs(Map<LocalDate, LongAdder> parJour) {
+        Map<LocalDate, Long> valeurs = new HashMap<>();
+        parJour.forEach((jour, nombre) -> valeurs.put(jour, nombre.sum()));
+        return valeurs;
+    }
+
+    // Ajoute à chaque jour l'écart entre la base et la valeur vivante lue avant la requête
+    private static void appliquerEcarts(Map<LocalDate, LongAdder> parJour, Map<LocalDate, Long> avant,
+                                        Map<LocalDate, Long> base, LocalDate premierJour, LocalDate dernierJour) {
+        for (LocalDate jour = premierJour; !jour.isAfter(dernierJour); jour = jour.plusDays(1)) {
+            long ecart = base.getOrDefault(jour, 0L) - avant.getOrDefault(jour, 0L);
+            if (ecart != 0) {
+                compter(parJour, jour, ecart);
+            }
+        }
+    }
+
+    private static void compter(Map<LocalDate, LongAdder> parJour, LocalDate jour, long nombre) {
+        parJour.computeIfAbsent(jour, j -> new LongAdder()).add(nombre);
+    }
+
+    private static long totalSemaine(Map<LocalDate, LongAdder> parJour) {
+        LocalDate premierJour = LocalDate.now().minusDays(JOURS_SUIVIS - 1L);
+        // Les jours sortis de la fenêtre sont oubliés au passage
+        parJour.keySet().removeIf(jour -> jour.isBefore(premierJour));
+        return parJour.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+}
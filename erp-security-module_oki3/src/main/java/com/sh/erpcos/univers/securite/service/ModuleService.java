@@ -3,6 +3,7 @@ package com.sh.erpcos.univers.securite.service;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import com.sh.erpcos.univers.securite.config.DynamicUrlAuthorizationManager;
 import com.sh.erpcos.univers.securite.entity.Module;
 import com.sh.erpcos.univers.securite.entity.Permission;
 
@@ -20,6 +21,7 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class ModuleService {
     private final ModuleRepository moduleRepository;
+    private final DynamicUrlAuthorizationManager dynamicUrlAuthorizationManager;
     
     public List<Module> getAllModules() {
         return moduleRepository.findAll();
@@ -40,14 +42,17 @@ public class ModuleService {
     public Module getOrCreateModuleFromType(ModuleType moduleType) {
         return moduleRepository.findByCode(moduleType.name())
                 .orElseGet(() -> {
-                    Module module = moduleType.toEntity();
-                    return moduleRepository.save(module);
+                    Module module = moduleRepository.save(moduleType.toEntity());
+                    dynamicUrlAuthorizationManager.invalider();
+                    return module;
                 });
     }
     
     public Module createModule(Module module) {
         module.setModuleSysteme(false); // Les modules créés manuellement ne sont pas systèmes
-        return moduleRepository.save(module);
+        Module savedModule = moduleRepository.save(module);
+        dynamicUrlAuthorizationManager.invalider();
+        return savedModule;
     }
     
     public Module updateModule(int id, Module module) {
@@ -61,7 +66,9 @@ public class ModuleService {
         }
         
         module.setId(id);
-        return moduleRepository.save(module);
+        Module savedModule = moduleRepository.save(module);
+        dynamicUrlAuthorizationManager.invalider();
+        return savedModule;
     }
     
     // Méthode pour désactiver un module plutôt que le supprimer
@@ -75,6 +82,7 @@ public class ModuleService {
         
         module.setActif(false);
         moduleRepository.save(module);
+        dynamicUrlAuthorizationManager.invalider();
     }
     
     // Génération des permissions standard pour un module
@@ -0,0 +1,55 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.util.BitSetAuthorities;
+import com.sh.erpcos.univers.securite.util.PermissionBitIndex;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Évaluation groupée des droits d'un utilisateur, pour l'affichage des menus et tuiles.
+ *
+ * Les autorités sont lues une seule fois (bitset du principal), puis chaque nom est résolu
+ * en un test de bit au lieu d'une expression SpEL hasAuthority(...) par élément.
+ */
+@Service
+public class PermissionCheckService {
+
+    /**
+     * @return pour chaque nom (permission ou rôle), true si l'utilisateur le possède ;
+     *         l'ordre de la collection est conservé
+     */
+    public Map<String, Boolean> evaluate(Authentication user, Collection<String> permissions) {
+        return evaluate(autoritesDe(user), permissions);
+    }
+
+    public boolean possede(Authentication user, String permission) {
+        return possede(autoritesDe(user), permission);
+    }
+
+    public static Map<String, Boolean> evaluate(BitSetAuthorities authorities, Collection<String> permissions) {
+        Map<String, Boolean> resultat = new LinkedHashMap<>(permissions.size() * 2);
+        for (String nom : permissions) {
+            resultat.put(nom, possede(authorities, nom));
+        }
+        return resultat;
+    }
+
+    public static boolean possede(BitSetAuthorities authorities, String nom) {
+        if (nom == null) {
+            return false;
+        }
+        int indice = PermissionBitIndex.indiceDe(nom);
+        return indice >= 0 ? authorities.contientPermission(indice) : authorities.contientRole(nom);
+    }
+
+    public static BitSetAuthorities autoritesDe(Authentication user) {
+        if (user == null || !user.isAuthenticated()) {
+            return BitSetAuthorities.vide();
+        }
+        return BitSetAuthorities.depuis(user);
+    }
+}
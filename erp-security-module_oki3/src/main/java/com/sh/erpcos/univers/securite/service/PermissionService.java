@@ -1,5 +1,6 @@
 package com.sh.erpcos.univers.securite.service;
 
+import com.sh.erpcos.univers.securite.config.DynamicUrlAuthorizationManager;
 import com.sh.erpcos.univers.securite.entity.Module;
 import com.sh.erpcos.univers.securite.entity.Permission;
 import com.sh.erpcos.univers.securite.enums.ActionType;
@@ -7,6 +8,7 @@ import com.sh.erpcos.univers.securite.enums.ActionSpecifiqueType;
 import com.sh.erpcos.univers.securite.enums.ModuleType;
 import com.sh.erpcos.univers.securite.repository.ModuleRepository;
 import com.sh.erpcos.univers.securite.repository.PermissionRepository;
+import com.sh.erpcos.univers.securite.util.PermissionBitIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -28,6 +30,9 @@ public class PermissionService {
     
     private final PermissionRepository permissionRepository;
     private final ModuleRepository moduleRepository;
+    private final AuthorizationSnapshotService authorizationSnapshotService;
+    private final DynamicUrlAuthorizationManager dynamicUrlAuthorizationManager;
+    private final RechercheService rechercheService;
     
     // ====== Méthodes de requête existantes avec adaptations mineures ======
     
@@ -156,6 +161,8 @@ public class PermissionService {
         permission.setPermissionActif(true);
         
         Permission savedPermission = permissionRepository.save(permission);
+        PermissionBitIndex.enregistrer(savedPermission.getId(), savedPermission.getNom());
+        dynamicUrlAuthorizationManager.invalider();
         log.info("Permission créée avec succès: {}", savedPermission.getNom());
         
         return savedPermission;
@@ -208,6 +215,9 @@ public class PermissionService {
         permission.setNiveauPriorite(permissionDetails.getNiveauPriorite());
         
         Permission updatedPermission = permissionRepository.save(permission);
+        PermissionBitIndex.enregistrer(id, updatedPermission.getNom());
+        dynamicUrlAuthorizationManager.invalider();
+        authorizationSnapshotService.invaliderPermission(id);
         log.info("Permission mise à jour avec succès: {}", updatedPermission.getNom());
         
         return updatedPermission;
@@ -220,6 +230,9 @@ public class PermissionService {
                 .orElseThrow(() -> new RuntimeException("Permission non trouvée avec l'ID: " + id));
         
         permissionRepository.delete(permission);
+        PermissionBitIndex.retirer(id);
+        dynamicUrlAuthorizationManager.invalider();
+        authorizationSnapshotService.invaliderPermission(id);
         log.info("Permission supprimée avec succès: {}", permission.getNom());
     }
     
@@ -231,6 +244,8 @@ public class PermissionService {
         
         permission.setPermissionActif(true);
         permissionRepository.save(permission);
+        dynamicUrlAuthorizationManager.invalider();
+        authorizationSnapshotService.invaliderPermission(id);
         log.info("Permission activée avec succès: {}", permission.getNom());
     }
     
@@ -242,13 +257,18 @@ public class PermissionService {
         
         permission.setPermissionActif(false);
         permissionRepository.save(permission);
+        dynamicUrlAuthorizationManager.invalider();
+        authorizationSnapshotService.invaliderPermission(id);
         log.info("Permission désactivée avec succès: {}", permission.getNom());
     }
     
     // ====== Méthodes de recherche ======
     
     public List<Permission> rechercherPermissions(String recherche) {
-        return permissionRepository.rechercherPermissions(recherche);
+        return rechercheService.rechercherEntites(RechercheService.Cible.PERMISSION, recherche,
+                RechercheService.LIMITE_RESULTATS,
+                ids -> permissionRepository.findAllById(ids.stream().map(Long::intValue).toList()),
+                Permission::getId);
     }
     
     public List<Permission> getPermissionsAvecUrlPattern() {
@@ -372,6 +392,7 @@ public class PermissionService {
             }
         }
         
+        dynamicUrlAuthorizationManager.invalider();
         log.info("Permissions standard créées pour le module: {}", moduleType.name());
     }
     
@@ -441,4 +462,4 @@ public class PermissionService {
     public List<com.sh.erpcos.univers.securite.entity.Role> getRolesByPermission(String nomPermission) {
         return permissionRepository.findRolesByPermission(nomPermission);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
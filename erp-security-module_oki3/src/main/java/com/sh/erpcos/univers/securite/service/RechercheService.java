@@ -0,0 +1,180 @@
+package com.sh.erpcos.univers.securite.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Recherche plein texte unifiée sur les utilisateurs, rôles, permissions et journaux d'audit.
+ *
+ * Chaque cible expose un "document" texte (colonnes concaténées en minuscules) indexé par un index
+ * GIN pg_trgm sur la même expression : la recherche "document LIKE '%terme%'" utilise l'index au
+ * lieu de parcourir la table, et les résultats sont classés par word_similarity(terme, document).
+ * Si l'extension pg_trgm ne peut pas être installée, la recherche reste fonctionnelle sans index
+ * ni classement (ordre alphabétique).
+ */
+@Service
+@Slf4j
+public class RechercheService {
+
+    public enum Cible {
+        UTILISATEUR("utilisateurs", "username",
+                "lower(username || ' ' || nom || ' ' || prenom || ' ' || email)"),
+        ROLE("roles", "nom",
+                "lower(nom || ' ' || coalesce(description, ''))"),
+        PERMISSION("permissions", "nom",
+                "lower(nom || ' ' || coalesce(description, '') || ' ' || nom_module)"),
+        AUDIT("audit_logs", "action || coalesce(' ' || ressource, '')",
+                "lower(action)", "lower(ressource)");
+
+        private final String table;
+        private final String libelle;
+        private final List<String> documents;
+
+        Cible(String table, String libelle, String... documents) {
+            this.table = table;
+            this.libelle = libelle;
+            this.documents = List.of(documents);
+        }
+    }
+
+    public record ResultatRecherche(Cible cible, Long id, String libelle, double score) {
+    }
+
+    public static final int LIMITE_RESULTATS = 200;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int joursAudit;
+
+    private volatile boolean trigrammes;
+
+    public RechercheService(JdbcTemplate jdbcTemplate,
+                            @Value("${erp.securite.recherche.audit-jours:30}") int joursAudit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.joursAudit = joursAudit;
+    }
+
+    /**
+     * Installe pg_trgm et crée les index trigrammes de chaque cible.
+     */
+    public void preparer() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        } catch (Exception e) {
+            log.warn("Extension pg_trgm indisponible, recherche sans index ni classement: {}", e.getMessage());
+            trigrammes = false;
+            return;
+        }
+        for (Cible cible : Cible.values()) {
+            for (int i = 0; i < cible.documents.size(); i++) {
+                String index = "idx_" + cible.table + "_trgm" + (i > 0 ? "_" + i : "");
+                jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + index + " ON " + cible.table +
+                        " USING gin ((" + cible.documents.get(i) + ") gin_trgm_ops)");
+            }
+        }
+        trigrammes = true;
+        log.info("Index de recherche trigrammes prêts");
+    }
+
+    /**
+     * Recherche le terme dans les cibles demandées.
+     *
+     * @return au plus limite résultats, les plus pertinents d'abord
+     */
+    public List<ResultatRecherche> rechercher(String terme, Set<Cible> cibles, int limite) {
+        String normalise = normaliser(terme);
+        if (normalise.isEmpty()) {
+            return List.of();
+        }
+        List<ResultatRecherche> resultats = new ArrayList<>();
+        for (Cible cible : cibles) {
+            resultats.addAll(rechercher(cible, normalise, limite));
+        }
+        resultats.sort(Comparator.comparingDouble(ResultatRecherche::score).reversed()
+                .thenComparing(ResultatRecherche::libelle, Comparator.nullsLast(Comparator.naturalOrder())));
+        return resultats.size() > limite ? resultats.subList(0, limite) : resultats;
+    }
+
+    public List<ResultatRecherche> rechercher(String terme, int limite) {
+        return rechercher(terme, EnumSet.allOf(Cible.class), limite);
+    }
+
+    /**
+     * Charge les entités correspondant au terme, dans l'ordre de pertinence.
+     *
+     * @param chargement charge les entités à partir de leurs identifiants (findAllById)
+     * @param identifiant identifiant d'une entité chargée
+     */
+    public <T, ID> List<T> rechercherEntites(Cible cible, String terme, int limite,
+                                             Function<List<Long>, Collection<T>> chargement,
+                                             Function<T, ID> identifiant) {
+        List<ResultatRecherche> resultats = rechercher(terme, EnumSet.of(cible), limite);
+        if (resultats.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, T> parId = new HashMap<>();
+        for (T entite : chargement.apply(resultats.stream().map(ResultatRecherche::id).toList())) {
+            parId.put(((Number) identifiant.apply(entite)).longValue(), entite);
+        }
+        return resultats.stream().map(resultat -> parId.get(resultat.id())).filter(Objects::nonNull).toList();
+    }
+
+    private List<ResultatRecherche> rechercher(Cible cible, String terme, int limite) {
+        String motif = "%" + echapperLike(terme) + "%";
+        List<Object> parametres = new ArrayList<>();
+
+        List<String> correspondances = new ArrayList<>();
+        List<String> scores = new ArrayList<>();
+        for (String document : cible.documents) {
+            correspondances.add(document + " LIKE ?");
+            parametres.add(motif);
+        }
+        StringBuilder sql = new StringBuilder("SELECT id, ").append(cible.libelle).append(" AS libelle, ");
+        List<Object> parametresScore = new ArrayList<>();
+        if (trigrammes) {
+            for (String document : cible.documents) {
+                scores.add("word_similarity(?, coalesce(" + document + ", ''))");
+                parametresScore.add(terme);
+            }
+            sql.append(scores.size() == 1 ? scores.get(0) : "GREATEST(" + String.join(", ", scores) + ")");
+        } else {
+            sql.append("0");
+        }
+        sql.append(" AS score FROM ").append(cible.table)
+                .append(" WHERE (").append(String.join(" OR ", correspondances)).append(")");
+        if (cible == Cible.AUDIT) {
+            // Borne la recherche aux partitions récentes
+            sql.append(" AND date_action >= ?");
+            parametres.add(Timestamp.valueOf(LocalDateTime.now().minusDays(joursAudit)));
+        }
+        sql.append(" ORDER BY score DESC, libelle LIMIT ?");
+        parametres.add(limite);
+
+        List<Object> tous = new ArrayList<>(parametresScore);
+        tous.addAll(parametres);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new ResultatRecherche(cible, rs.getLong("id"),
+                rs.getString("libelle"), rs.getDouble("score")), tous.toArray());
+    }
+
+    private static String normaliser(String terme) {
+        return terme == null ? "" : terme.trim().toLowerCase();
+    }
+
+    private static String echapperLike(String terme) {
+        return terme.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
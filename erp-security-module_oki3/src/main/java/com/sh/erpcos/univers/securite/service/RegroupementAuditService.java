@@ -0,0 +1,216 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Regroupement des événements d'audit répétitifs avant leur écriture.
+ *
+ * La première occurrence d'un événement est transmise aussitôt à AuditWriter, donc au journal
+ * local : elle survit à un arrêt brutal. Les événements identiques (utilisateur, action, ressource,
+ * catégorie, succès) reçus ensuite pendant la fenêtre configurée pour leur catégorie sont seulement
+ * comptés ; à l'échéance de la fenêtre, qui démarre à la première occurrence, la ligne de cette
+ * première occurrence reçoit le nombre d'occurrences et les dates de première et dernière
+ * occurrence : un seul journal par fenêtre. Seul ce décompte reste en mémoire pendant la fenêtre.
+ *
+ * La ligne à compléter peut ne pas être encore écrite (file ou journal local en retard) : la mise à
+ * jour est retentée à chaque passage. Si elle reste introuvable (événement abandonné ou en échec),
+ * les répétitions sont écrites dans un journal à part pour ne pas perdre le décompte.
+ *
+ * Règles : erp.securite.audit.regroupement.fenetres, liste de CATEGORIE=secondes. Les événements
+ * SECURITY_EVENT et CRITICAL ne sont jamais regroupés, ni ceux d'une catégorie sans règle.
+ */
+@Service
+@Slf4j
+public class RegroupementAuditService {
+
+    private record Cle(String username, String action, String ressource, AuditLog.CategorieAudit categorie,
+                       boolean succes) {
+    }
+
+    /**
+     * Répétitions d'un événement déjà transmis ; modifié uniquement dans ConcurrentHashMap.compute,
+     * sous le verrou de sa clé, puis par le seul thread qui l'a retiré de la table.
+     */
+    private static final class Groupe {
+
+        private final long echeance;
+        private final AuditLog premiere;
+        // Première répétition : ne sert que si la ligne de la première occurrence reste introuvable
+        private AuditLog repetition;
+        private int nombre;
+        private LocalDateTime derniere;
+        private int tentatives;
+
+        Groupe(long echeance, AuditLog premiere) {
+            this.echeance = echeance;
+            this.premiere = premiere;
+        }
+
+        void ajouter(AuditLog auditLog) {
+            if (repetition == null) {
+                repetition = auditLog;
+            }
+            nombre++;
+            derniere = auditLog.getDateAction();
+        }
+
+        boolean echu(long maintenant) {
+            return maintenant - echeance >= 0;
+        }
+    }
+
+    // Passages planifiés (toutes les secondes) avant d'écrire les répétitions à part
+    private static final int TENTATIVES_MAX = 120;
+
+    private final AuditWriter auditWriter;
+    private final Map<AuditLog.CategorieAudit, Long> fenetresNanos = new EnumMap<>(AuditLog.CategorieAudit.class);
+    private final int maxGroupes;
+
+    private final Map<Cle, Groupe> groupes = new ConcurrentHashMap<>();
+    // Groupes échus dont la ligne de la première occurrence reste à compléter
+    private final Queue<Groupe> aCompleter = new ConcurrentLinkedQueue<>();
+
+    public RegroupementAuditService(AuditWriter auditWriter,
+                                    @Value("${erp.securite.audit.regroupement.fenetres:DATA_ACCESS=60}") List<String> fenetres,
+                                    @Value("${erp.securite.audit.regroupement.max-groupes:10000}") int maxGroupes) {
+        this.auditWriter = auditWriter;
+        this.maxGroupes = maxGroupes;
+        for (String regle : fenetres) {
+            String[] parties = regle.split("=");
+            if (parties.length != 2) {
+                throw new IllegalArgumentException("Règle de regroupement d'audit invalide: " + regle);
+            }
+            AuditLog.CategorieAudit categorie = AuditLog.CategorieAudit.valueOf(parties[0].trim());
+            long secondes = Long.parseLong(parties[1].trim());
+            if (categorie == AuditLog.CategorieAudit.SECURITY_EVENT) {
+                log.warn("Les événements SECURITY_EVENT ne sont jamais regroupés, règle ignorée");
+            } else if (secondes > 0) {
+                fenetresNanos.put(categorie, TimeUnit.SECONDS.toNanos(secondes));
+            }
+        }
+        log.info("Regroupement des événements d'audit: {}", fenetresNanos.isEmpty() ? "désactivé" : fenetresNanos.keySet());
+    }
+
+    /**
+     * Transmet l'événement à AuditWriter, ou le compte comme répétition du groupe identique en cours.
+     */
+    public void soumettre(AuditLog auditLog) {
+        Long fenetre = fenetresNanos.get(auditLog.getCategorie());
+        if (fenetre == null || auditLog.getNiveau() == AuditLog.NiveauAudit.CRITICAL) {
+            auditWriter.soumettre(auditLog);
+            return;
+        }
+        if (auditLog.getDateAction() == null) {
+            auditLog.setDateAction(LocalDateTime.now());
+        }
+        Cle cle = new Cle(auditLog.getUsername(), auditLog.getAction(), auditLog.getRessource(),
+                auditLog.getCategorie(), !Boolean.FALSE.equals(auditLog.getSucces()));
+        if (groupes.size() >= maxGroupes && !groupes.containsKey(cle)) {
+            // Mémoire bornée : au-delà, les événements sont écrits sans regroupement
+            auditWriter.soumettre(auditLog);
+            return;
+        }
+
+        long maintenant = System.nanoTime();
+        Groupe[] echu = new Groupe[1];
+        boolean[] premiere = new boolean[1];
+        groupes.compute(cle, (c, groupe) -> {
+            if (groupe == null || groupe.echu(maintenant)) {
+                echu[0] = groupe;
+                premiere[0] = true;
+                return new Groupe(maintenant + fenetre, auditLog);
+            }
+            groupe.ajouter(auditLog);
+            return groupe;
+        });
+        if (echu[0] != null && echu[0].nombre > 0) {
+            // Complété par le passage planifié, pas dans le thread de la requête
+            aCompleter.add(echu[0]);
+        }
+        if (premiere[0]) {
+            auditWriter.soumettre(auditLog);
+        }
+    }
+
+    public int getNombreGroupes() {
+        return groupes.size();
+    }
+
+    /**
+     * Complète la première occurrence des groupes dont la fenêtre est écoulée.
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void emettreEchus() {
+        long maintenant = System.nanoTime();
+        groupes.forEach((cle, groupe) -> {
+            if (groupe.echu(maintenant) && groupes.remove(cle, groupe) && groupe.nombre > 0) {
+                aCompleter.add(groupe);
+            }
+        });
+        completer(false);
+    }
+
+    /**
+     * À l'arrêt, écrit les premières occurrences en attente puis complète tous les groupes en cours,
+     * avant l'arrêt de AuditWriter.
+     */
+    @PreDestroy
+    public void vider() {
+        groupes.forEach((cle, groupe) -> {
+            if (groupes.remove(cle, groupe) && groupe.nombre > 0) {
+                aCompleter.add(groupe);
+            }
+        });
+        if (!aCompleter.isEmpty()) {
+            auditWriter.vider();
+            completer(true);
+        }
+    }
+
+    private void completer(boolean dernierPassage) {
+        for (int restants = aCompleter.size(); restants > 0; restants--) {
+            Groupe groupe = aCompleter.poll();
+            if (groupe == null) {
+                return;
+            }
+            try {
+                if (auditWriter.completerRegroupement(groupe.premiere, groupe.nombre, groupe.derniere)) {
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                log.debug("Regroupement d'audit {} non complété: {}", groupe.premiere.getAction(), e.getMessage());
+            }
+            if (!dernierPassage && ++groupe.tentatives < TENTATIVES_MAX) {
+                aCompleter.add(groupe);
+            } else {
+                emettreAPart(groupe);
+            }
+        }
+    }
+
+    private void emettreAPart(Groupe groupe) {
+        log.warn("Première occurrence de {} introuvable, {} répétitions écrites dans un journal à part",
+                groupe.premiere.getAction(), groupe.nombre);
+        AuditLog auditLog = groupe.repetition;
+        if (groupe.nombre > 1) {
+            auditLog.setNombreOccurrences(groupe.nombre);
+            auditLog.setDatePremiereOccurrence(auditLog.getDateAction());
+            auditLog.setDateDerniereOccurrence(groupe.derniere);
+        }
+        auditWriter.soumettre(auditLog);
+    }
+}
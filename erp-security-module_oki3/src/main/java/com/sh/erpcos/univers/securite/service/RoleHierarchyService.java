@@ -0,0 +1,153 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.repository.RoleRepository;
+import com.sh.erpcos.univers.securite.util.PermissionBitIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fermeture transitive de la hiérarchie des rôles (roles.role_parent_id).
+ *
+ * Pour chaque rôle, la liste de ses ancêtres et l'ensemble de ses permissions effectives
+ * (les siennes plus celles de tous ses ancêtres) sont calculés en une passe à partir de deux
+ * requêtes, puis servis depuis la mémoire. La fermeture est marquée obsolète par
+ * AuthorizationSnapshotService à chaque modification d'un rôle ou d'une permission et
+ * recalculée au prochain accès.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RoleHierarchyService {
+
+    private static final long[] AUCUN_BIT = new long[0];
+
+    private final RoleRepository roleRepository;
+
+    private volatile Fermeture fermeture;
+
+    // Incrémenté à chaque invalidation : un calcul commencé avant n'est pas publié
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @return le rôle lui-même suivi de ses ancêtres, du plus proche au plus éloigné
+     */
+    public Set<Long> getRoleEtAncetres(Long roleId) {
+        return getFermeture().ancetres().getOrDefault(roleId, Set.of(roleId));
+    }
+
+    /**
+     * @return les identifiants de toutes les permissions (actives ou non) du rôle et de ses ancêtres
+     */
+    public Set<Integer> getPermissionIdsEffectives(Long roleId) {
+        return getFermeture().permissionIds().getOrDefault(roleId, Set.of());
+    }
+
+    /**
+     * @return le bitset des permissions actives du rôle et de ses ancêtres (ne pas modifier)
+     */
+    public long[] getBitsEffectifs(Long roleId) {
+        return getFermeture().bits().getOrDefault(roleId, AUCUN_BIT);
+    }
+
+    public boolean estAncetre(Long ancetreId, Long roleId) {
+        return !ancetreId.equals(roleId) && getRoleEtAncetres(roleId).contains(ancetreId);
+    }
+
+    public void invalider() {
+        generation.incrementAndGet();
+        fermeture = null;
+    }
+
+    private Fermeture getFermeture() {
+        Fermeture courante = fermeture;
+        if (courante != null) {
+            return courante;
+        }
+        synchronized (this) {
+            courante = fermeture;
+            if (courante == null) {
+                long generationAvantCalcul = generation.get();
+                courante = calculer();
+                if (generation.get() == generationAvantCalcul) {
+                    fermeture = courante;
+                }
+            }
+            return courante;
+        }
+    }
+
+    private Fermeture calculer() {
+        Map<Long, Long> parents = new HashMap<>();
+        for (Object[] lien : roleRepository.findLiensHierarchie()) {
+            parents.put((Long) lien[0], (Long) lien[1]);
+        }
+
+        Map<Long, List<Integer>> permissionsDirectes = new HashMap<>();
+        Map<Long, long[]> bitsDirects = new HashMap<>();
+        for (Object[] ligne : roleRepository.findPermissionsDirectes()) {
+            Long roleId = (Long) ligne[0];
+            Integer permissionId = (Integer) ligne[1];
+            permissionsDirectes.computeIfAbsent(roleId, id -> new ArrayList<>()).add(permissionId);
+            if (Boolean.TRUE.equals(ligne[3])) {
+                PermissionBitIndex.enregistrer(permissionId, (String) ligne[2]);
+                bitsDirects.put(roleId, PermissionBitIndex.activerBit(
+                        bitsDirects.getOrDefault(roleId, AUCUN_BIT), permissionId));
+            }
+        }
+
+        Map<Long, Set<Long>> ancetres = new HashMap<>();
+        Map<Long, Set<Integer>> permissionIds = new HashMap<>();
+        Map<Long, long[]> bits = new HashMap<>();
+
+        for (Long roleId : parents.keySet()) {
+            // Remontée de la chaîne des parents ; l'ensemble visité protège contre un cycle en base
+            Set<Long> chaine = new LinkedHashSet<>();
+            Long courant = roleId;
+            while (courant != null && chaine.add(courant)) {
+                courant = parents.get(courant);
+            }
+
+            Set<Integer> ids = new HashSet<>();
+            long[] masque = AUCUN_BIT;
+            for (Long membre : chaine) {
+                ids.addAll(permissionsDirectes.getOrDefault(membre, List.of()));
+                masque = union(masque, bitsDirects.getOrDefault(membre, AUCUN_BIT));
+            }
+
+            ancetres.put(roleId, Collections.unmodifiableSet(chaine));
+            permissionIds.put(roleId, Set.copyOf(ids));
+            bits.put(roleId, masque);
+        }
+
+        log.debug("Fermeture de la hiérarchie des rôles calculée: {} rôles", parents.size());
+        return new Fermeture(ancetres, permissionIds, bits);
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        long[] resultat = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; i++) {
+            resultat[i] |= b[i];
+        }
+        return resultat;
+    }
+
+    private record Fermeture(Map<Long, Set<Long>> ancetres,
+                             Map<Long, Set<Integer>> permissionIds,
+                             Map<Long, long[]> bits) {
+    }
+}
@@ -22,6 +22,9 @@ public class RoleService {
     
     private final RoleRepository roleRepository;
     private final PermissionRepository permissionRepository;
+    private final AuthorizationSnapshotService authorizationSnapshotService;
+    private final RoleHierarchyService roleHierarchyService;
+    private final RechercheService rechercheService;
     
     public List<Role> getAllRoles() {
         return roleRepository.findAll();
@@ -64,6 +67,7 @@ public class RoleService {
         role.setRoleActif(true);
         
         Role savedRole = roleRepository.save(role);
+        authorizationSnapshotService.invaliderRole(savedRole.getId());
         log.info("Rôle créé avec succès: {}", savedRole.getNom());
         
         return savedRole;
@@ -88,6 +92,7 @@ public class RoleService {
         role.setRoleActif(roleDetails.isRoleActif());
         
         Role updatedRole = roleRepository.save(role);
+        authorizationSnapshotService.invaliderRole(id);
         log.info("Rôle mis à jour avec succès: {}", updatedRole.getNom());
         
         return updatedRole;
@@ -105,6 +110,7 @@ public class RoleService {
         }
         
         roleRepository.delete(role);
+        authorizationSnapshotService.invaliderRole(id);
         log.info("Rôle supprimé avec succès: {}", role.getNom());
     }
     
@@ -141,6 +147,7 @@ public class RoleService {
         
         role.getPermissions().add(permission);
         roleRepository.save(role);
+        authorizationSnapshotService.invaliderRole(roleId);
         log.info("Permission ajoutée avec succès");
     }
     
@@ -155,6 +162,7 @@ public class RoleService {
         
         role.getPermissions().remove(permission);
         roleRepository.save(role);
+        authorizationSnapshotService.invaliderRole(roleId);
         log.info("Permission retirée avec succès");
     }
     
@@ -172,6 +180,7 @@ public class RoleService {
         role.getPermissions().addAll(permissions);
         
         roleRepository.save(role);
+        authorizationSnapshotService.invaliderRole(roleId);
         log.info("Permissions assignées avec succès");
     }
     
@@ -183,17 +192,12 @@ public class RoleService {
     }
     
     public Set<Permission> getToutesPermissionsHierarchiques(Long roleId) {
-        Role role = roleRepository.findById(roleId)
-                .orElseThrow(() -> new RuntimeException("Rôle non trouvé avec l'ID: " + roleId));
-        
-        Set<Permission> toutesPermissions = new HashSet<>(role.getPermissions());
-        
-        // Ajouter les permissions du rôle parent (héritage hiérarchique)
-        if (role.getRoleParent() != null) {
-            toutesPermissions.addAll(getToutesPermissionsHierarchiques(role.getRoleParent().getId()));
+        if (!roleRepository.existsById(roleId)) {
+            throw new RuntimeException("Rôle non trouvé avec l'ID: " + roleId);
         }
         
-        return toutesPermissions;
+        // Permissions du rôle et de tous ses ancêtres, lues depuis la fermeture hiérarchique
+        return new HashSet<>(permissionRepository.findAllById(roleHierarchyService.getPermissionIdsEffectives(roleId)));
     }
     
     public void ajouterRoleEnfant(Long roleParentId, Long roleEnfantId) {
@@ -203,10 +207,13 @@ public class RoleService {
         Role roleEnfant = roleRepository.findById(roleEnfantId)
                 .orElseThrow(() -> new RuntimeException("Rôle enfant non trouvé avec l'ID: " + roleEnfantId));
         
+        verifierAbsenceDeCycle(roleEnfantId, roleParentId);
+        
         roleParent.getRolesEnfants().add(roleEnfant);
         roleEnfant.setRoleParent(roleParent);
         roleRepository.save(roleParent);
         roleRepository.save(roleEnfant);
+        authorizationSnapshotService.invaliderRole(roleEnfantId);
     }
     
     public void retirerRoleEnfant(Long roleParentId, Long roleEnfantId) {
@@ -222,6 +229,7 @@ public class RoleService {
         }
         roleRepository.save(roleParent);
         roleRepository.save(roleEnfant);
+        authorizationSnapshotService.invaliderRole(roleEnfantId);
     }
     
     public void definirRoleParent(Long roleId, Long roleParentId) {
@@ -233,8 +241,11 @@ public class RoleService {
         Role roleParent = roleRepository.findById(roleParentId)
                 .orElseThrow(() -> new RuntimeException("Rôle parent non trouvé avec l'ID: " + roleParentId));
         
+        verifierAbsenceDeCycle(roleId, roleParentId);
+        
         role.setRoleParent(roleParent);
         roleRepository.save(role);
+        authorizationSnapshotService.invaliderRole(roleId);
         log.info("Rôle parent défini avec succès");
     }
     
@@ -246,9 +257,16 @@ public class RoleService {
         
         role.setRoleParent(null);
         roleRepository.save(role);
+        authorizationSnapshotService.invaliderRole(roleId);
         log.info("Rôle parent retiré avec succès");
     }
     
+    private void verifierAbsenceDeCycle(Long roleId, Long roleParentId) {
+        if (roleId.equals(roleParentId) || roleHierarchyService.estAncetre(roleId, roleParentId)) {
+            throw new RuntimeException("Ce rôle parent créerait un cycle dans la hiérarchie des rôles");
+        }
+    }
+    
     public List<Role> getRolesByPermission(String nomPermission) {
         return roleRepository.findByPermissionNom(nomPermission);
     }
@@ -262,7 +280,8 @@ public class RoleService {
     }
     
     public List<Role> rechercherRoles(String recherche) {
-        return roleRepository.rechercherRoles(recherche);
+        return rechercheService.rechercherEntites(RechercheService.Cible.ROLE, recherche,
+                RechercheService.LIMITE_RESULTATS, roleRepository::findAllById, Role::getId);
     }
     
     public long getNombreRolesActifs() {
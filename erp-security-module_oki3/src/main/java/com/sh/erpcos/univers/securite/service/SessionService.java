@@ -7,11 +7,17 @@ import com.sh.erpcos.univers.securite.entity.Utilisateur;
 import com.sh.erpcos.univers.securite.repository.AuditLogRepository;
 import com.sh.erpcos.univers.securite.repository.TwoFactorAuthRepository;
 import com.sh.erpcos.univers.securite.repository.UserSessionRepository;
+import com.sh.erpcos.univers.securite.repository.UserSessionSpecifications;
 import com.sh.erpcos.univers.securite.repository.UtilisateurRepository;
+import com.sh.erpcos.univers.securite.util.KeysetCursor;
+import com.sh.erpcos.univers.securite.util.PageParCurseur;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,6 +25,7 @@ import org.springframework.transaction.annotation.Transactional;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
@@ -35,6 +42,16 @@ public class SessionService {
     private final TwoFactorAuthRepository twoFactorAuthRepository;;
     private final AuditService auditService;
     private final AuditLogRepository auditLogRepository;
+    private final EstimationLignesService estimationLignesService;
+    private final SuiviActiviteSessionService suiviActiviteSessionService;
+    private final ExpirationSessionService expirationSessionService;
+    private final DetectionSessionsConcurrentesService detectionSessionsConcurrentesService;
+    private final LiveMetricsRegistry liveMetricsRegistry;
+    private final ClassificationUserAgentService classificationUserAgentService;
+    private final GeolocalisationIpService geolocalisationIpService;
+    
+    private static final Sort TRI_RECENTES = Sort.by(Sort.Order.desc("dateCreation"), Sort.Order.desc("id"));
+    private static final int SESSIONS_DETAILLEES = 50;
     
     // Création et gestion des sessions
     public UserSession createSession(String username, HttpServletRequest request) {
@@ -58,14 +75,26 @@ public class SessionService {
         userSession.setSessionActive(true);
         userSession.setTypeConnexion("WEB");
         
-        // Extraire des informations du User-Agent
-        String userAgent = request.getHeader("User-Agent");
-        if (userAgent != null) {
-            userSession.setNavigateur(extractBrowser(userAgent));
-            userSession.setSystemeExploitation(extractOS(userAgent));
-        }
+        // Extraire des informations du User-Agent (classification mémorisée par en-tête)
+        ClassificationUserAgentService.Classification classification =
+                classificationUserAgentService.classer(request.getHeader("User-Agent"));
+        userSession.setNavigateur(classification.navigateur());
+        userSession.setVersionNavigateur(classification.versionNavigateur());
+        userSession.setSystemeExploitation(classification.systemeExploitation());
+        userSession.setTypeAppareil(classification.typeAppareil());
+        userSession.setLocalisation(geolocalisationIpService.localiser(userSession.getIpAddress()));
+        
+        // Session précédente, lue avant l'enregistrement pour le contrôle de déplacement impossible ;
+        // sans base de géolocalisation, le contrôle n'a pas lieu et la requête est évitée
+        Optional<UserSession> precedente = geolocalisationIpService.isChargee()
+                ? userSessionRepository.findFirstByUtilisateurIdOrderByDateCreationDesc(utilisateur.getId())
+                : Optional.empty();
         
         UserSession savedSession = userSessionRepository.save(userSession);
+        expirationSessionService.planifier(savedSession.getSessionId(), savedSession.getDateExpiration());
+        detectionSessionsConcurrentesService.enregistrer(username, savedSession.getIpAddress(), savedSession.getDateCreation());
+        liveMetricsRegistry.sessionOuverte(savedSession.getSessionId(), utilisateur.getId(), savedSession.getDateCreation());
+        precedente.ifPresent(session -> verifierDeplacement(username, session, savedSession));
         
         // Log de l'événement
         auditService.logSessionManagement("SESSION_CREATED", savedSession.getSessionId(), 
@@ -75,19 +104,35 @@ public class SessionService {
         return savedSession;
     }
     
-    public void updateSessionActivity(String sessionId) {
-        Optional<UserSession> sessionOpt = userSessionRepository.findBySessionId(sessionId);
-        if (sessionOpt.isPresent()) {
-            UserSession session = sessionOpt.get();
-            session.setDateDerniereActivite(LocalDateTime.now());
-            userSessionRepository.save(session);
+    private void verifierDeplacement(String username, UserSession precedente, UserSession nouvelle) {
+        if (!geolocalisationIpService.deplacementImpossible(precedente.getIpAddress(), precedente.getDateCreation(),
+                nouvelle.getIpAddress(), nouvelle.getDateCreation())) {
+            return;
         }
+        double vitesse = geolocalisationIpService.vitesseKmh(precedente.getIpAddress(), precedente.getDateCreation(),
+                nouvelle.getIpAddress(), nouvelle.getDateCreation());
+        auditService.logSecurityEvent(username, nouvelle.getIpAddress(), "VOYAGE_IMPOSSIBLE",
+                String.format("Connexion depuis %s (%s) à %s, après une connexion depuis %s (%s) à %s: %.0f km/h",
+                        nouvelle.getIpAddress(), nouvelle.getLocalisation(), nouvelle.getDateCreation(),
+                        precedente.getIpAddress(), geolocalisationIpService.localiser(precedente.getIpAddress()),
+                        precedente.getDateCreation(), vitesse),
+                AuditLog.NiveauAudit.WARNING);
+        log.warn("Déplacement impossible pour {}: {} puis {} ({} km/h)", username,
+                precedente.getIpAddress(), nouvelle.getIpAddress(), Math.round(vitesse));
+    }
+    
+    // Écriture différée : date_derniere_activite est mise à jour par lots (SuiviActiviteSessionService)
+    public void updateSessionActivity(String sessionId) {
+        suiviActiviteSessionService.toucher(sessionId);
     }
     
     public void terminateSession(String sessionId) {
         Optional<UserSession> sessionOpt = userSessionRepository.findBySessionId(sessionId);
         if (sessionOpt.isPresent()) {
             UserSession session = sessionOpt.get();
+            suiviActiviteSessionService.oublier(sessionId);
+            expirationSessionService.annuler(sessionId);
+            liveMetricsRegistry.sessionFermee(sessionId);
             session.terminateSession();
             userSessionRepository.save(session);
             
@@ -99,20 +144,19 @@ public class SessionService {
     }
     
     public void terminateAllUserSessions(Long utilisateurId) {
-        List<UserSession> activeSessions = userSessionRepository.findByUtilisateurIdAndSessionActiveTrueAndDateExpirationAfterOrderByDateCreationDesc(utilisateurId, LocalDateTime.now());
+        // Un seul UPDATE et une seule ligne d'audit pour toutes les sessions de l'utilisateur
+        List<String> sessionIds = userSessionRepository.terminerSessionsUtilisateur(utilisateurId, LocalDateTime.now());
+        sessionIds.forEach(suiviActiviteSessionService::oublier);
+        sessionIds.forEach(expirationSessionService::annuler);
+        sessionIds.forEach(liveMetricsRegistry::sessionFermee);
         
-        for (UserSession session : activeSessions) {
-            session.terminateSession();
-            userSessionRepository.save(session);
-        }
-        
-        Optional<Utilisateur> utilisateurOpt = utilisateurRepository.findById(utilisateurId);
-        String username = utilisateurOpt.map(Utilisateur::getUsername).orElse("UNKNOWN");
+        String username = utilisateurRepository.findUsernameById(utilisateurId).orElse("UNKNOWN");
         
         auditService.logSessionManagement("ALL_SESSIONS_TERMINATED", "USER:" + utilisateurId, 
-                                         "Toutes les sessions terminées pour " + username);
+                                         sessionIds.size() + " sessions terminées pour " + username
+                                         + resumerSessions(sessionIds));
         
-        log.info("Toutes les sessions terminées pour l'utilisateur ID: {}", utilisateurId);
+        log.info("{} sessions terminées pour l'utilisateur ID: {}", sessionIds.size(), utilisateurId);
     }
     
     public void extendSession(String sessionId, int hours) {
@@ -121,6 +165,7 @@ public class SessionService {
             UserSession session = sessionOpt.get();
             session.extendSession(hours);
             userSessionRepository.save(session);
+            expirationSessionService.planifier(sessionId, session.getDateExpiration());
             
             auditService.logSessionManagement("SESSION_EXTENDED", sessionId, 
                                              "Session prolongée de " + hours + " heures");
@@ -165,17 +210,80 @@ public class SessionService {
     // Recherche avancée
     public Page<UserSession> searchSessions(Long utilisateurId, String ipAddress, Boolean sessionActive,
                                            LocalDateTime dateDebut, LocalDateTime dateFin, Pageable pageable) {
-        return userSessionRepository.rechercheAvancee(utilisateurId, ipAddress, sessionActive, 
-                                                     dateDebut, dateFin, pageable);
+        Specification<UserSession> criteres = UserSessionSpecifications.recherche(utilisateurId, ipAddress,
+                sessionActive, dateDebut, dateFin, null);
+        Pageable triee = pageable.isPaged()
+                ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), TRI_RECENTES)
+                : Pageable.unpaged(TRI_RECENTES);
+        return userSessionRepository.findAll(criteres, triee);
+    }
+    
+    // Pagination par clé (dateCreation, id) ; actives restreint aux sessions actives non expirées
+    @Transactional(readOnly = true)
+    public PageParCurseur<UserSession> searchSessionsParCurseur(Long utilisateurId, String ipAddress, Boolean sessionActive,
+                                                                LocalDateTime dateDebut, LocalDateTime dateFin, boolean actives,
+                                                                String curseur, int tailleDemandee, boolean avecTotal) {
+        int taille = PageParCurseur.borner(tailleDemandee);
+        KeysetCursor.Position position = KeysetCursor.decoder(curseur);
+        if (actives) {
+            sessionActive = true;
+        }
+        LocalDateTime expirationApres = actives ? LocalDateTime.now() : null;
+        Specification<UserSession> criteres = UserSessionSpecifications.recherche(utilisateurId, ipAddress,
+                        sessionActive, dateDebut, dateFin, expirationApres)
+                .and(KeysetCursor.apres(position, "dateCreation"))
+                .and(UserSessionSpecifications.avecUtilisateur());
+        List<UserSession> lignes = userSessionRepository.findBy(criteres, requete -> requete.sortBy(TRI_RECENTES)
+                .limit(taille + 1).all());
+        Long total = avecTotal
+                ? estimerTotal(utilisateurId, ipAddress, sessionActive, dateDebut, dateFin, expirationApres)
+                : null;
+        return PageParCurseur.de(lignes, taille, UserSession::getDateCreation, UserSession::getId, total);
+    }
+    
+    private long estimerTotal(Long utilisateurId, String ipAddress, Boolean sessionActive,
+                              LocalDateTime dateDebut, LocalDateTime dateFin, LocalDateTime expirationApres) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> parametres = new ArrayList<>();
+        if (utilisateurId != null) {
+            conditions.add("utilisateur_id = ?");
+            parametres.add(utilisateurId);
+        }
+        if (ipAddress != null) {
+            conditions.add("ip_address = ?");
+            parametres.add(ipAddress);
+        }
+        if (sessionActive != null) {
+            conditions.add("session_active = ?");
+            parametres.add(sessionActive);
+        }
+        if (dateDebut != null) {
+            conditions.add("date_creation >= ?");
+            parametres.add(dateDebut);
+        }
+        if (dateFin != null) {
+            conditions.add("date_creation <= ?");
+            parametres.add(dateFin);
+        }
+        if (expirationApres != null) {
+            conditions.add("date_expiration > ?");
+            parametres.add(expirationApres);
+        }
+        return estimationLignesService.estimerRequete("user_sessions", conditions, parametres);
     }
     
     // Statistiques
+    // Compteurs en direct, recalés périodiquement sur la base (LiveMetricsRegistry)
     public long getActiveSessionCount() {
-        return userSessionRepository.countBySessionActiveTrueAndDateExpirationAfter(LocalDateTime.now());
+        return liveMetricsRegistry.getSessionsActives();
     }
     
     public long getActiveUserCount() {
-        return userSessionRepository.countActiveUsers(LocalDateTime.now());
+        return liveMetricsRegistry.getUtilisateursActifs();
+    }
+    
+    public long getSessionCountLastWeek() {
+        return liveMetricsRegistry.getSessionsCreeesSemaine();
     }
     
     public long getSessionCountByPeriod(LocalDateTime dateDebut, LocalDateTime dateFin) {
@@ -204,7 +312,7 @@ public class SessionService {
     
     // Détection d'activités suspectes
     public List<Object[]> getSuspiciousSessions(LocalDateTime dateDebut, long intervalleMinutes) {
-        return userSessionRepository.findSuspiciousSessions(dateDebut, intervalleMinutes);
+        return detectionSessionsConcurrentesService.getAlertes(dateDebut, intervalleMinutes);
     }
     
     // Génération de rapports
@@ -224,19 +332,18 @@ public class SessionService {
     }
     
     // Tâches de maintenance automatiques
-    @Scheduled(fixedRate = 300000) // Toutes les 5 minutes
+    // Filet de sécurité : l'expiration à la seconde est faite par ExpirationSessionService
+    @Scheduled(fixedRateString = "${erp.securite.sessions.expiration.verification-ms:3600000}")
     public void cleanupExpiredSessions() {
-        List<UserSession> expiredSessions = userSessionRepository.findBySessionActiveTrueAndDateExpirationLessThanEqual(LocalDateTime.now());
-        
-        for (UserSession session : expiredSessions) {
-            session.terminateSession();
-            userSessionRepository.save(session);
-        }
+        List<String> sessionIds = userSessionRepository.expirerSessions(LocalDateTime.now());
+        sessionIds.forEach(suiviActiviteSessionService::oublier);
+        sessionIds.forEach(expirationSessionService::annuler);
+        sessionIds.forEach(liveMetricsRegistry::sessionFermee);
         
-        if (!expiredSessions.isEmpty()) {
-            log.info("Nettoyage automatique: {} sessions expirées terminées", expiredSessions.size());
+        if (!sessionIds.isEmpty()) {
+            log.info("Nettoyage automatique: {} sessions expirées terminées", sessionIds.size());
             auditService.logSystemConfig("CLEANUP_EXPIRED_SESSIONS", "SESSION_MANAGEMENT", 
-                                        expiredSessions.size() + " sessions expirées nettoyées");
+                                        sessionIds.size() + " sessions expirées nettoyées" + resumerSessions(sessionIds));
         }
     }
     
@@ -264,6 +371,14 @@ public class SessionService {
     }
     
     // Utilitaires
+    private String resumerSessions(List<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return "";
+        }
+        String liste = String.join(", ", sessionIds.subList(0, Math.min(sessionIds.size(), SESSIONS_DETAILLEES)));
+        return " : " + liste + (sessionIds.size() > SESSIONS_DETAILLEES ? ", ..." : "");
+    }
+    
     private String getClientIpAddress(HttpServletRequest request) {
         String xForwardedFor = request.getHeader("X-Forwarded-For");
         if (xForwardedFor != null && !xForwardedFor.isEmpty() && !"unknown".equalsIgnoreCase(xForwardedFor)) {
@@ -278,30 +393,6 @@ public class SessionService {
         return request.getRemoteAddr();
     }
     
-    private String extractBrowser(String userAgent) {
-        if (userAgent == null) return "Unknown";
-        
-        if (userAgent.contains("Chrome")) return "Chrome";
-        if (userAgent.contains("Firefox")) return "Firefox";
-        if (userAgent.contains("Safari")) return "Safari";
-        if (userAgent.contains("Edge")) return "Edge";
-        if (userAgent.contains("Opera")) return "Opera";
-        
-        return "Other";
-    }
-    
-    private String extractOS(String userAgent) {
-        if (userAgent == null) return "Unknown";
-        
-        if (userAgent.contains("Windows")) return "Windows";
-        if (userAgent.contains("Mac OS")) return "macOS";
-        if (userAgent.contains("Linux")) return "Linux";
-        if (userAgent.contains("Android")) return "Android";
-        if (userAgent.contains("iOS")) return "iOS";
-        
-        return "Other";
-    }
-    
     // Added
     // Retourne les sessions suspectes depuis une date donnée selon un seuil de tentatives (ici 5, par exemple)
     public List<UserSession> getSuspiciousSessions(LocalDateTime since) {
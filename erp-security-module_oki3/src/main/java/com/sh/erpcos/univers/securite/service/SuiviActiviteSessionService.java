@@ -0,0 +1,145 @@
+package com.sh.erpcos.univers.securite.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Suivi de l'activité des sessions en écriture différée.
+ *
+ * Chaque requête authentifiée ne fait que noter l'instant de son passage dans une table en
+ * mémoire indexée par identifiant de session ; plusieurs passages sur une même session entre deux
+ * vidages n'en laissent qu'un. Le vidage périodique écrit toutes les sessions touchées en un seul
+ * UPDATE (unnest de deux tableaux), sans charger les entités UserSession ni leur utilisateur.
+ * date_derniere_activite a donc au plus intervalle-ms de retard sur l'activité réelle.
+ * Table pleine, une nouvelle session n'est pas notée et un vidage anticipé est demandé à un thread
+ * dédié : une requête n'accède jamais à la base.
+ */
+@Service
+@Slf4j
+public class SuiviActiviteSessionService {
+
+    // duree_session est recalculée comme le fait UserSession.@PreUpdate ; une activité plus ancienne
+    // que celle déjà enregistrée, ou sur une session terminée, est ignorée
+    private static final String SQL_VIDAGE = "UPDATE user_sessions s SET date_derniere_activite = a.date_activite, " +
+            "duree_session = FLOOR(EXTRACT(EPOCH FROM (a.date_activite - s.date_creation)) / 60) " +
+            "FROM unnest(?::varchar[], ?::timestamp[]) AS a(session_id, date_activite) " +
+            "WHERE s.session_id = a.session_id AND s.session_active " +
+            "AND (s.date_derniere_activite IS NULL OR s.date_derniere_activite < a.date_activite)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxSessions;
+
+    private final Map<String, Long> activites = new ConcurrentHashMap<>();
+    // Une seule demande de vidage anticipé en attente à la fois
+    private final AtomicBoolean vidageDemande = new AtomicBoolean();
+    private final ExecutorService vidageAnticipe;
+
+    public SuiviActiviteSessionService(JdbcTemplate jdbcTemplate,
+                                       @Value("${erp.securite.sessions.activite.max-sessions:100000}") int maxSessions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxSessions = maxSessions;
+        this.vidageAnticipe = Executors.newSingleThreadExecutor(tache -> {
+            Thread thread = new Thread(tache, "sessions-activite-vidage");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Note l'activité de la session ; aucun accès à la base.
+     */
+    public void toucher(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        if (activites.size() >= maxSessions && !activites.containsKey(sessionId)) {
+            // Mémoire bornée : cette activité est perdue (la suivante sera notée après le vidage)
+            demanderVidage();
+            return;
+        }
+        activites.put(sessionId, System.currentTimeMillis());
+    }
+
+    /**
+     * Oublie l'activité en attente d'une session terminée.
+     */
+    public void oublier(String sessionId) {
+        if (sessionId != null) {
+            activites.remove(sessionId);
+        }
+    }
+
+    public int getNombreEnAttente() {
+        return activites.size();
+    }
+
+    /**
+     * Écrit les activités en attente en un seul UPDATE.
+     */
+    @Scheduled(fixedDelayString = "${erp.securite.sessions.activite.intervalle-ms:30000}")
+    public synchronized void vider() {
+        if (activites.isEmpty()) {
+            return;
+        }
+        List<String> sessionIds = new ArrayList<>(activites.size());
+        List<Timestamp> dates = new ArrayList<>(activites.size());
+        activites.forEach((sessionId, instant) -> {
+            // Retrait conditionnel : une activité arrivée entre-temps reste pour le vidage suivant
+            if (activites.remove(sessionId, instant)) {
+                sessionIds.add(sessionId);
+                dates.add(new Timestamp(instant));
+            }
+        });
+        try {
+            int misesAJour = jdbcTemplate.update(SQL_VIDAGE, ps -> {
+                Array tableauIds = ps.getConnection().createArrayOf("varchar", sessionIds.toArray());
+                Array tableauDates = ps.getConnection().createArrayOf("timestamp", dates.toArray());
+                ps.setArray(1, tableauIds);
+                ps.setArray(2, tableauDates);
+            });
+            log.debug("Activité de {} sessions enregistrée ({} mises à jour)", sessionIds.size(), misesAJour);
+        } catch (RuntimeException e) {
+            // Remise en attente dans la limite de la table, sans écraser une activité plus récente
+            for (int i = 0; i < sessionIds.size() && activites.size() < maxSessions; i++) {
+                activites.merge(sessionIds.get(i), dates.get(i).getTime(), Math::max);
+            }
+            log.error("Erreur lors de l'enregistrement de l'activité des sessions: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void arreter() {
+        vidageAnticipe.shutdown();
+        vider();
+    }
+
+    private void demanderVidage() {
+        if (!vidageDemande.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            vidageAnticipe.execute(() -> {
+                vidageDemande.set(false);
+                vider();
+            });
+        } catch (RejectedExecutionException e) {
+            // Arrêt en cours : le dernier vidage est fait par arreter()
+            vidageDemande.set(false);
+        }
+    }
+}
@@ -4,8 +4,11 @@ import com.sh.erpcos.univers.securite.entity.Role;
 import com.sh.erpcos.univers.securite.entity.Utilisateur;
 import com.sh.erpcos.univers.securite.repository.RoleRepository;
 import com.sh.erpcos.univers.securite.repository.UtilisateurRepository;
+import com.sh.erpcos.univers.securite.repository.UtilisateurSpecifications;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -24,6 +27,8 @@ public class UtilisateurService {
     private final UtilisateurRepository utilisateurRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final AuthorizationSnapshotService authorizationSnapshotService;
+    private final RechercheService rechercheService;
     
     public List<Utilisateur> getAllUtilisateurs() {
         return utilisateurRepository.findAll();
@@ -98,6 +103,7 @@ public class UtilisateurService {
         utilisateur.setCredentialsNonExpire(utilisateurDetails.isCredentialsNonExpire());
         
         Utilisateur updatedUtilisateur = utilisateurRepository.save(utilisateur);
+        authorizationSnapshotService.invaliderUtilisateur(updatedUtilisateur.getUsername());
         log.info("Utilisateur mis à jour avec succès: {}", updatedUtilisateur.getUsername());
         
         return updatedUtilisateur;
@@ -110,6 +116,7 @@ public class UtilisateurService {
                 .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé avec l'ID: " + id));
         
         utilisateurRepository.delete(utilisateur);
+        authorizationSnapshotService.invaliderUtilisateur(utilisateur.getUsername());
         log.info("Utilisateur supprimé avec succès: {}", utilisateur.getUsername());
     }
     
@@ -121,6 +128,7 @@ public class UtilisateurService {
         
         utilisateur.setCompteActif(true);
         utilisateurRepository.save(utilisateur);
+        authorizationSnapshotService.invaliderUtilisateur(utilisateur.getUsername());
         log.info("Utilisateur activé avec succès: {}", utilisateur.getUsername());
     }
     
@@ -132,6 +140,7 @@ public class UtilisateurService {
         
         utilisateur.setCompteActif(false);
         utilisateurRepository.save(utilisateur);
+        authorizationSnapshotService.invaliderUtilisateur(utilisateur.getUsername());
         log.info("Utilisateur désactivé avec succès: {}", utilisateur.getUsername());
     }
     
@@ -146,6 +155,7 @@ public class UtilisateurService {
         
         utilisateur.getRoles().add(role);
         utilisateurRepository.save(utilisateur);
+        authorizationSnapshotService.invaliderUtilisateur(utilisateur.getUsername());
         log.info("Rôle ajouté avec succès");
     }
     
@@ -160,6 +170,7 @@ public class UtilisateurService {
         
         utilisateur.getRoles().remove(role);
         utilisateurRepository.save(utilisateur);
+        authorizationSnapshotService.invaliderUtilisateur(utilisateur.getUsername());
         log.info("Rôle retiré avec succès");
     }
     
@@ -176,6 +187,7 @@ public class UtilisateurService {
         utilisateur.getRoles().addAll(roles);
         
         utilisateurRepository.save(utilisateur);
+        authorizationSnapshotService.invaliderUtilisateur(utilisateur.getUsername());
         log.info("Rôles assignés avec succès");
     }
     
@@ -196,7 +208,13 @@ public class UtilisateurService {
     }
     
     public List<Utilisateur> rechercherUtilisateurs(String recherche) {
-        return utilisateurRepository.rechercherUtilisateurs(recherche);
+        return rechercheService.rechercherEntites(RechercheService.Cible.UTILISATEUR, recherche,
+                RechercheService.LIMITE_RESULTATS, utilisateurRepository::findAllById, Utilisateur::getId);
+    }
+    
+    // Recherche multicritère : seuls les critères renseignés sont appliqués
+    public Page<Utilisateur> rechercheAvancee(String nom, String prenom, String email, Boolean actif, Pageable pageable) {
+        return utilisateurRepository.findAll(UtilisateurSpecifications.recherche(nom, prenom, email, actif), pageable);
     }
     
     public List<Utilisateur> getUtilisateursByRole(String nomRole) {
@@ -3,6 +3,7 @@ package com.sh.erpcos.univers.securite.service.v0;
 import com.sh.erpcos.univers.securite.entity.Module;
 import com.sh.erpcos.univers.securite.entity.Permission;
 import com.sh.erpcos.univers.securite.repository.PermissionRepository;
+import com.sh.erpcos.univers.securite.service.RechercheService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -19,6 +20,7 @@ import java.util.Set;
 public class PermissionService {
     
     private final PermissionRepository permissionRepository;
+    private final RechercheService rechercheService;
     
     public List<Permission> getAllPermissions() {
         return permissionRepository.findAll();
@@ -141,7 +143,10 @@ public class PermissionService {
     }
     
     public List<Permission> rechercherPermissions(String recherche) {
-        return permissionRepository.rechercherPermissions(recherche);
+        return rechercheService.rechercherEntites(RechercheService.Cible.PERMISSION, recherche,
+                RechercheService.LIMITE_RESULTATS,
+                ids -> permissionRepository.findAllById(ids.stream().map(Long::intValue).toList()),
+                Permission::getId);
     }
     
     public List<Permission> getPermissionsAvecUrlPattern() {
@@ -0,0 +1,216 @@
+package com.sh.erpcos.univers.securite.util;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Collection immuable d'autorités : les permissions sont stockées dans un bitset long[]
+ * indexé par PermissionBitIndex, les rôles (peu nombreux) dans un simple tableau de noms.
+ *
+ * Vérifier une permission revient à tester un bit, et vérifier "au moins une parmi" à
+ * quelques ET logiques entre mots de 64 bits.
+ */
+public final class BitSetAuthorities extends AbstractCollection<GrantedAuthority> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final BitSetAuthorities VIDE = new BitSetAuthorities(new long[0], new String[0]);
+
+    private final long[] bits;
+    private final String[] roles;
+    private final int nombrePermissions;
+
+    private BitSetAuthorities(long[] bits, String[] roles) {
+        this.bits = bits;
+        this.roles = roles;
+        int total = 0;
+        for (long mot : bits) {
+            total += Long.bitCount(mot);
+        }
+        this.nombrePermissions = total;
+    }
+
+    public static BitSetAuthorities vide() {
+        return VIDE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Convertit une collection d'autorités quelconque (jeton remember-me, tests...) en bitset.
+     */
+    public static BitSetAuthorities depuis(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities instanceof BitSetAuthorities bitSet) {
+            return bitSet;
+        }
+        Builder builder = builder();
+        for (GrantedAuthority authority : authorities) {
+            if (authority instanceof PermissionAuthority permission) {
+                builder.permission(permission.getIndice());
+            } else if (authority.getAuthority() != null) {
+                int indice = PermissionBitIndex.indiceDe(authority.getAuthority());
+                if (indice >= 0) {
+                    builder.permission(indice);
+                } else {
+                    builder.role(authority.getAuthority());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Autorités de l'utilisateur authentifié : le bitset du principal s'il a été compilé à la
+     * connexion, sinon une conversion de ses autorités.
+     */
+    public static BitSetAuthorities depuis(Authentication authentication) {
+        if (authentication == null) {
+            return VIDE;
+        }
+        if (authentication.getPrincipal() instanceof BitSetUserDetails userDetails) {
+            return userDetails.getAuthorities();
+        }
+        return depuis(authentication.getAuthorities());
+    }
+
+    public boolean contientPermission(int indice) {
+        int mot = indice >>> 6;
+        return indice >= 0 && mot < bits.length && (bits[mot] & (1L << indice)) != 0;
+    }
+
+    public boolean contientAuMoinsUne(long[] masque) {
+        return PermissionBitIndex.intersecte(bits, masque);
+    }
+
+    public boolean contientRole(String role) {
+        for (String r : roles) {
+            if (r.equals(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long[] getBits() {
+        return bits.clone();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof PermissionAuthority permission) {
+            return contientPermission(permission.getIndice());
+        }
+        if (o instanceof GrantedAuthority authority && authority.getAuthority() != null) {
+            int indice = PermissionBitIndex.indiceDe(authority.getAuthority());
+            return indice >= 0 ? contientPermission(indice) : contientRole(authority.getAuthority());
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return roles.length + nombrePermissions;
+    }
+
+    @Override
+    public Iterator<GrantedAuthority> iterator() {
+        return new Iterator<>() {
+            private int role = 0;
+            private int prochainBit = prochainBitDepuis(0);
+
+            @Override
+            public boolean hasNext() {
+                return role < roles.length || prochainBit >= 0;
+            }
+
+            @Override
+            public GrantedAuthority next() {
+                if (role < roles.length) {
+                    return new SimpleGrantedAuthority(roles[role++]);
+                }
+                if (prochainBit < 0) {
+                    throw new NoSuchElementException();
+                }
+                GrantedAuthority authority = new PermissionAuthority(prochainBit);
+                prochainBit = prochainBitDepuis(prochainBit + 1);
+                return authority;
+            }
+        };
+    }
+
+    private int prochainBitDepuis(int depuis) {
+        int mot = depuis >>> 6;
+        if (mot >= bits.length) {
+            return -1;
+        }
+        long restant = bits[mot] & (-1L << depuis);
+        while (true) {
+            if (restant != 0) {
+                return (mot << 6) + Long.numberOfTrailingZeros(restant);
+            }
+            if (++mot >= bits.length) {
+                return -1;
+            }
+            restant = bits[mot];
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof BitSetAuthorities autre
+                && Arrays.equals(bits, autre.bits)
+                && Arrays.equals(roles, autre.roles);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(bits) + Arrays.hashCode(roles);
+    }
+
+    public static final class Builder {
+
+        private long[] bits = new long[0];
+        private final Set<String> roles = new LinkedHashSet<>();
+
+        private Builder() {
+        }
+
+        public Builder permission(int indice) {
+            if (indice >= 0) {
+                bits = PermissionBitIndex.activerBit(bits, indice);
+            }
+            return this;
+        }
+
+        public Builder permissions(long[] autres) {
+            if (autres.length > bits.length) {
+                bits = Arrays.copyOf(bits, autres.length);
+            }
+            for (int i = 0; i < autres.length; i++) {
+                bits[i] |= autres[i];
+            }
+            return this;
+        }
+
+        public Builder role(String role) {
+            roles.add(role);
+            return this;
+        }
+
+        public BitSetAuthorities build() {
+            return new BitSetAuthorities(bits.clone(), roles.toArray(new String[0]));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.sh.erpcos.univers.securite.util;
+
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Objects;
+
+/**
+ * UserDetails dont les autorités sont un BitSetAuthorities.
+ *
+ * Contrairement à org.springframework.security.core.userdetails.User, les autorités ne sont
+ * pas recopiées dans un TreeSet : le bitset est conservé tel quel dans le principal et donc
+ * dans le SecurityContext stocké en session.
+ */
+public final class BitSetUserDetails implements UserDetails, CredentialsContainer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String username;
+    private String password;
+    private final boolean enabled;
+    private final boolean accountNonExpired;
+    private final boolean credentialsNonExpired;
+    private final boolean accountNonLocked;
+    private final BitSetAuthorities authorities;
+
+    public BitSetUserDetails(String username, String password, boolean enabled, boolean accountNonExpired,
+                             boolean credentialsNonExpired, boolean accountNonLocked,
+                             BitSetAuthorities authorities) {
+        this.username = username;
+        this.password = password;
+        this.enabled = enabled;
+        this.accountNonExpired = accountNonExpired;
+        this.credentialsNonExpired = credentialsNonExpired;
+        this.accountNonLocked = accountNonLocked;
+        this.authorities = authorities;
+    }
+
+    @Override
+    public BitSetAuthorities getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return accountNonExpired;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return accountNonLocked;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return credentialsNonExpired;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void eraseCredentials() {
+        this.password = null;
+    }
+
+    // Même sémantique que User : deux principaux sont égaux s'ils ont le même username
+    // (utilisé par le contrôle des sessions concurrentes)
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof BitSetUserDetails autre && Objects.equals(username, autre.username);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(username);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " [Username=" + username + ", Enabled=" + enabled
+                + ", Granted Authorities=" + authorities.size() + "]";
+    }
+}
@@ -0,0 +1,86 @@
+package com.sh.erpcos.univers.securite.util;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Jeton de continuation pour la pagination par clé (date, id) en ordre décroissant.
+ *
+ * Le jeton encode la position de la dernière ligne affichée ; la page suivante est lue avec
+ * "date < :date OR (date = :date AND id < :id)", ce qui parcourt l'index (date, id) sans OFFSET :
+ * le coût d'une page ne dépend plus de sa profondeur.
+ */
+public final class KeysetCursor {
+
+    /**
+     * Position avant la première ligne : toutes les lignes la suivent.
+     */
+    public static final Position DEBUT = new Position(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    private static final String SEPARATEUR = "|";
+
+    private KeysetCursor() {
+    }
+
+    public record Position(LocalDateTime date, Long id) {
+    }
+
+    /**
+     * Jeton altéré ou forgé : erreur de la requête (400), pas du serveur.
+     */
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static final class JetonInvalideException extends IllegalArgumentException {
+
+        private static final long serialVersionUID = 1L;
+
+        JetonInvalideException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Restreint aux lignes qui suivent position dans l'ordre (champDate DESC, id DESC) ; aucun
+     * prédicat pour la première page.
+     */
+    public static <T> Specification<T> apres(Position position, String champDate) {
+        return (root, query, cb) -> {
+            if (position.equals(DEBUT)) {
+                return null;
+            }
+            // La borne "date <= :date" seule donne au planificateur un parcours d'index par intervalle
+            return cb.and(
+                    cb.lessThanOrEqualTo(root.get(champDate), position.date()),
+                    cb.or(cb.lessThan(root.get(champDate), position.date()),
+                            cb.lessThan(root.get("id"), position.id())));
+        };
+    }
+
+    public static String encoder(LocalDateTime date, Long id) {
+        String valeur = date + SEPARATEUR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valeur.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return la position encodée, ou DEBUT si le jeton est absent
+     * @throws JetonInvalideException si le jeton n'a pas été produit par encoder
+     */
+    public static Position decoder(String jeton) {
+        if (jeton == null || jeton.isBlank()) {
+            return DEBUT;
+        }
+        try {
+            String valeur = new String(Base64.getUrlDecoder().decode(jeton), StandardCharsets.UTF_8);
+            int separateur = valeur.lastIndexOf(SEPARATEUR);
+            return new Position(LocalDateTime.parse(valeur.substring(0, separateur)),
+                    Long.parseLong(valeur.substring(separateur + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new JetonInvalideException("Jeton de pagination invalide: " + jeton, e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sh.erpcos.univers.securite.util;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Page lue par pagination par clé : le contenu, le jeton de la page suivante (null sur la
+ * dernière page) et, si demandé, une estimation du nombre total de lignes.
+ */
+public final class PageParCurseur<T> {
+
+    public static final int TAILLE_MAX = 200;
+
+    private final List<T> contenu;
+    private final int taille;
+    private final String curseurSuivant;
+    private final Long totalApproximatif;
+
+    private PageParCurseur(List<T> contenu, int taille, String curseurSuivant, Long totalApproximatif) {
+        this.contenu = contenu;
+        this.taille = taille;
+        this.curseurSuivant = curseurSuivant;
+        this.totalApproximatif = totalApproximatif;
+    }
+
+    /**
+     * Ramène une taille de page demandée dans [1, TAILLE_MAX].
+     */
+    public static int borner(int taille) {
+        return Math.max(1, Math.min(taille, TAILLE_MAX));
+    }
+
+    /**
+     * @param lignes jusqu'à taille + 1 lignes : la ligne en trop indique qu'une page suivante existe
+     * @param date   date de tri de la ligne
+     * @param id     identifiant de la ligne, départage les dates égales
+     */
+    public static <T> PageParCurseur<T> de(List<T> lignes, int taille,
+                                           Function<T, LocalDateTime> date, Function<T, Long> id,
+                                           Long totalApproximatif) {
+        if (lignes.size() <= taille) {
+            return new PageParCurseur<>(lignes, taille, null, totalApproximatif);
+        }
+        List<T> contenu = lignes.subList(0, taille);
+        T derniere = contenu.get(taille - 1);
+        return new PageParCurseur<>(contenu, taille, KeysetCursor.encoder(date.apply(derniere), id.apply(derniere)),
+                totalApproximatif);
+    }
+
+    public List<T> getContenu() {
+        return contenu;
+    }
+
+    public int getTaille() {
+        return taille;
+    }
+
+    public String getCurseurSuivant() {
+        return curseurSuivant;
+    }
+
+    public boolean isDernierePage() {
+        return curseurSuivant == null;
+    }
+
+    public Long getTotalApproximatif() {
+        return totalApproximatif;
+    }
+}
@@ -0,0 +1,43 @@
+package com.sh.erpcos.univers.securite.util;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Autorité d'une permission, représentée par son seul indice de bit.
+ * Le nom est résolu via PermissionBitIndex, ce qui garde la session sérialisée compacte.
+ */
+public final class PermissionAuthority implements GrantedAuthority {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int indice;
+
+    public PermissionAuthority(int indice) {
+        this.indice = indice;
+    }
+
+    public int getIndice() {
+        return indice;
+    }
+
+    @Override
+    public String getAuthority() {
+        String nom = PermissionBitIndex.nomDe(indice);
+        return nom != null ? nom : "PERMISSION#" + indice;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PermissionAuthority autre && autre.indice == indice;
+    }
+
+    @Override
+    public int hashCode() {
+        return indice;
+    }
+
+    @Override
+    public String toString() {
+        return getAuthority();
+    }
+}
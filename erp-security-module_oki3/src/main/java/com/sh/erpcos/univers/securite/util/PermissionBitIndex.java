@@ -0,0 +1,112 @@
+package com.sh.erpcos.univers.securite.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registre global des indices de bits attribués aux permissions.
+ *
+ * L'indice d'une permission est son identifiant en base : il est stable d'un redémarrage
+ * à l'autre (une session sérialisée reste valide) et dense, à l'exception des permissions
+ * supprimées. Le registre est statique, comme SecurityContextHolder, pour que les autorités
+ * désérialisées puissent retrouver leur nom sans dépendre du contexte Spring.
+ */
+public final class PermissionBitIndex {
+
+    private static final Map<String, Integer> indiceParNom = new ConcurrentHashMap<>();
+    private static volatile String[] nomParIndice = new String[64];
+
+    // Incrémentée à chaque changement, pour que les masques calculés puissent être reconstruits
+    private static final AtomicLong version = new AtomicLong();
+
+    private PermissionBitIndex() {
+    }
+
+    public static synchronized void enregistrer(int indice, String nom) {
+        if (indice < 0 || nom == null) {
+            return;
+        }
+        String[] noms = nomParIndice;
+        if (indice < noms.length && nom.equals(noms[indice])) {
+            return;
+        }
+        if (indice >= noms.length) {
+            noms = Arrays.copyOf(noms, Math.max(indice + 1, noms.length * 2));
+        } else {
+            noms = noms.clone();
+        }
+        String ancienNom = noms[indice];
+        if (ancienNom != null) {
+            indiceParNom.remove(ancienNom, indice);
+        }
+        noms[indice] = nom;
+        indiceParNom.put(nom, indice);
+        nomParIndice = noms;
+        version.incrementAndGet();
+    }
+
+    public static synchronized void retirer(int indice) {
+        String[] noms = nomParIndice;
+        if (indice < 0 || indice >= noms.length || noms[indice] == null) {
+            return;
+        }
+        noms = noms.clone();
+        indiceParNom.remove(noms[indice], indice);
+        noms[indice] = null;
+        nomParIndice = noms;
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return l'indice de la permission, ou -1 si ce nom n'est pas (encore) connu
+     */
+    public static int indiceDe(String nom) {
+        Integer indice = indiceParNom.get(nom);
+        return indice != null ? indice : -1;
+    }
+
+    public static String nomDe(int indice) {
+        String[] noms = nomParIndice;
+        return indice >= 0 && indice < noms.length ? noms[indice] : null;
+    }
+
+    public static long version() {
+        return version.get();
+    }
+
+    /**
+     * Construit le masque de bits correspondant à un ensemble de noms de permissions.
+     * Les noms inconnus sont ignorés.
+     */
+    public static long[] masqueDe(String... noms) {
+        long[] masque = new long[0];
+        for (String nom : noms) {
+            int indice = indiceDe(nom);
+            if (indice >= 0) {
+                masque = activerBit(masque, indice);
+            }
+        }
+        return masque;
+    }
+
+    public static long[] activerBit(long[] bits, int indice) {
+        int mot = indice >>> 6;
+        if (mot >= bits.length) {
+            bits = Arrays.copyOf(bits, mot + 1);
+        }
+        bits[mot] |= 1L << indice;
+        return bits;
+    }
+
+    public static boolean intersecte(long[] a, long[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if ((a[i] & b[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
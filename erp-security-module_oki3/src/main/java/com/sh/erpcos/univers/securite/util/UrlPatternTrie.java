@@ -0,0 +1,146 @@
+package com.sh.erpcos.univers.securite.util;
+
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arbre de segments compilé à partir des motifs d'URL de type Ant ("/contact/**", "/rh/{id}/fiche").
+ *
+ * Chaque motif terminal porte un masque de permissions (PermissionBitIndex) ; deux motifs
+ * identiques fusionnent leurs masques, comme un hasAnyAuthority. La recherche suit le chemin
+ * segment par segment et retient le motif le plus spécifique : un segment littéral est
+ * préféré à un joker partiel ("*.pdf", "{id:\d+}"), lui-même préféré à "*" ou "{id}", puis à
+ * "**". Le coût dépend donc de la profondeur de l'URL et non du nombre de motifs enregistrés.
+ *
+ * Un joker partiel est comparé au seul segment courant par AntPathMatcher, avec la même
+ * sémantique que dans un motif complet.
+ * L'arbre n'est plus modifié une fois publié.
+ */
+public final class UrlPatternTrie {
+
+    private static final String JOKER = "*";
+    private static final String DOUBLE_JOKER = "**";
+    private static final AntPathMatcher SEGMENT = new AntPathMatcher();
+
+    private final Noeud racine = new Noeud();
+    private int nombreMotifs;
+
+    public void ajouter(String motif, long[] masque) {
+        Noeud noeud = racine;
+        for (String segment : decouper(motif)) {
+            if (DOUBLE_JOKER.equals(segment)) {
+                noeud = noeud.doubleJoker != null ? noeud.doubleJoker : (noeud.doubleJoker = new Noeud());
+            } else if (estJoker(segment)) {
+                noeud = noeud.joker != null ? noeud.joker : (noeud.joker = new Noeud());
+            } else if (SEGMENT.isPattern(segment)) {
+                noeud = noeud.partiels.computeIfAbsent(segment, s -> new Noeud());
+            } else {
+                noeud = noeud.enfants.computeIfAbsent(segment, s -> new Noeud());
+            }
+        }
+        if (noeud.masque == null) {
+            noeud.masque = masque.clone();
+            nombreMotifs++;
+        } else {
+            long[] fusion = noeud.masque.length >= masque.length ? noeud.masque : masque.clone();
+            long[] autre = fusion == noeud.masque ? masque : noeud.masque;
+            for (int i = 0; i < autre.length; i++) {
+                fusion[i] |= autre[i];
+            }
+            noeud.masque = fusion;
+        }
+    }
+
+    /**
+     * @return le masque du motif le plus spécifique couvrant ce chemin, ou null si aucun motif ne le couvre
+     */
+    public long[] trouver(String chemin) {
+        List<String> segments = decouper(chemin);
+        return trouver(racine, segments, 0);
+    }
+
+    public int getNombreMotifs() {
+        return nombreMotifs;
+    }
+
+    private static long[] trouver(Noeud noeud, List<String> segments, int position) {
+        if (position == segments.size()) {
+            if (noeud.masque != null) {
+                return noeud.masque;
+            }
+            // "/contact/**" couvre aussi "/contact"
+            return noeud.doubleJoker != null ? trouver(noeud.doubleJoker, segments, position) : null;
+        }
+
+        Noeud litteral = noeud.enfants.get(segments.get(position));
+        if (litteral != null) {
+            long[] masque = trouver(litteral, segments, position + 1);
+            if (masque != null) {
+                return masque;
+            }
+        }
+        for (Map.Entry<String, Noeud> partiel : noeud.partiels.entrySet()) {
+            if (SEGMENT.match(partiel.getKey(), segments.get(position))) {
+                long[] masque = trouver(partiel.getValue(), segments, position + 1);
+                if (masque != null) {
+                    return masque;
+                }
+            }
+        }
+        if (noeud.joker != null) {
+            long[] masque = trouver(noeud.joker, segments, position + 1);
+            if (masque != null) {
+                return masque;
+            }
+        }
+        if (noeud.doubleJoker != null) {
+            // "**" absorbe zéro ou plusieurs segments, le moins possible d'abord
+            for (int suite = position; suite <= segments.size(); suite++) {
+                long[] masque = trouver(noeud.doubleJoker, segments, suite);
+                if (masque != null) {
+                    return masque;
+                }
+            }
+        }
+        return null;
+    }
+
+    // "*" ou une variable sans expression régulière ("{id}") : n'importe quel segment
+    private static boolean estJoker(String segment) {
+        return JOKER.equals(segment) || (segment.startsWith("{") && segment.indexOf('}') == segment.length() - 1
+                && segment.indexOf(':') < 0);
+    }
+
+    private static List<String> decouper(String chemin) {
+        List<String> segments = new ArrayList<>();
+        if (chemin == null) {
+            return segments;
+        }
+        int debut = 0;
+        int longueur = chemin.length();
+        while (debut < longueur) {
+            int fin = chemin.indexOf('/', debut);
+            if (fin < 0) {
+                fin = longueur;
+            }
+            if (fin > debut) {
+                segments.add(chemin.substring(debut, fin));
+            }
+            debut = fin + 1;
+        }
+        return segments;
+    }
+
+    private static final class Noeud {
+        private final Map<String, Noeud> enfants = new HashMap<>(4);
+        private final Map<String, Noeud> partiels = new LinkedHashMap<>(0);
+        private Noeud joker;
+        private Noeud doubleJoker;
+        private long[] masque;
+    }
+}
@@ -1,10 +1,6 @@
 package com.sh.erpcos.univers.securite.util;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import com.sh.erpcos.univers.securite.entity.Permission;
@@ -18,38 +14,44 @@ public class UserDetailsAdapter {
 
     public static UserDetails toUserDetails(Utilisateur utilisateur) {
         log.debug("Conversion de l'utilisateur en UserDetails: {}", utilisateur.getUsername());
-        
-        // Liste pour stocker toutes les autorisations
-        List<GrantedAuthority> authorities = new ArrayList<>();
-        
+
+        return new BitSetUserDetails(
+                utilisateur.getUsername(),
+                utilisateur.getPassword(),
+                utilisateur.isCompteActif(),
+                utilisateur.isCompteNonExpire(),
+                utilisateur.isCredentialsNonExpire(),
+                utilisateur.isCompteNonVerrouille(),
+                toAuthorities(utilisateur)
+        );
+    }
+
+    public static BitSetAuthorities toAuthorities(Utilisateur utilisateur) {
+        BitSetAuthorities.Builder authorities = BitSetAuthorities.builder();
+
         for (Role role : utilisateur.getRoles()) {
             // Ajouter le rôle lui-même comme autorité
-            String roleAuthority = role.getNom().startsWith("ROLE_") ? role.getNom() : "ROLE_" + role.getNom();
-            authorities.add(new SimpleGrantedAuthority(roleAuthority));
-            log.debug("Ajout du rôle: {}", roleAuthority);
-            
-            // Ajouter chaque permission comme autorité
+            authorities.role(nomAutoriteRole(role.getNom()));
+
+            // Chaque permission active devient un bit, indexé par son identifiant
             for (Permission permission : role.getPermissions()) {
                 if (permission.isPermissionActif()) {
-                    authorities.add(new SimpleGrantedAuthority(permission.getNom()));
-                    log.debug("Ajout de la permission: {}", permission.getNom());
+                    PermissionBitIndex.enregistrer(permission.getId(), permission.getNom());
+                    authorities.permission(permission.getId());
                 }
             }
         }
-        
-        // Afficher toutes les autorisations
-        for (GrantedAuthority auth : authorities) {
-            log.debug("Autorité finale: {}", auth.getAuthority());
+
+        BitSetAuthorities resultat = authorities.build();
+        if (log.isDebugEnabled()) {
+            for (GrantedAuthority auth : resultat) {
+                log.debug("Autorité finale: {}", auth.getAuthority());
+            }
         }
-        
-        return new User(
-                utilisateur.getUsername(),
-                utilisateur.getPassword(),
-                utilisateur.isCompteActif(),
-                utilisateur.isCompteNonExpire(),
-                utilisateur.isCredentialsNonExpire(),
-                utilisateur.isCompteNonVerrouille(),
-                authorities
-        );
+        return resultat;
+    }
+
+    public static String nomAutoriteRole(String nomRole) {
+        return nomRole.startsWith("ROLE_") ? nomRole : "ROLE_" + nomRole;
     }
-}
\ No newline at end of file
+}
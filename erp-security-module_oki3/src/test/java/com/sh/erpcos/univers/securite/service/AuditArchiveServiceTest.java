@@ -0,0 +1,164 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Écriture puis relecture d'un segment d'archive, sans base : les lignes de audit_logs sont
+ * simulées ligne par ligne.
+ */
+class AuditArchiveServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2026, 1, 15, 9, 30, 0, 123_456_000);
+
+    @TempDir
+    Path repertoire;
+
+    private static AuditLog evenement(long id, String username, Boolean succes, LocalDateTime date) {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setId(id);
+        auditLog.setUsername(username);
+        auditLog.setUtilisateurId(username != null ? 7L : null);
+        auditLog.setAction("LOGIN");
+        auditLog.setRessource("/api/auth");
+        auditLog.setRessourceId(id * 10);
+        auditLog.setDetails("Connexion réussie");
+        auditLog.setIpAddress("192.0.2.7");
+        auditLog.setLocalisation("Paris, Ile-de-France, FR");
+        auditLog.setUserAgent("Mozilla/5.0");
+        auditLog.setSessionId("s-" + id);
+        auditLog.setDateAction(date);
+        auditLog.setNiveau(AuditLog.NiveauAudit.INFO);
+        auditLog.setCategorie(AuditLog.CategorieAudit.AUTHENTICATION);
+        auditLog.setSucces(succes);
+        auditLog.setMessageErreur(succes == Boolean.FALSE ? "Mot de passe incorrect" : null);
+        return auditLog;
+    }
+
+    private static ResultSet ligne(AuditLog auditLog) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(auditLog.getId());
+        when(rs.getTimestamp("date_action")).thenReturn(Timestamp.valueOf(auditLog.getDateAction()));
+        when(rs.getObject("utilisateur_id", Long.class)).thenReturn(auditLog.getUtilisateurId());
+        when(rs.getString("username")).thenReturn(auditLog.getUsername());
+        when(rs.getString("action")).thenReturn(auditLog.getAction());
+        when(rs.getString("ressource")).thenReturn(auditLog.getRessource());
+        when(rs.getObject("ressource_id", Long.class)).thenReturn(auditLog.getRessourceId());
+        when(rs.getString("details")).thenReturn(auditLog.getDetails());
+        when(rs.getString("ip_address")).thenReturn(auditLog.getIpAddress());
+        when(rs.getString("user_agent")).thenReturn(auditLog.getUserAgent());
+        when(rs.getString("session_id")).thenReturn(auditLog.getSessionId());
+        when(rs.getString("niveau")).thenReturn(auditLog.getNiveau().name());
+        when(rs.getString("categorie")).thenReturn(auditLog.getCategorie().name());
+        when(rs.getObject("succes", Boolean.class)).thenReturn(auditLog.getSucces());
+        when(rs.getString("message_erreur")).thenReturn(auditLog.getMessageErreur());
+        when(rs.getInt("nombre_occurrences")).thenReturn(auditLog.getNombreOccurrences());
+        when(rs.getTimestamp("date_premiere_occurrence")).thenReturn(timestamp(auditLog.getDatePremiereOccurrence()));
+        when(rs.getTimestamp("date_derniere_occurrence")).thenReturn(timestamp(auditLog.getDateDerniereOccurrence()));
+        when(rs.getString("localisation")).thenReturn(auditLog.getLocalisation());
+        return rs;
+    }
+
+    private static Timestamp timestamp(LocalDateTime date) {
+        return date != null ? Timestamp.valueOf(date) : null;
+    }
+
+    private Path ecrire(AuditLog... journaux) throws Exception {
+        AuditArchiveService.ConstructeurSegment constructeur = new AuditArchiveService.ConstructeurSegment();
+        for (AuditLog auditLog : journaux) {
+            constructeur.ajouter(ligne(auditLog));
+        }
+        return constructeur.ecrire(repertoire.resolve("audit-202601-test-0.seg"));
+    }
+
+    @Test
+    void relitLesLignesEtLEnTete() throws Exception {
+        AuditLog regroupe = evenement(100, "jdupont", false, DATE);
+        regroupe.setNombreOccurrences(5);
+        regroupe.setDatePremiereOccurrence(DATE);
+        regroupe.setDateDerniereOccurrence(DATE.plusSeconds(9));
+        AuditLog anonyme = evenement(103, null, null, DATE.plusMinutes(1));
+        AuditLog dernier = evenement(250, "jdupont", true, DATE.plusDays(3));
+        Path fichier = ecrire(regroupe, anonyme, dernier);
+
+        List<AuditLog> ecrits = List.of(regroupe, anonyme, dernier);
+        List<AuditLog> relus = AuditArchiveService.lireSegment(fichier);
+        assertEquals(3, relus.size());
+        for (int i = 0; i < ecrits.size(); i++) {
+            AuditLog ecrit = ecrits.get(i);
+            AuditLog lu = relus.get(i);
+            assertEquals(ecrit.getId(), lu.getId());
+            assertEquals(ecrit.getDateAction(), lu.getDateAction());
+            assertEquals(ecrit.getUtilisateurId(), lu.getUtilisateurId());
+            assertEquals(ecrit.getUsername(), lu.getUsername());
+            assertEquals(ecrit.getAction(), lu.getAction());
+            assertEquals(ecrit.getRessource(), lu.getRessource());
+            assertEquals(ecrit.getRessourceId(), lu.getRessourceId());
+            assertEquals(ecrit.getDetails(), lu.getDetails());
+            assertEquals(ecrit.getIpAddress(), lu.getIpAddress());
+            assertEquals(ecrit.getLocalisation(), lu.getLocalisation());
+            assertEquals(ecrit.getUserAgent(), lu.getUserAgent());
+            assertEquals(ecrit.getSessionId(), lu.getSessionId());
+            assertEquals(ecrit.getNiveau(), lu.getNiveau());
+            assertEquals(ecrit.getCategorie(), lu.getCategorie());
+            assertEquals(ecrit.getSucces(), lu.getSucces());
+            assertEquals(ecrit.getMessageErreur(), lu.getMessageErreur());
+            assertEquals(ecrit.getNombreOccurrences(), lu.getNombreOccurrences());
+            assertEquals(ecrit.getDatePremiereOccurrence(), lu.getDatePremiereOccurrence());
+            assertEquals(ecrit.getDateDerniereOccurrence(), lu.getDateDerniereOccurrence());
+        }
+        assertNull(relus.get(1).getUsername());
+
+        AuditArchiveService.EnteteSegment entete = AuditArchiveService.lireEntete(fichier);
+        assertEquals(3, entete.lignes());
+        assertEquals(100, entete.premierId());
+        assertEquals(DATE, entete.dateMin());
+        assertEquals(DATE.plusDays(3), entete.dateMax());
+        assertEquals(3, entete.statistiques().size());
+        AuditArchiveService.Critere jdupont = new AuditArchiveService.Critere("jdupont", null, null, null,
+                null, null, null, null);
+        assertEquals(2, entete.statistiques().stream().filter(statistique -> statistique.correspond(jdupont))
+                .mapToInt(AuditArchiveService.Statistique::lignes).sum());
+    }
+
+    // Magic, version, nombre de lignes, colonne compressée, fin de fichier
+    @ParameterizedTest
+    @ValueSource(ints = {0, 4, 8, -40, -3})
+    void segmentCorrompuRejete(int position) throws Exception {
+        Path fichier = ecrire(evenement(1, "jdupont", true, DATE), evenement(2, "mmartin", false, DATE.plusHours(1)));
+        byte[] octets = Files.readAllBytes(fichier);
+        int indice = position >= 0 ? position : octets.length + position;
+        octets[indice] = (byte) ~octets[indice];
+        Files.write(fichier, octets);
+
+        assertThrows(IOException.class, () -> AuditArchiveService.lireSegment(fichier));
+    }
+
+    @Test
+    void segmentTronqueRejete() throws Exception {
+        Path fichier = ecrire(evenement(1, "jdupont", true, DATE));
+        byte[] octets = Files.readAllBytes(fichier);
+        Files.write(fichier, Arrays.copyOf(octets, octets.length - 5));
+
+        assertThrows(IOException.class, () -> AuditArchiveService.lireSegment(fichier));
+        assertThrows(IOException.class, () -> AuditArchiveService.lireEntete(fichier.resolveSibling("absent.seg")));
+    }
+}
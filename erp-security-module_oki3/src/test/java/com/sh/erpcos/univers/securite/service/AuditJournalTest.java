@@ -0,0 +1,146 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.AuditLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Écriture puis relecture du journal dans un répertoire temporaire, sans base : le point
+ * d'expédition n'est ni lu ni enregistré.
+ */
+class AuditJournalTest {
+
+    private static final AuditJournal.Position DEBUT = new AuditJournal.Position(1, 0);
+
+    @TempDir
+    Path repertoire;
+
+    private AuditJournal journal;
+
+    @AfterEach
+    void fermer() {
+        if (journal != null) {
+            journal.fermer();
+        }
+    }
+
+    private AuditJournal ouvrir() {
+        journal = new AuditJournal(null, true, repertoire.toString(), 1, 20);
+        journal.ouvrir();
+        assertTrue(journal.isOuvert());
+        return journal;
+    }
+
+    private static AuditLog evenement(String action) {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setUtilisateurId(42L);
+        auditLog.setUsername("jdupont");
+        auditLog.setAction(action);
+        auditLog.setRessource("/api/utilisateurs");
+        auditLog.setDetails("Détails accentués ✓");
+        auditLog.setIpAddress("192.0.2.7");
+        auditLog.setLocalisation("Paris, Ile-de-France, FR");
+        auditLog.setUserAgent("Mozilla/5.0");
+        auditLog.setSessionId("session-1");
+        auditLog.setDateAction(LocalDateTime.of(2026, 3, 14, 15, 9, 26, 535_897_932));
+        auditLog.setNiveau(AuditLog.NiveauAudit.WARNING);
+        auditLog.setCategorie(AuditLog.CategorieAudit.AUTHENTICATION);
+        auditLog.setSucces(false);
+        auditLog.setMessageErreur("Mot de passe incorrect");
+        return auditLog;
+    }
+
+    @Test
+    void relitLesChampsEcrits() throws Exception {
+        AuditJournal journal = ouvrir();
+        AuditLog ecrit = evenement("LOGIN_FAILED");
+        ecrit.setNombreOccurrences(3);
+        ecrit.setDatePremiereOccurrence(ecrit.getDateAction());
+        ecrit.setDateDerniereOccurrence(ecrit.getDateAction().plusSeconds(4));
+        AuditLog minimal = new AuditLog();
+        minimal.setAction("LOGOUT");
+        minimal.setDateAction(LocalDateTime.of(2026, 3, 14, 15, 10));
+        minimal.setSucces(null);
+        journal.ajouter(ecrit);
+        journal.ajouter(minimal);
+
+        List<AuditJournal.Entree> entrees = journal.lire(DEBUT, 10);
+
+        assertEquals(2, entrees.size());
+        assertEquals(journal.getPositionEcrite(), entrees.get(1).fin());
+        AuditLog lu = entrees.get(0).auditLog();
+        assertEquals(ecrit.getUtilisateurId(), lu.getUtilisateurId());
+        assertEquals(ecrit.getUsername(), lu.getUsername());
+        assertEquals(ecrit.getAction(), lu.getAction());
+        assertEquals(ecrit.getRessource(), lu.getRessource());
+        assertNull(lu.getRessourceId());
+        assertEquals(ecrit.getDetails(), lu.getDetails());
+        assertEquals(ecrit.getIpAddress(), lu.getIpAddress());
+        assertEquals(ecrit.getLocalisation(), lu.getLocalisation());
+        assertEquals(ecrit.getUserAgent(), lu.getUserAgent());
+        assertEquals(ecrit.getSessionId(), lu.getSessionId());
+        assertEquals(ecrit.getDateAction(), lu.getDateAction());
+        assertEquals(ecrit.getNiveau(), lu.getNiveau());
+        assertEquals(ecrit.getCategorie(), lu.getCategorie());
+        assertEquals(false, lu.getSucces());
+        assertEquals(ecrit.getMessageErreur(), lu.getMessageErreur());
+        assertEquals(3, lu.getNombreOccurrences());
+        assertEquals(ecrit.getDatePremiereOccurrence(), lu.getDatePremiereOccurrence());
+        assertEquals(ecrit.getDateDerniereOccurrence(), lu.getDateDerniereOccurrence());
+
+        AuditLog luMinimal = entrees.get(1).auditLog();
+        assertEquals("LOGOUT", luMinimal.getAction());
+        assertNull(luMinimal.getUsername());
+        assertNull(luMinimal.getNiveau());
+        assertNull(luMinimal.getSucces());
+        assertEquals(1, luMinimal.getNombreOccurrences());
+        assertNull(luMinimal.getDatePremiereOccurrence());
+    }
+
+    @Test
+    void enregistrementCorrompuSauteSansPerdreLesSuivants() throws Exception {
+        AuditJournal journal = ouvrir();
+        journal.ajouter(evenement("A"));
+        AuditJournal.Position finPremier = journal.getPositionEcrite();
+        journal.ajouter(evenement("B"));
+        journal.ajouter(evenement("C"));
+
+        // Un octet du contenu du deuxième enregistrement est altéré : son CRC ne correspond plus
+        try (FileChannel canal = FileChannel.open(repertoire.resolve("00000000000000000001.journal"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), finPremier.decalage() + 8 + 20);
+        }
+
+        List<AuditJournal.Entree> entrees = journal.lire(DEBUT, 10);
+        assertEquals(3, entrees.size());
+        assertEquals("A", entrees.get(0).auditLog().getAction());
+        assertNull(entrees.get(1).auditLog());
+        assertEquals("C", entrees.get(2).auditLog().getAction());
+        assertEquals(journal.getPositionEcrite(), entrees.get(2).fin());
+        assertEquals(1, journal.getNombreIllisibles());
+
+        // Segment clos au redémarrage : le reste du segment reste lisible
+        journal.fermer();
+        AuditJournal rouvert = ouvrir();
+        rouvert.ajouter(evenement("D"));
+        List<AuditLog> relus = rouvert.lire(DEBUT, 10).stream().map(AuditJournal.Entree::auditLog).toList();
+        assertEquals(4, relus.size());
+        assertNull(relus.get(1));
+        assertNotNull(relus.get(2));
+        assertEquals("C", relus.get(2).getAction());
+        assertEquals("D", relus.get(3).getAction());
+    }
+}
@@ -0,0 +1,150 @@
+package com.sh.erpcos.univers.securite.service;
+
+import com.sh.erpcos.univers.securite.entity.Permission;
+import com.sh.erpcos.univers.securite.entity.Role;
+import com.sh.erpcos.univers.securite.entity.Utilisateur;
+import com.sh.erpcos.univers.securite.repository.PermissionRepository;
+import com.sh.erpcos.univers.securite.repository.RoleRepository;
+import com.sh.erpcos.univers.securite.repository.UtilisateurRepository;
+import com.sh.erpcos.univers.securite.util.UserDetailsAdapter;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compare le chargement des autorités à la connexion : ancien chemin (JOIN FETCH des entités
+ * Utilisateur -> Role -> Permission) et chargement par lignes plates + fermeture hiérarchique,
+ * pour des utilisateurs possédant 1, 10 et 50 rôles.
+ *
+ * Nécessite la base configurée dans application.properties ; désactivé par défaut :
+ * mvn test -Dtest=AuthorizationLoaderBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Slf4j
+class AuthorizationLoaderBenchmarkTest {
+
+    private static final int[] NOMBRES_ROLES = {1, 10, 50};
+    private static final int PERMISSIONS_PAR_ROLE = 8;
+    private static final int ECHAUFFEMENT = 200;
+    private static final int ITERATIONS = 1000;
+    private static final String PREFIXE = "BENCH_AUTH_";
+
+    @Autowired
+    private UtilisateurRepository utilisateurRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    @Autowired
+    private AuthorizationSnapshotService authorizationSnapshotService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    void creerJeuDeDonnees() {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Permission> permissions = permissionRepository.findAll();
+            List<Role> roles = new ArrayList<>();
+            for (int i = 0; i < NOMBRES_ROLES[NOMBRES_ROLES.length - 1]; i++) {
+                Role role = new Role();
+                role.setNom(PREFIXE + i);
+                role.setDescription("Rôle de benchmark");
+                for (int p = 0; p < PERMISSIONS_PAR_ROLE && !permissions.isEmpty(); p++) {
+                    role.getPermissions().add(permissions.get((i * PERMISSIONS_PAR_ROLE + p) % permissions.size()));
+                }
+                roles.add(roleRepository.save(role));
+            }
+
+            for (int nombreRoles : NOMBRES_ROLES) {
+                Utilisateur utilisateur = new Utilisateur();
+                utilisateur.setUsername(username(nombreRoles));
+                utilisateur.setPassword("{noop}benchmark");
+                utilisateur.setNom("Benchmark");
+                utilisateur.setPrenom(String.valueOf(nombreRoles));
+                utilisateur.setEmail(username(nombreRoles).toLowerCase() + "@benchmark.local");
+                utilisateur.setRoles(new HashSet<>(roles.subList(0, nombreRoles)));
+                utilisateurRepository.save(utilisateur);
+            }
+        });
+        authorizationSnapshotService.invaliderTout();
+    }
+
+    @AfterAll
+    void supprimerJeuDeDonnees() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int nombreRoles : NOMBRES_ROLES) {
+                utilisateurRepository.findByUsername(username(nombreRoles)).ifPresent(utilisateurRepository::delete);
+            }
+            roleRepository.findAll().stream()
+                    .filter(role -> role.getNom().startsWith(PREFIXE))
+                    .forEach(roleRepository::delete);
+        });
+        authorizationSnapshotService.invaliderTout();
+    }
+
+    @Test
+    void comparerChargementsDesAutorites() {
+        log.info(String.format("%-8s %22s %22s %10s", "rôles", "JOIN FETCH (µs/op)", "lignes plates (µs/op)", "gain"));
+
+        for (int nombreRoles : NOMBRES_ROLES) {
+            String username = username(nombreRoles);
+
+            Supplier<UserDetails> ancienChemin = () -> transactionTemplate.execute(status ->
+                    UserDetailsAdapter.toUserDetails(utilisateurRepository.findByUsernameWithPermissions(username)
+                            .orElseThrow()));
+            Supplier<UserDetails> nouveauChemin = () -> {
+                // Seul le snapshot de l'utilisateur est évincé : la fermeture hiérarchique reste en mémoire
+                authorizationSnapshotService.invaliderUtilisateur(username);
+                return authorizationSnapshotService.chargerUserDetails(username);
+            };
+
+            assertEquals(autorites(ancienChemin.get()), autorites(nouveauChemin.get()));
+
+            double ancien = mesurer(ancienChemin);
+            double nouveau = mesurer(nouveauChemin);
+            log.info(String.format("%-8d %22.1f %22.1f %9.1fx", nombreRoles, ancien, nouveau, ancien / nouveau));
+        }
+    }
+
+    private static double mesurer(Supplier<UserDetails> chargement) {
+        for (int i = 0; i < ECHAUFFEMENT; i++) {
+            chargement.get();
+        }
+        long debut = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            chargement.get();
+        }
+        return (System.nanoTime() - debut) / 1_000.0 / ITERATIONS;
+    }
+
+    private static Set<String> autorites(UserDetails userDetails) {
+        Set<String> noms = new HashSet<>();
+        userDetails.getAuthorities().forEach(authority -> noms.add(authority.getAuthority()));
+        return noms;
+    }
+
+    private static String username(int nombreRoles) {
+        return PREFIXE + nombreRoles;
+    }
+}
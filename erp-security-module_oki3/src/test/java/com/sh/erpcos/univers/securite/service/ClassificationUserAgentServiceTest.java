@@ -0,0 +1,65 @@
+package com.sh.erpcos.univers.securite.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Classification d'en-têtes User-Agent réels : les navigateurs qui en imitent d'autres (Edge,
+ * Opera, Samsung annoncent Chrome et Safari) et les systèmes imbriqués (iOS annonce Mac OS X,
+ * Android annonce Linux).
+ */
+class ClassificationUserAgentServiceTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36 Edg/124.0.2478.80"
+                    + "| Edge | 124 | Windows | Ordinateur",
+            "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Mobile Safari/537.36 EdgA/124.0.2478.64"
+                    + "| Edge | 124 | Android | Mobile",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36 OPR/106.0.0.0"
+                    + "| Opera | 106 | Windows | Ordinateur",
+            "Mozilla/5.0 (Linux; Android 14; SM-S918B) AppleWebKit/537.36 (KHTML, like Gecko) SamsungBrowser/24.0 Chrome/117.0.0.0 Mobile Safari/537.36"
+                    + "| Samsung Internet | 24 | Android | Mobile",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36"
+                    + "| Chrome | 124 | macOS | Ordinateur",
+            "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Mobile Safari/537.36"
+                    + "| Chrome | 124 | Android | Mobile",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) CriOS/124.0.6367.88 Mobile/15E148 Safari/604.1"
+                    + "| Chrome | 124 | iOS | Mobile",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Safari/605.1.15"
+                    + "| Safari | 17 | macOS | Ordinateur",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1"
+                    + "| Safari | 17 | iOS | Mobile",
+            "Mozilla/5.0 (iPad; CPU OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1"
+                    + "| Safari | 17 | iOS | Tablette",
+            "Mozilla/5.0 (Linux; Android 13; SM-X710) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36"
+                    + "| Chrome | 124 | Android | Tablette",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0"
+                    + "| Firefox | 125 | Linux | Ordinateur",
+            "Mozilla/5.0 (Windows NT 10.0; WOW64; Trident/7.0; rv:11.0) like Gecko"
+                    + "| Internet Explorer | 11 | Windows | Ordinateur",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)"
+                    + "| Other | | Other | Robot",
+            "curl/8.5.0"
+                    + "| Other | | Other | Robot"})
+    void analyser(String userAgent, String navigateur, String version, String systeme, String appareil) {
+        assertEquals(new ClassificationUserAgentService.Classification(navigateur, version, systeme, appareil),
+                ClassificationUserAgentService.analyser(userAgent));
+    }
+
+    @Test
+    void enTeteAbsentEtCache() {
+        ClassificationUserAgentService service = new ClassificationUserAgentService(10);
+        assertSame(ClassificationUserAgentService.INCONNUE, service.classer(null));
+        assertSame(ClassificationUserAgentService.INCONNUE, service.classer(" "));
+
+        String userAgent = "Mozilla/5.0 (X11; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0";
+        assertSame(service.classer(userAgent), service.classer(userAgent));
+        assertEquals(1, service.getEchecsCache());
+        assertEquals(1, service.getSuccesCache());
+    }
+}
@@ -0,0 +1,109 @@
+package com.sh.erpcos.univers.securite.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Roue d'expiration sur une horloge fixe : la roue est avancée seconde par seconde par le test,
+ * sans minuterie ni base.
+ */
+class ExpirationSessionServiceTest {
+
+    private static final long DEBUT = 1_700_000_000L;
+    private static final long PORTEE_ROUE = 1L << 24;
+
+    private static ExpirationSessionService roue(long debut) {
+        Clock horloge = Clock.fixed(Instant.ofEpochSecond(debut), ZoneOffset.UTC);
+        return new ExpirationSessionService(null, null, null, null, null, horloge);
+    }
+
+    private static LocalDateTime date(long seconde) {
+        return LocalDateTime.ofEpochSecond(seconde, 0, ZoneOffset.UTC);
+    }
+
+    // Début quelconque, puis début aligné sur une tranche du dernier niveau (6489 * 64^3 s)
+    @ParameterizedTest
+    @CsvSource({
+            "1700000000, 1", "1700000000, 63", "1700000000, 64", "1700000000, 65",
+            "1700000000, 4095", "1700000000, 4096", "1700000000, 4097",
+            "1700000000, 262143", "1700000000, 262144",
+            "1701052416, 63", "1701052416, 64", "1701052416, 4095", "1701052416, 4096"})
+    void expireALaSecondePresAuxLimitesDesNiveaux(long debut, long delai) {
+        ExpirationSessionService roue = roue(debut);
+        roue.planifier("s1", date(debut + delai));
+
+        assertEquals(List.of(), roue.avancerJusqua(debut + delai - 1));
+        assertEquals(List.of("s1"), roue.avancerJusqua(debut + delai));
+        assertEquals(0, roue.getNombreSessions());
+    }
+
+    @Test
+    void echeanceFractionnaireArrondieALaSecondeSuivante() {
+        // Comme LocalDateTime.now().plusHours(8) : des nanosecondes, jamais d'expiration anticipée
+        ExpirationSessionService roue = roue(DEBUT);
+        roue.planifier("fractionnaire", date(DEBUT + 10).plusNanos(1));
+        roue.planifier("demi", date(DEBUT + 64).plusNanos(500_000_000));
+
+        assertEquals(List.of(), roue.avancerJusqua(DEBUT + 10));
+        assertEquals(List.of("fractionnaire"), roue.avancerJusqua(DEBUT + 11));
+        assertEquals(List.of(), roue.avancerJusqua(DEBUT + 64));
+        assertEquals(List.of("demi"), roue.avancerJusqua(DEBUT + 65));
+    }
+
+    @Test
+    void replanifierPlusTotOuPlusTard() {
+        ExpirationSessionService roue = roue(DEBUT);
+        roue.planifier("avancee", date(DEBUT + 5000));
+        roue.planifier("reculee", date(DEBUT + 10));
+        roue.planifier("avancee", date(DEBUT + 10));
+        roue.planifier("reculee", date(DEBUT + 5000));
+
+        assertEquals(List.of("avancee"), roue.avancerJusqua(DEBUT + 10));
+        assertEquals(List.of(), roue.avancerJusqua(DEBUT + 4999));
+        assertEquals(List.of("reculee"), roue.avancerJusqua(DEBUT + 5000));
+    }
+
+    @Test
+    void annulerRetireLaSession() {
+        ExpirationSessionService roue = roue(DEBUT);
+        roue.planifier("annulee", date(DEBUT + 64));
+        roue.planifier("gardee", date(DEBUT + 64));
+        roue.annuler("annulee");
+
+        assertEquals(1, roue.getNombreSessions());
+        assertEquals(List.of("gardee"), roue.avancerJusqua(DEBUT + 100));
+    }
+
+    @Test
+    void echeanceDepasseeExpireAuPassageSuivant() {
+        ExpirationSessionService roue = roue(DEBUT);
+        roue.planifier("passee", date(DEBUT - 30));
+
+        assertEquals(List.of("passee"), roue.avancerJusqua(DEBUT));
+    }
+
+    @Test
+    void auDelaDeLaPorteeDeLaRoue() {
+        // ~200 jours : au-delà des 64^4 s (~194 jours) couverts par les quatre niveaux
+        long delai = PORTEE_ROUE + 500_000;
+        ExpirationSessionService roue = roue(DEBUT);
+        roue.planifier("lointaine", date(DEBUT + delai));
+        roue.planifier("proche", date(DEBUT + PORTEE_ROUE - 1));
+
+        assertEquals(List.of("proche"), roue.avancerJusqua(DEBUT + PORTEE_ROUE - 1));
+        assertEquals(List.of(), roue.avancerJusqua(DEBUT + delai - 1));
+        assertEquals(1, roue.getNombreSessions());
+        assertEquals(List.of("lointaine"), roue.avancerJusqua(DEBUT + delai));
+        assertTrue(roue.avancerJusqua(DEBUT + delai + 1000).isEmpty());
+    }
+}
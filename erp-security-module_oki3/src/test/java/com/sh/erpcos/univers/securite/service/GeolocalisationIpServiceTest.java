@@ -0,0 +1,90 @@
+package com.sh.erpcos.univers.securite.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Analyse des adresses littérales comparée à InetAddress, qui ne résout pas par DNS une adresse
+ * littérale valide ; les adresses invalides ne lui sont jamais passées.
+ */
+class GeolocalisationIpServiceTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "0.0.0.0", "192.168.1.10", "255.255.255.255",
+            "::", "::1", "1::", "2001:db8::", "2001:db8::1", "2001:DB8:0:0:1::1",
+            "2001:0db8:0000:0000:0000:ff00:0042:8329", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff",
+            "1:2:3:4:5:6:7::", "::2:3:4:5:6:7:8", "fe80::1:2:3:4:5:6",
+            "::192.0.2.128", "64:ff9b::192.0.2.33", "1:2:3:4:5:6:1.2.3.4",
+            "::ffff:192.0.2.128", "::ffff:c000:280", "::ffff:0:0"})
+    void adresseValideCommeInetAddress(String litteral) throws Exception {
+        assertArrayEquals(attendu(litteral), GeolocalisationIpService.adresse(litteral), litteral);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"fe80::1%eth0, fe80::1", "fe80::1%3, fe80::1", "::ffff:10.0.0.1%1, 10.0.0.1"})
+    void zoneIgnoree(String litteral, String sansZone) throws Exception {
+        assertArrayEquals(attendu(sansZone), GeolocalisationIpService.adresse(litteral), litteral);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "cafe", "bad", "beef:", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.4.", "1..2.3",
+            "1.2.3.4%1", ":", ":::", "1::2::3", ":1::", "1::2:", "12345::", "::g",
+            "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7:8::", "::1.2.3", "::1.2.3.4:5",
+            "1.2.3.4::", "::a.b.c.d", "1:2:3:4:5:6:7:1.2.3.4", "fe80::1%"})
+    void adresseInvalideRejetee(String litteral) {
+        assertThrows(IllegalArgumentException.class, () -> GeolocalisationIpService.adresse(litteral), litteral);
+    }
+
+    @Test
+    void localiserDansLesPlagesChargees(@TempDir Path repertoire) throws Exception {
+        Path fichier = repertoire.resolve("geoip.csv");
+        Files.writeString(fichier, String.join("\n",
+                "debut,fin,pays,region,ville,latitude,longitude",
+                "192.0.2.0,192.0.2.255,FR,Ile-de-France,Paris,48.85,2.35",
+                "::ffff:198.51.100.0,::ffff:198.51.100.255,BE,Bruxelles,Bruxelles,50.85,4.35",
+                "2001:db8::,2001:db8::ffff:ffff,DE,Berlin,Berlin,52.52,13.40",
+                "cafe,bad,XX,,,0,0"), StandardCharsets.UTF_8);
+        GeolocalisationIpService service = new GeolocalisationIpService(fichier.toString(), 900);
+        service.charger();
+
+        assertEquals("Paris, Ile-de-France, FR", service.localiser("192.0.2.7"));
+        assertEquals("Paris, Ile-de-France, FR", service.localiser("::ffff:192.0.2.7"));
+        assertEquals("Bruxelles, Bruxelles, BE", service.localiser("198.51.100.1"));
+        assertEquals("Berlin, Berlin, DE", service.localiser("2001:db8::1%eth0"));
+        assertEquals("Berlin, Berlin, DE", service.localiser("2001:db8::ffff:ffff"));
+        assertNull(service.localiser("2001:db8::1:0:0"));
+        assertNull(service.localiser("203.0.113.1"));
+        assertNull(service.localiser("cafe"));
+    }
+
+    private static long[] attendu(String litteral) throws Exception {
+        byte[] octets = InetAddress.getByName(litteral).getAddress();
+        if (octets.length == 4) {
+            return new long[]{lireLong(octets, 0, 4)};
+        }
+        return new long[]{lireLong(octets, 0, 8), lireLong(octets, 8, 16)};
+    }
+
+    private static long lireLong(byte[] octets, int debut, int fin) {
+        long valeur = 0;
+        for (int i = debut; i < fin; i++) {
+            valeur = (valeur << 8) | (octets[i] & 0xFF);
+        }
+        return valeur;
+    }
+}
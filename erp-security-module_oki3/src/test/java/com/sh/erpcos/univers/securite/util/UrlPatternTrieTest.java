@@ -0,0 +1,74 @@
+package com.sh.erpcos.univers.securite.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Choix du motif le plus spécifique : chaque motif porte un bit distinct, le bit retourné
+ * désigne le motif retenu.
+ */
+class UrlPatternTrieTest {
+
+    private static final String[] MOTIFS = {
+            "/rh/**", "/rh/*", "/rh/admin", "/rh/*.pdf", "/rh/{id:\\d+}/fiche", "/rh/{id}/fiche",
+            "/contact/**", "/contact/*/adresse", "/api/**/export", "/a?c"};
+
+    private static UrlPatternTrie trie() {
+        UrlPatternTrie trie = new UrlPatternTrie();
+        for (int i = 0; i < MOTIFS.length; i++) {
+            trie.ajouter(MOTIFS[i], new long[]{1L << i});
+        }
+        return trie;
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "/rh/admin, /rh/admin",
+            "/rh/rapport.pdf, /rh/*.pdf",
+            "/rh/conges, /rh/*",
+            "/rh/admin/droits, /rh/**",
+            "/rh, /rh/**",
+            "/rh/42/fiche, /rh/{id:\\d+}/fiche",
+            "/rh/dupont/fiche, /rh/{id}/fiche",
+            "/rh/dupont/fiche/pdf, /rh/**",
+            "/contact, /contact/**",
+            "/contact/, /contact/**",
+            "/contact/12/adresse, /contact/*/adresse",
+            "/contact/12/telephone, /contact/**",
+            "/api/export, /api/**/export",
+            "/api/v1/utilisateurs/export, /api/**/export",
+            "/abc, /a?c"})
+    void motifLePlusSpecifique(String chemin, String motif) {
+        assertArrayEquals(new long[]{1L << indice(motif)}, trie().trouver(chemin), chemin);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"/", "/autre", "/api/v1", "/abbc", "/rhx"})
+    void aucunMotif(String chemin) {
+        assertNull(trie().trouver(chemin), chemin);
+    }
+
+    @Test
+    void motifsIdentiquesFusionnes() {
+        UrlPatternTrie trie = new UrlPatternTrie();
+        trie.ajouter("/rh/**", new long[]{0b01});
+        trie.ajouter("/rh/**", new long[]{0b10, 0b1});
+
+        assertArrayEquals(new long[]{0b11, 0b1}, trie.trouver("/rh/x"));
+        assertEquals(1, trie.getNombreMotifs());
+    }
+
+    private static int indice(String motif) {
+        for (int i = 0; i < MOTIFS.length; i++) {
+            if (MOTIFS[i].equals(motif)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(motif);
+    }
+}